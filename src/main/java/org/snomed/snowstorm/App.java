@@ -8,6 +8,7 @@ import org.snomed.snowstorm.core.data.services.CodeSystemService;
 import org.snomed.snowstorm.core.data.services.ReferenceSetMemberService;
 import org.snomed.snowstorm.core.rf2.RF2Type;
 import org.snomed.snowstorm.core.rf2.rf2import.ImportService;
+import org.snomed.snowstorm.core.rf2.rf2import.RF2ImportConfiguration;
 import org.snomed.snowstorm.mrcm.MRCMService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.ApplicationArguments;
@@ -107,7 +108,10 @@ public class App extends Config implements ApplicationRunner {
 
 	private void importEditionRF2FromDisk(String releasePath, RF2Type importType, boolean createCodeSystemVersion) {
 		// Import archive
-		String importId = importService.createJob(importType, "MAIN", createCodeSystemVersion);
+		// Nothing else is using the indices while loading from disk at startup
+		String importId = importService.createJob(new RF2ImportConfiguration(importType, "MAIN")
+				.setCreateCodeSystemVersion(createCodeSystemVersion)
+				.setBulkIndexingProfile(true));
 		try {
 			importService.importArchive(importId, new FileInputStream(releasePath));
 		} catch (FileNotFoundException | ReleaseImportException e) {
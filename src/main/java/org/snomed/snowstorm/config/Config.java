@@ -25,8 +25,10 @@ import org.snomed.snowstorm.core.data.services.identifier.IdentifierCacheManager
 import org.snomed.snowstorm.core.data.services.identifier.IdentifierSource;
 import org.snomed.snowstorm.core.data.services.identifier.LocalIdentifierSource;
 import org.snomed.snowstorm.core.data.services.identifier.SnowstormCISClient;
+import org.snomed.snowstorm.core.rf2.export.ExportArchiveCache;
 import org.snomed.snowstorm.core.rf2.rf2import.ImportService;
 import org.snomed.snowstorm.ecl.SECLObjectFactory;
+import org.snomed.snowstorm.rest.pojo.BrowserDescriptionSearchResult;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.data.elasticsearch.ElasticsearchAutoConfiguration;
@@ -34,6 +36,7 @@ import org.springframework.boot.autoconfigure.data.elasticsearch.ElasticsearchDa
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
+import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.elasticsearch.core.ElasticsearchTemplate;
 import org.springframework.data.elasticsearch.core.EntityMapper;
@@ -99,6 +102,13 @@ public abstract class Config {
 		return new ElasticsearchRestClient(new HashMap<>(), restClientBuilder);
 	}
 
+	@Bean(destroyMethod = "")
+	public RestClient elasticsearchLowLevelClient() {
+		// Used for index administration which is not available through the template
+		// Shares the hosts and settings of the main client, which also closes it
+		return elasticsearchClient().getLowLevelClient();
+	}
+
 	private static HttpHost[] getHttpHosts(String[] hosts) {
 		List<HttpHost> httpHosts = new ArrayList<>();
 		for (String host : hosts) {
@@ -184,8 +194,11 @@ public abstract class Config {
 	}
 
 	@Bean
-	public ImportService getImportService() {
-		return new ImportService();
+	public ImportService getImportService(
+			@Value("${import.writer.threads}") int writerThreads,
+			@Value("${import.writer.queue-size}") int writerQueueSize,
+			@Value("${import.scheduler.max-concurrent}") int maxConcurrentImports) {
+		return new ImportService(writerThreads, writerQueueSize, maxConcurrentImports);
 	}
 	
 	@Bean
@@ -236,6 +249,40 @@ public abstract class Config {
 		return new ReferenceSetTypesConfigurationService();
 	}
 
+	@Bean
+	@ConfigurationProperties(prefix = "search.language")
+	public SearchLanguagesConfiguration searchLanguagesConfiguration() {
+		return new SearchLanguagesConfiguration();
+	}
+
+	@Bean
+	public SearchResultCache<Page<BrowserDescriptionSearchResult>> browserDescriptionSearchCache(
+			@Value("${search.description.result-cache.enabled}") boolean enabled,
+			@Value("${search.description.result-cache.max-entries}") int maxEntries,
+			@Value("${search.description.result-cache.stale-while-revalidate}") boolean staleWhileRevalidate) {
+
+		// Serving results from an older branch head is only acceptable when content is not being authored
+		return new SearchResultCache<>("Browser description search", enabled, maxEntries, staleWhileRevalidate && restApiReadOnly);
+	}
+
+	@Bean
+	public ExportArchiveCache exportArchiveCache(
+			@Value("${export.cache.enabled}") boolean enabled,
+			@Value("${export.cache.directory}") String directory,
+			@Value("${export.cache.max-size-mb}") long maxSizeMegabytes) {
+
+		return new ExportArchiveCache(enabled, directory, maxSizeMegabytes);
+	}
+
+	@Bean
+	public BranchJobExecutor branchJobExecutor(
+			@Value("${branch-jobs.max-concurrent}") int maxConcurrentJobs,
+			@Value("${branch-jobs.queue-size}") int queueSize,
+			@Value("${branch-jobs.promotion-threads}") int promotionThreads) {
+
+		return new BranchJobExecutor(maxConcurrentJobs, queueSize, promotionThreads);
+	}
+
 	@Bean
 	public ECLQueryBuilder eclQueryBuilder() {
 		return new ECLQueryBuilder(new SECLObjectFactory());
@@ -1,7 +1,10 @@
 package org.snomed.snowstorm.core.data.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 import java.util.Date;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class BranchMergeJob {
 
@@ -9,11 +12,16 @@ public class BranchMergeJob {
 	private final String source;
 	private final String target;
 	private final Date scheduledDate;
-	private Date startDate;
-	private JobStatus status;
-	private Date endDate;
+	private volatile Date startDate;
+	private volatile JobStatus status;
+	private volatile Date endDate;
 	private String message;
 
+	// Promotion progress, component types are promoted concurrently
+	private volatile long componentsToPromote;
+	private final AtomicLong componentsPromoted = new AtomicLong();
+	private volatile boolean cancelRequested;
+
 	public BranchMergeJob(String source, String target, JobStatus status) {
 		id = UUID.randomUUID().toString();
 		this.source = source;
@@ -69,4 +77,47 @@ public class BranchMergeJob {
 	public String getMessage() {
 		return message;
 	}
+
+	public void setComponentsToPromote(long componentsToPromote) {
+		this.componentsToPromote = componentsToPromote;
+	}
+
+	public long getComponentsToPromote() {
+		return componentsToPromote;
+	}
+
+	public void addComponentsPromoted(long count) {
+		componentsPromoted.addAndGet(count);
+	}
+
+	public long getComponentsPromoted() {
+		return componentsPromoted.get();
+	}
+
+	/**
+	 * @return milliseconds between scheduling and starting, or until now if the job is still queued.
+	 */
+	public long getQueueTimeMillis() {
+		Date queueEnd = startDate != null ? startDate : endDate != null ? endDate : new Date();
+		return queueEnd.getTime() - scheduledDate.getTime();
+	}
+
+	/**
+	 * @return milliseconds between starting and ending, or until now if the job is running. Null if the job has not started.
+	 */
+	public Long getRunTimeMillis() {
+		if (startDate == null) {
+			return null;
+		}
+		return (endDate != null ? endDate : new Date()).getTime() - startDate.getTime();
+	}
+
+	public void requestCancel() {
+		cancelRequested = true;
+	}
+
+	@JsonIgnore
+	public boolean isCancelRequested() {
+		return cancelRequested;
+	}
 }
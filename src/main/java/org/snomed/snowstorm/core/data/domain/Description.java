@@ -8,6 +8,7 @@ import org.snomed.snowstorm.rest.View;
 import org.springframework.data.elasticsearch.annotations.Document;
 import org.springframework.data.elasticsearch.annotations.Field;
 import org.springframework.data.elasticsearch.annotations.FieldType;
+import org.springframework.data.elasticsearch.annotations.Setting;
 
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
@@ -19,14 +20,20 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 @Document(indexName = "es-description", type = "description", shards = 8)
+@Setting(settingPath = "elasticsearch/description-settings.json")
 public class Description extends SnomedComponent<Description> implements SnomedComponentWithInactivationIndicator, SnomedComponentWithAssociations {
 
 	public interface Fields extends SnomedComponent.Fields {
 		String DESCRIPTION_ID = "descriptionId";
 		String TERM = "term";
+		String TERM_FOLDED = "termFolded";
 		String TERM_LEN = "termLen";
 		String TAG = "tag";
 		String CONCEPT_ID = "conceptId";
+		String CONCEPT_ACTIVE = "conceptActive";
+		String CONCEPT_SEMANTIC_TAGS = "conceptSemanticTags";
+		String CONCEPT_REFSET_IDS = "conceptRefsetIds";
+		String CONCEPT_FIELDS_INDEXED = "conceptFieldsIndexed";
 		String TYPE_ID = "typeId";
 		String LANGUAGE_CODE = "languageCode";
 	}
@@ -41,6 +48,10 @@ public class Description extends SnomedComponent<Description> implements SnomedC
 	@NotNull
 	private String term;
 
+	// Populated on save using the character folding configured for the description language
+	@Field(type = FieldType.text, analyzer = "typeahead_index", searchAnalyzer = "typeahead_search")
+	private String termFolded;
+
 	@Field(type = FieldType.Integer)
 	private int termLen;
 
@@ -51,6 +62,22 @@ public class Description extends SnomedComponent<Description> implements SnomedC
 	@Field(type = FieldType.keyword, store = true)
 	private String conceptId;
 
+	// Active status of the concept, maintained by a commit hook to allow filtering without querying concepts
+	@Field(type = FieldType.Boolean)
+	private boolean conceptActive;
+
+	// Semantic tags of the active FSNs of the concept, maintained by the same commit hook to allow search facets without querying concepts
+	@Field(type = FieldType.keyword)
+	private Set<String> conceptSemanticTags;
+
+	// Reference sets which the concept is an active member of, maintained by the same commit hook
+	@Field(type = FieldType.keyword)
+	private Set<String> conceptRefsetIds;
+
+	// Set by the commit hook, descriptions stored before the concept fields existed do not have it
+	@Field(type = FieldType.Boolean)
+	private boolean conceptFieldsIndexed;
+
 	@JsonView(value = View.Component.class)
 	@Field(type = FieldType.keyword)
 	@NotNull
@@ -98,6 +125,7 @@ public class Description extends SnomedComponent<Description> implements SnomedC
 
 	public Description() {
 		active = true;
+		conceptActive = true;
 		term = "";
 		moduleId = Concepts.CORE_MODULE;
 		languageCode = "en";
@@ -310,6 +338,14 @@ public class Description extends SnomedComponent<Description> implements SnomedC
 		}
 	}
 
+	public String getTermFolded() {
+		return termFolded;
+	}
+
+	public void setTermFolded(String termFolded) {
+		this.termFolded = termFolded;
+	}
+
 	public void setTermLen(int termLen) {
 		this.termLen = termLen;
 	}
@@ -338,6 +374,38 @@ public class Description extends SnomedComponent<Description> implements SnomedC
 		return this;
 	}
 
+	public boolean isConceptActive() {
+		return conceptActive;
+	}
+
+	public void setConceptActive(boolean conceptActive) {
+		this.conceptActive = conceptActive;
+	}
+
+	public Set<String> getConceptSemanticTags() {
+		return conceptSemanticTags;
+	}
+
+	public void setConceptSemanticTags(Set<String> conceptSemanticTags) {
+		this.conceptSemanticTags = conceptSemanticTags;
+	}
+
+	public Set<String> getConceptRefsetIds() {
+		return conceptRefsetIds;
+	}
+
+	public void setConceptRefsetIds(Set<String> conceptRefsetIds) {
+		this.conceptRefsetIds = conceptRefsetIds;
+	}
+
+	public boolean isConceptFieldsIndexed() {
+		return conceptFieldsIndexed;
+	}
+
+	public void setConceptFieldsIndexed(boolean conceptFieldsIndexed) {
+		this.conceptFieldsIndexed = conceptFieldsIndexed;
+	}
+
 	public String getModuleId() {
 		return moduleId;
 	}
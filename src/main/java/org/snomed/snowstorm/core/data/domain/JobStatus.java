@@ -1,5 +1,5 @@
 package org.snomed.snowstorm.core.data.domain;
 
 public enum JobStatus {
-	SCHEDULED, IN_PROGRESS, COMPLETED, FAILED
+	SCHEDULED, IN_PROGRESS, COMPLETED, FAILED, CANCELLED
 }
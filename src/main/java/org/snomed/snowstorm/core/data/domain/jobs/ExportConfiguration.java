@@ -4,8 +4,11 @@ import io.swagger.annotations.ApiModelProperty;
 import org.snomed.snowstorm.core.rf2.RF2Type;
 import org.springframework.data.elasticsearch.annotations.Document;
 
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
 import javax.validation.constraints.NotNull;
 import java.util.Date;
+import java.util.Set;
 
 @Document(indexName = "es-export", type = "export", shards = 8)
 public final class ExportConfiguration {
@@ -21,6 +24,26 @@ public final class ExportConfiguration {
 	@ApiModelProperty(value = "false")
 	private boolean conceptsAndRelationshipsOnly;
 
+	@ApiModelProperty(value = "false", notes = "Send each file to the client as it is written rather than after the whole archive is built.")
+	private boolean streamed;
+
+	@Min(0)
+	@Max(9)
+	@ApiModelProperty(notes = "Zip compression level from 0, no compression, to 9. Lower levels are faster to write. Defaults to the standard zip level.")
+	private Integer compressionLevel;
+
+	@ApiModelProperty(notes = "Only export rows with one of these module ids.")
+	private Set<String> moduleIds;
+
+	@ApiModelProperty(notes = "Only export members of these reference sets. Concepts, descriptions and relationships are not affected.")
+	private Set<String> refsetIds;
+
+	@ApiModelProperty(notes = "Only export rows with this effective time or later, in the format yyyyMMdd. Unreleased rows are included unless an endEffectiveTime is given.")
+	private Integer startEffectiveTime;
+
+	@ApiModelProperty(notes = "Only export rows with this effective time or earlier, in the format yyyyMMdd. Unreleased rows are not included.")
+	private Integer endEffectiveTime;
+
 	private String id;
 	private Date startDate;
 
@@ -64,6 +87,54 @@ public final class ExportConfiguration {
 		this.conceptsAndRelationshipsOnly = conceptsAndRelationshipsOnly;
 	}
 
+	public boolean isStreamed() {
+		return streamed;
+	}
+
+	public void setStreamed(boolean streamed) {
+		this.streamed = streamed;
+	}
+
+	public Integer getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	public void setCompressionLevel(Integer compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	public Set<String> getModuleIds() {
+		return moduleIds;
+	}
+
+	public void setModuleIds(Set<String> moduleIds) {
+		this.moduleIds = moduleIds;
+	}
+
+	public Set<String> getRefsetIds() {
+		return refsetIds;
+	}
+
+	public void setRefsetIds(Set<String> refsetIds) {
+		this.refsetIds = refsetIds;
+	}
+
+	public Integer getStartEffectiveTime() {
+		return startEffectiveTime;
+	}
+
+	public void setStartEffectiveTime(Integer startEffectiveTime) {
+		this.startEffectiveTime = startEffectiveTime;
+	}
+
+	public Integer getEndEffectiveTime() {
+		return endEffectiveTime;
+	}
+
+	public void setEndEffectiveTime(Integer endEffectiveTime) {
+		this.endEffectiveTime = endEffectiveTime;
+	}
+
 	public String getId() {
 		return id;
 	}
@@ -0,0 +1,176 @@
+package org.snomed.snowstorm.core.data.domain.jobs;
+
+import org.snomed.snowstorm.core.rf2.RF2Type;
+import org.snomed.snowstorm.core.rf2.rf2import.ImportJob;
+import org.springframework.data.elasticsearch.annotations.Document;
+import org.springframework.data.elasticsearch.annotations.Field;
+import org.springframework.data.elasticsearch.annotations.FieldType;
+
+import java.util.Date;
+import java.util.Set;
+
+/**
+ * Persisted copy of an RF2 import job so that the job and its last checkpoint survive a restart.
+ * A checkpoint is the last release date committed by a Full import together with the branch head at that point,
+ * an import can only resume from the checkpoint while the branch head is unchanged.
+ */
+@Document(indexName = "es-import-job", type = "import-job", shards = 8)
+public class ImportJobState {
+
+	@Field(type = FieldType.keyword)
+	private String id;
+
+	@Field(type = FieldType.keyword)
+	private RF2Type type;
+
+	@Field(type = FieldType.keyword)
+	private String branchPath;
+
+	@Field(type = FieldType.Boolean)
+	private boolean createCodeSystemVersion;
+
+	@Field(type = FieldType.keyword)
+	private Set<String> moduleIds;
+
+	@Field(type = FieldType.Integer)
+	private Integer patchReleaseVersion;
+
+	@Field(type = FieldType.Boolean)
+	private boolean bulkIndexingProfile;
+
+	@Field(type = FieldType.Boolean)
+	private boolean deferSemanticIndex;
+
+	@Field(type = FieldType.keyword)
+	private ImportJob.ImportStatus status;
+
+	@Field(type = FieldType.keyword)
+	private String errorMessage;
+
+	@Field(type = FieldType.keyword)
+	private String localFilePath;
+
+	@Field(type = FieldType.keyword)
+	private String checkpointReleaseDate;
+
+	@Field(type = FieldType.Long)
+	private Long checkpointBranchHeadTimestamp;
+
+	@Field(type = FieldType.Date)
+	private Date lastUpdated;
+
+	public ImportJobState() {
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public void setId(String id) {
+		this.id = id;
+	}
+
+	public RF2Type getType() {
+		return type;
+	}
+
+	public void setType(RF2Type type) {
+		this.type = type;
+	}
+
+	public String getBranchPath() {
+		return branchPath;
+	}
+
+	public void setBranchPath(String branchPath) {
+		this.branchPath = branchPath;
+	}
+
+	public boolean isCreateCodeSystemVersion() {
+		return createCodeSystemVersion;
+	}
+
+	public void setCreateCodeSystemVersion(boolean createCodeSystemVersion) {
+		this.createCodeSystemVersion = createCodeSystemVersion;
+	}
+
+	public Set<String> getModuleIds() {
+		return moduleIds;
+	}
+
+	public void setModuleIds(Set<String> moduleIds) {
+		this.moduleIds = moduleIds;
+	}
+
+	public Integer getPatchReleaseVersion() {
+		return patchReleaseVersion;
+	}
+
+	public void setPatchReleaseVersion(Integer patchReleaseVersion) {
+		this.patchReleaseVersion = patchReleaseVersion;
+	}
+
+	public boolean isBulkIndexingProfile() {
+		return bulkIndexingProfile;
+	}
+
+	public void setBulkIndexingProfile(boolean bulkIndexingProfile) {
+		this.bulkIndexingProfile = bulkIndexingProfile;
+	}
+
+	public boolean isDeferSemanticIndex() {
+		return deferSemanticIndex;
+	}
+
+	public void setDeferSemanticIndex(boolean deferSemanticIndex) {
+		this.deferSemanticIndex = deferSemanticIndex;
+	}
+
+	public ImportJob.ImportStatus getStatus() {
+		return status;
+	}
+
+	public void setStatus(ImportJob.ImportStatus status) {
+		this.status = status;
+	}
+
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	public void setErrorMessage(String errorMessage) {
+		this.errorMessage = errorMessage;
+	}
+
+	public String getLocalFilePath() {
+		return localFilePath;
+	}
+
+	public void setLocalFilePath(String localFilePath) {
+		this.localFilePath = localFilePath;
+	}
+
+	public String getCheckpointReleaseDate() {
+		return checkpointReleaseDate;
+	}
+
+	public void setCheckpointReleaseDate(String checkpointReleaseDate) {
+		this.checkpointReleaseDate = checkpointReleaseDate;
+	}
+
+	public Long getCheckpointBranchHeadTimestamp() {
+		return checkpointBranchHeadTimestamp;
+	}
+
+	public void setCheckpointBranchHeadTimestamp(Long checkpointBranchHeadTimestamp) {
+		this.checkpointBranchHeadTimestamp = checkpointBranchHeadTimestamp;
+	}
+
+	public Date getLastUpdated() {
+		return lastUpdated;
+	}
+
+	public void setLastUpdated(Date lastUpdated) {
+		this.lastUpdated = lastUpdated;
+	}
+}
@@ -10,4 +10,6 @@ public interface CodeSystemVersionRepository extends ElasticsearchCrudRepository
 	List<CodeSystemVersion> findByShortNameOrderByEffectiveDate(String shortName);
 
 	CodeSystemVersion findOneByShortNameAndEffectiveDate(String shortName, Integer effectiveDate);
+
+	CodeSystemVersion findOneByParentBranchPathAndVersion(String parentBranchPath, String version);
 }
@@ -0,0 +1,8 @@
+package org.snomed.snowstorm.core.data.repositories.jobs;
+
+import org.snomed.snowstorm.core.data.domain.jobs.ImportJobState;
+import org.springframework.data.elasticsearch.repository.ElasticsearchCrudRepository;
+
+public interface ImportJobStateRepository extends ElasticsearchCrudRepository<ImportJobState, String> {
+
+}
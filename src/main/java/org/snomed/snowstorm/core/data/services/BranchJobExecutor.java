@@ -0,0 +1,177 @@
+package org.snomed.snowstorm.core.data.services;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Runs long running branch jobs, merges and merge reviews, on one bounded pool.
+ * When all threads are busy jobs wait in a bounded queue, new jobs are refused when the queue is full.
+ * Queue and run times are recorded for each job type.
+ * Promotions write their component types concurrently using a second bounded pool, also shared by all jobs.
+ */
+public class BranchJobExecutor {
+
+	private final int maxConcurrentJobs;
+	private final int queueSize;
+	private final ThreadPoolExecutor jobExecutorService;
+	private final ExecutorService taskExecutorService;
+
+	// Job type to metrics, in the order types were first submitted
+	private final Map<String, JobTypeMetrics> jobTypeMetrics = new LinkedHashMap<>();
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public BranchJobExecutor(int maxConcurrentJobs, int queueSize, int taskThreads) {
+		this.maxConcurrentJobs = maxConcurrentJobs;
+		this.queueSize = queueSize;
+		jobExecutorService = new ThreadPoolExecutor(maxConcurrentJobs, maxConcurrentJobs, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize));
+		taskExecutorService = Executors.newFixedThreadPool(taskThreads);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		jobExecutorService.shutdownNow();
+		taskExecutorService.shutdownNow();
+	}
+
+	/**
+	 * @param jobType used to group the timing metrics.
+	 * @return the future of the job, which can be passed to {@link #cancel(String, Future)}.
+	 * @throws ServiceUnavailableException if the queue is full.
+	 */
+	public Future<?> submit(String jobType, Runnable job) {
+		JobTypeMetrics metrics = getJobTypeMetrics(jobType);
+		long submitted = System.currentTimeMillis();
+		try {
+			Future<?> future = jobExecutorService.submit(() -> {
+				long started = System.currentTimeMillis();
+				try {
+					job.run();
+				} finally {
+					metrics.ran(started - submitted, System.currentTimeMillis() - started);
+				}
+			});
+			metrics.submitted();
+			return future;
+		} catch (RejectedExecutionException e) {
+			metrics.rejected();
+			logger.warn("Refused {} job, {} jobs are already queued.", jobType, jobExecutorService.getQueue().size());
+			throw new ServiceUnavailableException("Too many branch merges and reviews are waiting to run, please try again later.");
+		}
+	}
+
+	/**
+	 * Removes a job from the queue. Jobs which have already started are not interrupted, they must check for cancellation themselves.
+	 * @return true if the job had not started and never will.
+	 */
+	public boolean cancel(String jobType, Future<?> future) {
+		if (future.cancel(false) && jobExecutorService.remove((Runnable) future)) {
+			getJobTypeMetrics(jobType).cancelled();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Runs the tasks concurrently and waits for all of them to finish, even if one fails,
+	 * so that nothing is still being written when the caller handles the failure.
+	 * @throws ServiceException with the cause of the first failure.
+	 */
+	public void runConcurrently(Collection<Runnable> tasks) throws ServiceException {
+		List<Future<?>> futures = new ArrayList<>();
+		for (Runnable task : tasks) {
+			futures.add(taskExecutorService.submit(task));
+		}
+		Throwable failure = null;
+		boolean interrupted = false;
+		for (Future<?> future : futures) {
+			while (true) {
+				try {
+					future.get();
+					break;
+				} catch (InterruptedException e) {
+					interrupted = true;
+				} catch (ExecutionException e) {
+					if (failure == null) {
+						failure = e.getCause();
+					}
+					break;
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (failure != null) {
+			if (failure instanceof RuntimeException) {
+				throw (RuntimeException) failure;
+			}
+			throw new ServiceException("Branch job task failed.", failure);
+		}
+	}
+
+	private synchronized JobTypeMetrics getJobTypeMetrics(String jobType) {
+		return jobTypeMetrics.computeIfAbsent(jobType, type -> new JobTypeMetrics());
+	}
+
+	public synchronized Map<String, Object> getMetrics() {
+		Map<String, Object> metrics = new LinkedHashMap<>();
+		metrics.put("maxConcurrentJobs", maxConcurrentJobs);
+		metrics.put("maxQueuedJobs", queueSize);
+		metrics.put("activeJobs", jobExecutorService.getActiveCount());
+		metrics.put("queuedJobs", jobExecutorService.getQueue().size());
+		Map<String, Object> types = new LinkedHashMap<>();
+		jobTypeMetrics.forEach((type, typeMetrics) -> types.put(type, typeMetrics.toMap()));
+		metrics.put("jobTypes", types);
+		return metrics;
+	}
+
+	private static final class JobTypeMetrics {
+
+		private long submitted;
+		private long rejected;
+		private long cancelled;
+		private long ran;
+		private long totalQueueMillis;
+		private long maxQueueMillis;
+		private long totalRunMillis;
+		private long maxRunMillis;
+
+		private synchronized void submitted() {
+			submitted++;
+		}
+
+		private synchronized void rejected() {
+			rejected++;
+		}
+
+		private synchronized void cancelled() {
+			cancelled++;
+		}
+
+		private synchronized void ran(long queueMillis, long runMillis) {
+			ran++;
+			totalQueueMillis += queueMillis;
+			maxQueueMillis = Math.max(maxQueueMillis, queueMillis);
+			totalRunMillis += runMillis;
+			maxRunMillis = Math.max(maxRunMillis, runMillis);
+		}
+
+		private synchronized Map<String, Object> toMap() {
+			Map<String, Object> map = new LinkedHashMap<>();
+			map.put("submitted", submitted);
+			map.put("rejected", rejected);
+			map.put("cancelled", cancelled);
+			map.put("ran", ran);
+			map.put("averageQueueMillis", ran > 0 ? totalQueueMillis / ran : 0);
+			map.put("maxQueueMillis", maxQueueMillis);
+			map.put("averageRunMillis", ran > 0 ? totalRunMillis / ran : 0);
+			map.put("maxRunMillis", maxRunMillis);
+			return map;
+		}
+	}
+}
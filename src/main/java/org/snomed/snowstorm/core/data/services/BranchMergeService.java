@@ -21,14 +21,15 @@ import org.snomed.snowstorm.core.data.services.pojo.IntegrityIssueReport;
 import org.snomed.snowstorm.rest.pojo.MergeRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.data.elasticsearch.repository.ElasticsearchCrudRepository;
 import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
@@ -58,12 +59,18 @@ public class BranchMergeService {
 	@Autowired
 	private IntegrityService integrityService;
 
+	@Autowired
+	private BranchJobExecutor branchJobExecutor;
+
 	// TODO: Move to persistent storage to prepare for autoscaling
 	private final Cache<String, BranchMergeJob> branchMergeJobStore = CacheBuilder.newBuilder()
 			.expireAfterWrite(12, TimeUnit.HOURS)
 			.build();
 
-	private final ExecutorService executorService = Executors.newCachedThreadPool();
+	// Futures of merge jobs which have not finished, used to remove cancelled jobs from the queue
+	private final Map<String, Future<?>> mergeJobFutures = new ConcurrentHashMap<>();
+
+	private static final String MERGE_JOB_TYPE = "merge";
 	private static final String USE_BRANCH_REVIEW = "The target branch is diverged, please use the branch review endpoint instead.";
 	private static final Logger logger = LoggerFactory.getLogger(BranchMergeService.class);
 
@@ -82,24 +89,68 @@ public class BranchMergeService {
 //		}
 
 		BranchMergeJob mergeJob = new BranchMergeJob(source, target, JobStatus.SCHEDULED);
-		executorService.submit(() -> {
+		synchronized (mergeJob) {
+			mergeJobFutures.put(mergeJob.getId(), branchJobExecutor.submit(MERGE_JOB_TYPE, () -> runMergeJob(mergeJob)));
+		}
+		branchMergeJobStore.put(mergeJob.getId(), mergeJob);
+
+		return mergeJob;
+	}
+
+	private void runMergeJob(BranchMergeJob mergeJob) {
+		synchronized (mergeJob) {
+			if (mergeJob.getStatus() == JobStatus.CANCELLED) {
+				return;
+			}
 			mergeJob.setStartDate(new Date());
 			mergeJob.setStatus(JobStatus.IN_PROGRESS);
-			try {
-				mergeBranchSync(source, target, null);
-				mergeJob.setStatus(JobStatus.COMPLETED);
-				mergeJob.setEndDate(new Date());
-			} catch (Exception e) {
+		}
+		try {
+			mergeBranchSync(mergeJob.getSource(), mergeJob.getTarget(), null, false, mergeJob);
+			mergeJob.setStatus(JobStatus.COMPLETED);
+		} catch (Exception e) {
+			if (mergeJob.isCancelRequested()) {
+				mergeJob.setStatus(JobStatus.CANCELLED);
+				logger.info("Merge {} -> {} cancelled.", mergeJob.getSource(), mergeJob.getTarget());
+			} else {
 				mergeJob.setStatus(JobStatus.FAILED);
 				mergeJob.setMessage(e.getMessage());
 				logger.error("Failed to merge branch",e);
 			}
-		});
-		branchMergeJobStore.put(mergeJob.getId(), mergeJob);
+		} finally {
+			mergeJob.setEndDate(new Date());
+			mergeJobFutures.remove(mergeJob.getId());
+		}
+	}
 
+	/**
+	 * A queued merge is removed from the queue. A running promotion stops after the current batch and its commit is rolled back,
+	 * a running rebase is not stopped.
+	 */
+	public BranchMergeJob cancelBranchMergeJob(String id) {
+		BranchMergeJob mergeJob = getBranchMergeJobOrThrow(id);
+		synchronized (mergeJob) {
+			JobStatus status = mergeJob.getStatus();
+			if (status == JobStatus.SCHEDULED) {
+				mergeJob.setStatus(JobStatus.CANCELLED);
+				mergeJob.setEndDate(new Date());
+				Future<?> future = mergeJobFutures.remove(id);
+				if (future != null) {
+					branchJobExecutor.cancel(MERGE_JOB_TYPE, future);
+				}
+			} else if (status == JobStatus.IN_PROGRESS) {
+				mergeJob.requestCancel();
+			} else {
+				throw new IllegalStateException("Branch merge job is already " + status + ".");
+			}
+		}
 		return mergeJob;
 	}
 
+	public Map<String, Object> getBranchJobMetrics() {
+		return branchJobExecutor.getMetrics();
+	}
+
 	public BranchMergeJob getBranchMergeJobOrThrow(String id) {
 		BranchMergeJob mergeJob = branchMergeJobStore.getIfPresent(id);
 		if (mergeJob == null) {
@@ -113,6 +164,10 @@ public class BranchMergeService {
 	}
 
 	public void mergeBranchSync(String source, String target, Collection<Concept> manuallyMergedConcepts, boolean permissive) throws ServiceException {
+		mergeBranchSync(source, target, manuallyMergedConcepts, permissive, null);
+	}
+
+	private void mergeBranchSync(String source, String target, Collection<Concept> manuallyMergedConcepts, boolean permissive, BranchMergeJob mergeJob) throws ServiceException {
 		logger.info("Request merge {} -> {}", source, target);
 		final Branch sourceBranch = branchService.findBranchOrThrow(source);
 		final Branch targetBranch = branchService.findBranchOrThrow(target);
@@ -168,21 +223,34 @@ public class BranchMergeService {
 				logger.info("Performing promotion {} -> {}", source, target);
 				final Map<String, Set<String>> versionsReplaced = sourceBranch.getVersionsReplaced();
 				final Map<Class<? extends SnomedComponent>, ElasticsearchCrudRepository> componentTypeRepoMap = domainEntityConfiguration.getComponentTypeRepositoryMap();
-				componentTypeRepoMap.entrySet().parallelStream().forEach(entry -> promoteEntities(source, commit, entry.getKey(), entry.getValue(), versionsReplaced));
+				if (mergeJob != null) {
+					mergeJob.setComponentsToPromote(componentTypeRepoMap.keySet().stream()
+							.mapToLong(entityClass -> elasticsearchTemplate.count(getChangesOnSourceQuery(source, entityClass), entityClass))
+							.sum());
+				}
+				List<Runnable> promotions = componentTypeRepoMap.entrySet().stream()
+						.map(entry -> (Runnable) () -> promoteEntities(source, commit, entry.getKey(), entry.getValue(), versionsReplaced, mergeJob))
+						.collect(Collectors.toList());
+				branchJobExecutor.runConcurrently(promotions);
 				commit.markSuccessful();
 			}
 		}
 	}
 
+	/**
+	 * Entities are promoted one scroll page at a time so that memory use does not depend on the size of the promotion.
+	 * Each page is ended on the source and then saved on the target before the next page is read.
+	 */
 	private <T extends SnomedComponent> void promoteEntities(String source, Commit commit, Class<T> entityClass,
-			ElasticsearchCrudRepository<T, String> entityRepository, Map<String, Set<String>> versionsReplaced) {
+			ElasticsearchCrudRepository<T, String> entityRepository, Map<String, Set<String>> versionsReplaced, BranchMergeJob mergeJob) {
 
 		final String targetPath = commit.getBranch().getPath();
 
 		// End entities on target which have been replaced on source branch
-		List<T> toEnd = new ArrayList<>();
 		String entityClassName = entityClass.getSimpleName();
+		int ended = 0;
 		for (List<String> versionsReplacedSegment : Iterables.partition(versionsReplaced.getOrDefault(entityClassName, Collections.emptySet()), 1000)) {
+			List<T> toEnd = new ArrayList<>();
 			try (final CloseableIterator<T> entitiesToEnd = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
 					.withQuery(boolQuery()
 							.must(termQuery("path", targetPath))
@@ -197,38 +265,60 @@ public class BranchMergeService {
 					}
 				});
 			}
-		}
-		if (!toEnd.isEmpty()) {
-			// End entities on target
-			toEnd.forEach(entity -> entity.setEnd(commit.getTimepoint()));
-			entityRepository.saveAll(toEnd);
-
-			commit.getEntityVersionsReplaced().getOrDefault(entityClassName, Collections.emptySet()).removeAll(toEnd.stream().map(Entity::getInternalId).collect(Collectors.toList()));
+			if (!toEnd.isEmpty()) {
+				// End entities on target
+				toEnd.forEach(entity -> entity.setEnd(commit.getTimepoint()));
+				entityRepository.saveAll(toEnd);
 
-			logger.debug("Ended {} {}", versionsReplaced.size(), entityClassName);
+				commit.getEntityVersionsReplaced().getOrDefault(entityClassName, Collections.emptySet()).removeAll(toEnd.stream().map(Entity::getInternalId).collect(Collectors.toList()));
+				ended += toEnd.size();
+			}
+		}
+		if (ended > 0) {
+			logger.debug("Ended {} {}", ended, entityClassName);
 		}
 
-		// Load all entities on source
-		try (final CloseableIterator<T> entities = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
-				.withQuery(versionControlHelper.getChangesOnBranchCriteria(source).getEntityBranchCriteria(entityClass))
-				.withPageable(ConceptService.LARGE_PAGE)
-				.build(), entityClass)) {
-
-			List<T> toPromote = new ArrayList<>();
-			entities.forEachRemaining(toPromote::add);
-			if (toPromote.isEmpty()) {
-				return;
+		// Stream entities on source
+		try (final CloseableIterator<T> entities = elasticsearchTemplate.stream(getChangesOnSourceQuery(source, entityClass), entityClass)) {
+			int batchSize = ConceptService.LARGE_PAGE.getPageSize();
+			List<T> batch = new ArrayList<>(batchSize);
+			long promoted = 0;
+			while (entities.hasNext()) {
+				if (mergeJob != null && mergeJob.isCancelRequested()) {
+					// The commit is rolled back
+					throw new IllegalStateException("Branch merge cancelled.");
+				}
+				batch.add(entities.next());
+				if (batch.size() == batchSize || !entities.hasNext()) {
+					promoteBatch(batch, entityClass, entityRepository, commit);
+					promoted += batch.size();
+					if (mergeJob != null) {
+						mergeJob.addComponentsPromoted(batch.size());
+					}
+					batch.clear();
+				}
 			}
-			logger.info("Promoting {} {}", toPromote.size(), entityClassName);
+			if (promoted > 0) {
+				logger.info("Promoted {} {}", promoted, entityClassName);
+			}
+		}
+	}
 
-			// End entities on source
-			toPromote.forEach(entity -> entity.setEnd(commit.getTimepoint()));
-			entityRepository.saveAll(toPromote);
+	private <T extends SnomedComponent> void promoteBatch(List<T> batch, Class<T> entityClass, ElasticsearchCrudRepository<T, String> entityRepository, Commit commit) {
+		// End entities on source
+		batch.forEach(entity -> entity.setEnd(commit.getTimepoint()));
+		entityRepository.saveAll(batch);
 
-			// Save entities on target
-			toPromote.forEach(DomainEntity::markChanged);
-			conceptService.doSaveBatchComponents(toPromote, entityClass, commit);
-		}
+		// Save entities on target
+		batch.forEach(DomainEntity::markChanged);
+		conceptService.doSaveBatchComponents(batch, entityClass, commit);
+	}
+
+	private NativeSearchQuery getChangesOnSourceQuery(String source, Class<? extends SnomedComponent> entityClass) {
+		return new NativeSearchQueryBuilder()
+				.withQuery(versionControlHelper.getChangesOnBranchCriteria(source).getEntityBranchCriteria(entityClass))
+				.withPageable(ConceptService.LARGE_PAGE)
+				.build();
 	}
 
 	private BranchReview checkBranchReview(MergeRequest mergeRequest, String sourceBranchPath, String targetBranchPath) {
@@ -25,8 +25,6 @@ import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -51,7 +49,8 @@ public class BranchReviewService {
 	@Autowired
 	private ElasticsearchOperations elasticsearchTemplate;
 
-	private final ExecutorService executorService = Executors.newCachedThreadPool();
+	@Autowired
+	private BranchJobExecutor branchJobExecutor;
 
 	private final Map<String, BranchReview> reviewIndex = new HashMap<>();
 
@@ -85,7 +84,7 @@ public class BranchReviewService {
 		final MergeReview mergeReview = new MergeReview(UUID.randomUUID().toString(), source, target,
 				sourceToTarget.getId(), targetToSource.getId());
 		mergeReview.setStatus(ReviewStatus.PENDING);
-		executorService.submit(() -> {
+		branchJobExecutor.submit("merge-review", () -> {
 			try {
 				getBranchReviewConceptChanges(sourceToTarget.getId());
 				getBranchReviewConceptChanges(targetToSource.getId());
@@ -130,6 +130,17 @@ public class CodeSystemService {
 		return versionRepository.findByShortNameOrderByEffectiveDate(shortName);
 	}
 
+	/**
+	 * @return the code system version which has this branch, if any.
+	 */
+	public Optional<CodeSystemVersion> findVersionByBranchPath(String branchPath) {
+		int lastSlash = branchPath.lastIndexOf("/");
+		if (lastSlash == -1) {
+			return Optional.empty();
+		}
+		return Optional.ofNullable(versionRepository.findOneByParentBranchPathAndVersion(branchPath.substring(0, lastSlash), branchPath.substring(lastSlash + 1)));
+	}
+
 	public void deleteAll() {
 		repository.deleteAll();
 		versionRepository.deleteAll();
@@ -0,0 +1,180 @@
+package org.snomed.snowstorm.core.data.services;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Branch;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.terms.ParsedStringTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.terms.support.IncludeExclude;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.domain.Description;
+import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
+import org.snomed.snowstorm.core.data.services.pojo.ConceptFacetIndex;
+import org.snomed.snowstorm.core.util.TimerUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.aggregation.AggregatedPage;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
+import static java.lang.Long.parseLong;
+import static org.elasticsearch.index.query.QueryBuilders.*;
+import static org.snomed.snowstorm.config.Config.PAGE_OF_ONE;
+
+/**
+ * Maintains a per branch index of concept semantic tags and reference set memberships used for description search facets
+ * when the matching descriptions were indexed before the concept fields were held on each description. Disabled by default.
+ * An index is only used while the branch head matches the head it was built from.
+ * Indexes are built in the background so searches on a branch which has just changed fall back to Elasticsearch aggregations.
+ */
+@Service
+public class ConceptFacetIndexService {
+
+	private static final int MAX_REFSETS = 10_000;
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private ElasticsearchOperations elasticsearchTemplate;
+
+	@Autowired
+	private ReferenceSetMemberService memberService;
+
+	private final boolean enabled;
+	private final Cache<String, ConceptFacetIndex> facetIndexCache;
+	private final Set<String> buildsInProgress = ConcurrentHashMap.newKeySet();
+	private final ExecutorService buildExecutorService = Executors.newSingleThreadExecutor();
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public ConceptFacetIndexService(
+			@Value("${search.description.facet-index.enabled}") boolean enabled,
+			@Value("${search.description.facet-index.max-branches}") int maxBranches) {
+
+		this.enabled = enabled;
+		facetIndexCache = CacheBuilder.newBuilder()
+				.maximumSize(maxBranches)
+				.build();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		buildExecutorService.shutdownNow();
+	}
+
+	/**
+	 * @return The facet index for the current head of the branch or null if there is not one yet, in which case a build will be started.
+	 */
+	public ConceptFacetIndex getFacetIndexIfReady(String path) {
+		if (!enabled) {
+			return null;
+		}
+		Branch branch = branchService.findBranchOrThrow(path);
+		ConceptFacetIndex facetIndex = facetIndexCache.getIfPresent(path);
+		if (facetIndex != null && facetIndex.getHeadTimestamp() == branch.getHeadTimestamp()) {
+			return facetIndex;
+		}
+		if (buildsInProgress.add(path)) {
+			buildExecutorService.submit(() -> {
+				try {
+					buildFacetIndex(path);
+				} catch (Exception e) {
+					logger.error("Failed to build concept facet index for branch {}", path, e);
+				} finally {
+					buildsInProgress.remove(path);
+				}
+			});
+		}
+		return null;
+	}
+
+	public ConceptFacetIndex buildFacetIndex(String path) {
+		TimerUtil timer = new TimerUtil("Facet index " + path);
+		Branch branch = branchService.findBranchOrThrow(path);
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branch);
+		ConceptFacetIndex facetIndex = new ConceptFacetIndex(path, branch.getHeadTimestamp());
+
+		// Semantic tags from active FSNs
+		try (CloseableIterator<Description> fsnStream = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteria.getEntityBranchCriteria(Description.class))
+						.must(termQuery(Description.Fields.ACTIVE, true))
+						.must(termQuery(Description.Fields.TYPE_ID, Concepts.FSN)))
+				.withPageable(LARGE_PAGE)
+				.build(), Description.class)) {
+			fsnStream.forEachRemaining(fsn -> {
+				String tag = fsn.getTag();
+				if (tag != null) {
+					facetIndex.addSemanticTag(parseLong(fsn.getConceptId()), tag);
+				}
+			});
+		}
+		timer.checkpoint("Semantic tags");
+
+		// Discover reference sets with active concept members then collect members of each
+		for (String refsetId : findRefsetIdsWithConceptMembers(branchCriteria)) {
+			for (Long conceptId : memberService.findConceptsInReferenceSet(branchCriteria, refsetId)) {
+				facetIndex.addRefsetMembership(conceptId, refsetId);
+			}
+		}
+		timer.checkpoint("Reference set memberships");
+		timer.finish();
+
+		facetIndexCache.put(path, facetIndex);
+		return facetIndex;
+	}
+
+	/**
+	 * When there are more than MAX_REFSETS reference sets the ids are split into partitions, the number of partitions is doubled until none is truncated.
+	 */
+	private Set<String> findRefsetIdsWithConceptMembers(BranchCriteria branchCriteria) {
+		for (int numPartitions = 1; ; numPartitions *= 2) {
+			Set<String> refsetIds = new HashSet<>();
+			boolean truncated = false;
+			for (int partition = 0; partition < numPartitions && !truncated; partition++) {
+				TermsAggregationBuilder refsetsAggregation = AggregationBuilders.terms("refsets").field(ReferenceSetMember.Fields.REFSET_ID).size(MAX_REFSETS);
+				if (numPartitions > 1) {
+					refsetsAggregation.includeExclude(new IncludeExclude(partition, numPartitions));
+				}
+				AggregatedPage<ReferenceSetMember> refsetPage = (AggregatedPage<ReferenceSetMember>) elasticsearchTemplate.queryForPage(new NativeSearchQueryBuilder()
+						.withQuery(boolQuery()
+								.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
+								.must(termQuery(ReferenceSetMember.Fields.ACTIVE, true))
+								.must(regexpQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, ".*0.")))// Matches the concept partition identifier
+						.withPageable(PAGE_OF_ONE)
+						.addAggregation(refsetsAggregation)
+						.build(), ReferenceSetMember.class);
+				ParsedStringTerms refsets = (ParsedStringTerms) refsetPage.getAggregation("refsets");
+				truncated = refsets.getSumOfOtherDocCounts() > 0;
+				for (Terms.Bucket bucket : refsets.getBuckets()) {
+					refsetIds.add(bucket.getKeyAsString());
+				}
+			}
+			if (!truncated) {
+				return refsetIds;
+			}
+		}
+	}
+
+}
@@ -844,6 +844,7 @@ public class ConceptService extends ComponentService {
 	 * @return List of persisted components with updated metadata and filtered by deleted status.
 	 */
 	public Iterable<Description> doSaveBatchDescriptions(Collection<Description> descriptions, Commit commit) {
+		descriptionService.updateTermFolded(descriptions);
 		return doSaveBatchComponents(descriptions, commit, "descriptionId", descriptionRepository);
 	}
 
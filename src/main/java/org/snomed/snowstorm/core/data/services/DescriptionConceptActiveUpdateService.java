@@ -0,0 +1,212 @@
+package org.snomed.snowstorm.core.data.services;
+
+import ch.qos.logback.classic.Level;
+import com.google.common.collect.Iterables;
+import io.kaicode.elasticvc.api.BranchCriteria;
+import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.CommitListener;
+import io.kaicode.elasticvc.api.ComponentService;
+import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Commit;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.Description;
+import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
+import org.snomed.snowstorm.core.data.repositories.DescriptionRepository;
+import org.snomed.snowstorm.core.data.services.identifier.IdentifierService;
+import org.snomed.snowstorm.core.util.TimerUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+
+import static java.lang.Long.parseLong;
+import static org.elasticsearch.index.query.QueryBuilders.*;
+
+/**
+ * Keeps the concept fields of descriptions in line with their concept: the active status, the semantic tags of the active FSNs
+ * and the reference sets which the concept is an active member of.
+ * Runs before each commit completes so that imports, authoring, rebase and promotion are all covered.
+ */
+@Service
+public class DescriptionConceptActiveUpdateService extends ComponentService implements CommitListener {
+
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private VersionControlHelper versionControlHelper;
+
+	@Autowired
+	private ElasticsearchOperations elasticsearchTemplate;
+
+	@Autowired
+	private DescriptionRepository descriptionRepository;
+
+	@PostConstruct
+	public void init() {
+		branchService.addCommitListener(this);
+	}
+
+	@Override
+	public void preCommitCompletion(Commit commit) throws IllegalStateException {
+		TimerUtil timer = new TimerUtil("Description concept fields update", Level.DEBUG);
+
+		// Collect concepts which have changed, or have descriptions or reference set members which have changed
+		BranchCriteria changesBranchCriteria = commit.isRebase() ?
+				versionControlHelper.getChangesOnBranchCriteria(commit.getBranch())
+				: versionControlHelper.getBranchCriteriaChangesAndDeletionsWithinOpenCommitOnly(commit);
+		LongSet conceptIds = new LongOpenHashSet();
+		try (CloseableIterator<Concept> stream = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
+				.withQuery(changesBranchCriteria.getEntityBranchCriteria(Concept.class))
+				.withFields(Concept.Fields.CONCEPT_ID)// Triggers FastResultsMapper
+				.withPageable(LARGE_PAGE)
+				.build(), Concept.class)) {
+			stream.forEachRemaining(concept -> conceptIds.add(parseLong(concept.getConceptId())));
+		}
+		try (CloseableIterator<Description> stream = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
+				.withQuery(changesBranchCriteria.getEntityBranchCriteria(Description.class))
+				.withFields(Description.Fields.CONCEPT_ID)// Triggers FastResultsMapper
+				.withPageable(LARGE_PAGE)
+				.build(), Description.class)) {
+			stream.forEachRemaining(description -> conceptIds.add(parseLong(description.getConceptId())));
+		}
+		try (CloseableIterator<ReferenceSetMember> stream = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
+				.withQuery(changesBranchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
+				.withFields(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID)// Triggers FastResultsMapper
+				.withPageable(LARGE_PAGE)
+				.build(), ReferenceSetMember.class)) {
+			stream.forEachRemaining(member -> {
+				if (IdentifierService.isConceptId(member.getReferencedComponentId())) {
+					conceptIds.add(parseLong(member.getReferencedComponentId()));
+				}
+			});
+		}
+		if (conceptIds.isEmpty()) {
+			return;
+		}
+		timer.checkpoint("Collect changed concept ids");
+
+		// Concepts are processed in segments so that the descriptions of a large import are not all held in memory
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteriaIncludingOpenCommit(commit);
+		String path = commit.getBranch().getPath();
+		int updated = 0;
+		for (List<Long> conceptIdsSegment : Iterables.partition(conceptIds, CLAUSE_LIMIT)) {
+			LongSet activeConceptIds = findConceptIdsWithActiveStatus(branchCriteria, conceptIdsSegment, true);
+			LongSet inactiveConceptIds = findConceptIdsWithActiveStatus(branchCriteria, conceptIdsSegment, false);
+			Map<Long, Set<String>> conceptRefsetIds = findConceptRefsetIds(branchCriteria, conceptIdsSegment);
+			List<Description> descriptions = findDescriptions(branchCriteria, conceptIdsSegment);
+
+			// Semantic tags come from the active FSNs, which are among the descriptions loaded
+			Map<Long, Set<String>> conceptSemanticTags = new HashMap<>();
+			for (Description description : descriptions) {
+				String tag = description.isActive() ? description.getTag() : null;
+				if (tag != null) {
+					conceptSemanticTags.computeIfAbsent(parseLong(description.getConceptId()), id -> new HashSet<>()).add(tag);
+				}
+			}
+
+			List<Description> versionsWithinCommit = new ArrayList<>();
+			List<Description> versionsBeforeCommit = new ArrayList<>();
+			for (Description description : descriptions) {
+				long conceptId = parseLong(description.getConceptId());
+				if (!activeConceptIds.contains(conceptId) && !inactiveConceptIds.contains(conceptId)) {
+					continue;
+				}
+				boolean conceptActive = activeConceptIds.contains(conceptId);
+				Set<String> semanticTags = conceptSemanticTags.getOrDefault(conceptId, Collections.emptySet());
+				Set<String> refsetIds = conceptRefsetIds.getOrDefault(conceptId, Collections.emptySet());
+				if (description.isConceptFieldsIndexed()
+						&& description.isConceptActive() == conceptActive
+						&& semanticTags.equals(emptyIfNull(description.getConceptSemanticTags()))
+						&& refsetIds.equals(emptyIfNull(description.getConceptRefsetIds()))) {
+					// Only descriptions where the fields do not match the concept are written
+					continue;
+				}
+				if (path.equals(description.getPath())) {
+					if (commit.getTimepoint().equals(description.getStart())) {
+						versionsWithinCommit.add(description);
+					} else {
+						description.markChanged();
+						versionsBeforeCommit.add(description);
+					}
+				} else if (description.isConceptFieldsIndexed()) {
+					// A description inherited from an ancestor branch is copied to this branch because the concept, its descriptions or members changed here.
+					// Descriptions stored before the concept fields existed are only given values on their own path.
+					description.markChanged();
+					versionsBeforeCommit.add(description);
+				} else {
+					continue;
+				}
+				description.setConceptActive(conceptActive);
+				description.setConceptSemanticTags(new HashSet<>(semanticTags));
+				description.setConceptRefsetIds(new HashSet<>(refsetIds));
+				description.setConceptFieldsIndexed(true);
+			}
+
+			// Versions written earlier in this commit are updated in place, a second version within the same commit would not replace the first
+			for (List<Description> batch : Iterables.partition(versionsWithinCommit, SemanticIndexUpdateService.BATCH_SAVE_SIZE)) {
+				descriptionRepository.saveAll(batch);
+			}
+			for (List<Description> batch : Iterables.partition(versionsBeforeCommit, SemanticIndexUpdateService.BATCH_SAVE_SIZE)) {
+				doSaveBatchComponents(batch, commit, Description.Fields.DESCRIPTION_ID, descriptionRepository);
+			}
+			updated += versionsWithinCommit.size() + versionsBeforeCommit.size();
+		}
+		timer.checkpoint("Update " + updated + " descriptions");
+		timer.finish();
+	}
+
+	private LongSet findConceptIdsWithActiveStatus(BranchCriteria branchCriteria, List<Long> conceptIds, boolean active) {
+		LongSet conceptIdsWithStatus = new LongOpenHashSet();
+		try (CloseableIterator<Concept> stream = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteria.getEntityBranchCriteria(Concept.class))
+						.must(termQuery(Concept.Fields.ACTIVE, active)))
+				.withFilter(termsQuery(Concept.Fields.CONCEPT_ID, conceptIds))
+				.withFields(Concept.Fields.CONCEPT_ID)
+				.withPageable(LARGE_PAGE)
+				.build(), Concept.class)) {
+			stream.forEachRemaining(concept -> conceptIdsWithStatus.add(parseLong(concept.getConceptId())));
+		}
+		return conceptIdsWithStatus;
+	}
+
+	private Map<Long, Set<String>> findConceptRefsetIds(BranchCriteria branchCriteria, List<Long> conceptIds) {
+		Map<Long, Set<String>> conceptRefsetIds = new HashMap<>();
+		try (CloseableIterator<ReferenceSetMember> stream = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
+						.must(termQuery(ReferenceSetMember.Fields.ACTIVE, true)))
+				.withFilter(termsQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, conceptIds))
+				.withFields(ReferenceSetMember.Fields.REFSET_ID, ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID)
+				.withPageable(LARGE_PAGE)
+				.build(), ReferenceSetMember.class)) {
+			stream.forEachRemaining(member -> conceptRefsetIds.computeIfAbsent(parseLong(member.getReferencedComponentId()), id -> new HashSet<>())
+					.add(member.getRefsetId()));
+		}
+		return conceptRefsetIds;
+	}
+
+	private List<Description> findDescriptions(BranchCriteria branchCriteria, List<Long> conceptIds) {
+		List<Description> descriptions = new ArrayList<>();
+		try (CloseableIterator<Description> stream = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
+				.withQuery(branchCriteria.getEntityBranchCriteria(Description.class))
+				.withFilter(termsQuery(Description.Fields.CONCEPT_ID, conceptIds))
+				.withPageable(LARGE_PAGE)
+				.build(), Description.class)) {
+			stream.forEachRemaining(descriptions::add);
+		}
+		return descriptions;
+	}
+
+	private static Set<String> emptyIfNull(Set<String> values) {
+		return values != null ? values : Collections.emptySet();
+	}
+
+}
@@ -0,0 +1,42 @@
+package org.snomed.snowstorm.core.data.services;
+
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+
+import java.util.Collections;
+import java.util.Set;
+
+public class DescriptionHelper {
+
+	/**
+	 * Folds diacritics and other non-ASCII characters to their closest ASCII equivalent, except the characters given.
+	 * Characters which are part of a language's alphabet (e.g. Swedish å ä ö) must not be folded because users search for them explicitly.
+	 * @param term the description term.
+	 * @param charactersNotFolded characters to keep as they are.
+	 * @return lower case folded term.
+	 */
+	public static String foldTerm(String term, Set<Character> charactersNotFolded) {
+		if (term == null) {
+			return null;
+		}
+		if (charactersNotFolded == null) {
+			charactersNotFolded = Collections.emptySet();
+		}
+
+		char[] chars = term.toLowerCase().toCharArray();
+		char[] charsFolded = new char[chars.length * 4];
+		char[] singleChar = new char[1];
+
+		// Fold one character at a time so that characters not to fold can be skipped
+		int charsFoldedOffset = 0;
+		for (char c : chars) {
+			if (charactersNotFolded.contains(c)) {
+				charsFolded[charsFoldedOffset++] = c;
+			} else {
+				singleChar[0] = c;
+				charsFoldedOffset = ASCIIFoldingFilter.foldToASCII(singleChar, 0, charsFolded, charsFoldedOffset, 1);
+			}
+		}
+		return new String(charsFolded, 0, charsFoldedOffset);
+	}
+
+}
@@ -6,16 +6,24 @@ import com.google.common.collect.Sets;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.ComponentService;
 import io.kaicode.elasticvc.api.VersionControlHelper;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.Operator;
 import org.elasticsearch.search.aggregations.Aggregation;
 import org.elasticsearch.search.aggregations.AggregationBuilders;
 import org.elasticsearch.search.aggregations.Aggregations;
+import org.elasticsearch.search.aggregations.BucketOrder;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
+import org.elasticsearch.search.aggregations.metrics.cardinality.Cardinality;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.core.data.domain.*;
 import org.snomed.snowstorm.core.data.services.identifier.IdentifierService;
+import org.snomed.snowstorm.core.data.services.pojo.ConceptFacetIndex;
+import org.snomed.snowstorm.core.data.services.pojo.InMemoryTermsAggregation;
 import org.snomed.snowstorm.core.util.TimerUtil;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -45,6 +53,24 @@ public class DescriptionService extends ComponentService {
 	@Autowired
 	private ElasticsearchOperations elasticsearchTemplate;
 
+	@Autowired
+	private SearchLanguagesConfiguration searchLanguagesConfiguration;
+
+	@Autowired
+	private ConceptFacetIndexService conceptFacetIndexService;
+
+	private static final int AGGREGATION_SIZE = 10;
+	private static final String SEMANTIC_TAGS_AGGREGATION = "semanticTags";
+	private static final String MEMBERSHIP_AGGREGATION = "membership";
+	private static final String CONCEPT_COUNT_AGGREGATION = "concepts";
+
+	public enum SearchMode {
+		// Match query plus wildcard prefix query on the term field
+		STANDARD,
+		// Match query on the edge n-gram field holding the folded term
+		TYPEAHEAD
+	}
+
 	private Logger logger = LoggerFactory.getLogger(getClass());
 
 	public Description findDescription(String path, String descriptionId) {
@@ -94,6 +120,12 @@ public class DescriptionService extends ComponentService {
 	}
 
 	public AggregatedPage<Description> findDescriptionsWithAggregations(String path, String term, Boolean conceptActive, Collection<String> languageCodes, PageRequest pageRequest) {
+		return findDescriptionsWithAggregations(path, term, conceptActive, languageCodes, SearchMode.STANDARD, pageRequest);
+	}
+
+	public AggregatedPage<Description> findDescriptionsWithAggregations(String path, String term, Boolean conceptActive, Collection<String> languageCodes,
+			SearchMode searchMode, PageRequest pageRequest) {
+
 		TimerUtil timer = new TimerUtil("Search", Level.DEBUG);
 		final BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(path);
 		timer.checkpoint("Build branch criteria");
@@ -102,48 +134,94 @@ public class DescriptionService extends ComponentService {
 		final BoolQueryBuilder descriptionCriteria = boolQuery();
 		BoolQueryBuilder descriptionBranchCriteria = branchCriteria.getEntityBranchCriteria(Description.class);
 		descriptionCriteria.must(descriptionBranchCriteria);
-		addTermClauses(term, languageCodes, descriptionCriteria);
-
-		// Fetch concept semantic tag aggregation
-		// Not all descriptions are FSNs so use: description -> concept -> active FSN
-		Set<Long> conceptIds = findDescriptionConceptIds(descriptionCriteria, conceptActive);
-		timer.checkpoint("Fetch all related concept ids for semantic tag aggregation");
-		AggregatedPage<Description> semanticTagResults = (AggregatedPage<Description>) elasticsearchTemplate.queryForPage(new NativeSearchQueryBuilder()
-				.withQuery(boolQuery()
-						.must(descriptionBranchCriteria)
-						.must(termsQuery(Description.Fields.ACTIVE, true))
-						.must(termsQuery(Description.Fields.TYPE_ID, Concepts.FSN))
-						.must(termsQuery(Concept.Fields.CONCEPT_ID, conceptIds))
-				)
-				.withPageable(PAGE_OF_ONE)
-				.addAggregation(AggregationBuilders.terms("semanticTags").field(Description.Fields.TAG))
-				.build(), Description.class);
-		allAggregations.add(semanticTagResults.getAggregation("semanticTags"));
-		timer.checkpoint("Semantic tag aggregation");
-
-		// Fetch concept refset membership aggregation
-		AggregatedPage<ReferenceSetMember> membershipResults = (AggregatedPage<ReferenceSetMember>) elasticsearchTemplate.queryForPage(new NativeSearchQueryBuilder()
-				.withQuery(boolQuery()
-						.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
-						.must(termsQuery(ReferenceSetMember.Fields.ACTIVE, true))
-						.must(termsQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, conceptIds))
-				)
-				.withPageable(PAGE_OF_ONE)
-				.addAggregation(AggregationBuilders.terms("membership").field(ReferenceSetMember.Fields.REFSET_ID))
-				.build(), ReferenceSetMember.class);
-		allAggregations.add(membershipResults.getAggregation("membership"));
-		timer.checkpoint("Concept refset membership aggregation");
+		if (searchMode == SearchMode.TYPEAHEAD) {
+			addTypeaheadTermClauses(term, languageCodes, descriptionCriteria);
+		} else {
+			addTermClauses(term, languageCodes, descriptionCriteria);
+		}
+		// Concept fields are held on each description so no join with concepts is needed,
+		// unless some matches were indexed before those fields existed
+		boolean conceptFieldsIndexed = isConceptFieldsIndexed(descriptionCriteria);
+		timer.checkpoint("Check concept fields indexed");
+		if (conceptActive != null) {
+			if (conceptFieldsIndexed) {
+				descriptionCriteria.must(termQuery(Description.Fields.CONCEPT_ACTIVE, conceptActive.booleanValue()));
+			} else {
+				LongSet conceptIds = findConceptIdsWithActiveStatus(branchCriteria, findDescriptionConceptIds(descriptionCriteria), conceptActive);
+				BoolQueryBuilder conceptIdFilter = boolQuery();
+				if (conceptIds.isEmpty()) {
+					conceptIdFilter.must(termsQuery(Description.Fields.CONCEPT_ID, Collections.emptySet()));
+				}
+				for (List<Long> conceptIdsSegment : Iterables.partition(conceptIds, CLAUSE_LIMIT)) {
+					conceptIdFilter.should(termsQuery(Description.Fields.CONCEPT_ID, conceptIdsSegment));
+				}
+				descriptionCriteria.filter(conceptIdFilter);
+				timer.checkpoint("Concept active filter using concepts");
+			}
+		}
 
 		// Perform description search with description property aggregations
 		final NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
 				.withQuery(descriptionCriteria)
-				.withFilter(boolQuery().must(termsQuery(Description.Fields.CONCEPT_ID, conceptIds)))
 				.addAggregation(AggregationBuilders.terms("module").field(Description.Fields.MODULE_ID))
 				.addAggregation(AggregationBuilders.terms("language").field(Description.Fields.LANGUAGE_CODE))
 				.withPageable(pageRequest);
+		if (conceptFieldsIndexed) {
+			// Semantic tag and refset membership of the concept are counted from the fields of the matching descriptions
+			queryBuilder
+					.addAggregation(conceptCountTermsAggregation(SEMANTIC_TAGS_AGGREGATION, Description.Fields.CONCEPT_SEMANTIC_TAGS, Description.Fields.CONCEPT_ID))
+					.addAggregation(conceptCountTermsAggregation(MEMBERSHIP_AGGREGATION, Description.Fields.CONCEPT_REFSET_IDS, Description.Fields.CONCEPT_ID));
+		}
 		AggregatedPage<Description> descriptions = (AggregatedPage<Description>) elasticsearchTemplate.queryForPage(addTermSort(queryBuilder.build()), Description.class);
-		allAggregations.addAll(descriptions.getAggregations().asList());
-		timer.checkpoint("Fetch descriptions including module and language aggregations");
+		timer.checkpoint("Fetch descriptions including aggregations");
+
+		for (Aggregation aggregation : descriptions.getAggregations()) {
+			if (SEMANTIC_TAGS_AGGREGATION.equals(aggregation.getName()) || MEMBERSHIP_AGGREGATION.equals(aggregation.getName())) {
+				allAggregations.add(toConceptCountAggregation((Terms) aggregation));
+			} else {
+				allAggregations.add(aggregation);
+			}
+		}
+
+		if (!conceptFieldsIndexed) {
+			// Fetch concept semantic tag and refset membership aggregations
+			// Not all descriptions are FSNs so use: description -> concept -> active FSN
+			LongSet conceptIds = findDescriptionConceptIds(descriptionCriteria);
+			timer.checkpoint("Fetch all related concept ids for semantic tag aggregation");
+			ConceptFacetIndex facetIndex = conceptFacetIndexService.getFacetIndexIfReady(path);
+			if (facetIndex != null) {
+				// Count in memory rather than sending the concept ids back to Elasticsearch
+				allAggregations.add(new InMemoryTermsAggregation(SEMANTIC_TAGS_AGGREGATION, facetIndex.countSemanticTags(conceptIds), AGGREGATION_SIZE));
+				allAggregations.add(new InMemoryTermsAggregation(MEMBERSHIP_AGGREGATION, facetIndex.countRefsetMemberships(conceptIds), AGGREGATION_SIZE));
+				timer.checkpoint("Semantic tag and concept refset membership aggregation using facet index");
+			} else {
+				AggregatedPage<Description> semanticTagResults = (AggregatedPage<Description>) elasticsearchTemplate.queryForPage(new NativeSearchQueryBuilder()
+						.withQuery(boolQuery()
+								.must(descriptionBranchCriteria)
+								.must(termsQuery(Description.Fields.ACTIVE, true))
+								.must(termsQuery(Description.Fields.TYPE_ID, Concepts.FSN))
+								.must(termsQuery(Concept.Fields.CONCEPT_ID, conceptIds))
+						)
+						.withPageable(PAGE_OF_ONE)
+						.addAggregation(conceptCountTermsAggregation(SEMANTIC_TAGS_AGGREGATION, Description.Fields.TAG, Description.Fields.CONCEPT_ID))
+						.build(), Description.class);
+				allAggregations.add(toConceptCountAggregation((Terms) semanticTagResults.getAggregation(SEMANTIC_TAGS_AGGREGATION)));
+				timer.checkpoint("Semantic tag aggregation");
+
+				// Fetch concept refset membership aggregation
+				AggregatedPage<ReferenceSetMember> membershipResults = (AggregatedPage<ReferenceSetMember>) elasticsearchTemplate.queryForPage(new NativeSearchQueryBuilder()
+						.withQuery(boolQuery()
+								.must(branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
+								.must(termsQuery(ReferenceSetMember.Fields.ACTIVE, true))
+								.must(termsQuery(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, conceptIds))
+						)
+						.withPageable(PAGE_OF_ONE)
+						.addAggregation(conceptCountTermsAggregation(MEMBERSHIP_AGGREGATION, ReferenceSetMember.Fields.REFSET_ID, ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID))
+						.build(), ReferenceSetMember.class);
+				allAggregations.add(toConceptCountAggregation((Terms) membershipResults.getAggregation(MEMBERSHIP_AGGREGATION)));
+				timer.checkpoint("Concept refset membership aggregation");
+			}
+		}
 		timer.finish();
 
 		// Merge aggregations
@@ -294,8 +372,53 @@ public class DescriptionService extends ComponentService {
 		}
 	}
 
-	private Set<Long> findDescriptionConceptIds(BoolQueryBuilder descriptionCriteria, Boolean conceptActive) {
-		Set<Long> conceptIds = new HashSet<>();
+	private boolean isConceptFieldsIndexed(BoolQueryBuilder descriptionCriteria) {
+		return elasticsearchTemplate.count(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(descriptionCriteria)
+						.mustNot(termQuery(Description.Fields.CONCEPT_FIELDS_INDEXED, true)))
+				.build(), Description.class) == 0;
+	}
+
+	/**
+	 * Terms aggregation where each bucket is counted and ordered by the number of distinct concepts rather than the number of documents.
+	 * Concept counts come from a cardinality aggregation so are approximate above a few thousand concepts per bucket.
+	 */
+	private TermsAggregationBuilder conceptCountTermsAggregation(String name, String field, String conceptIdField) {
+		return AggregationBuilders.terms(name).field(field)
+				.size(AGGREGATION_SIZE)
+				.subAggregation(AggregationBuilders.cardinality(CONCEPT_COUNT_AGGREGATION).field(conceptIdField))
+				.order(BucketOrder.aggregation(CONCEPT_COUNT_AGGREGATION, false));
+	}
+
+	private InMemoryTermsAggregation toConceptCountAggregation(Terms terms) {
+		Map<String, Long> conceptCounts = new HashMap<>();
+		for (Terms.Bucket bucket : terms.getBuckets()) {
+			Cardinality concepts = bucket.getAggregations().get(CONCEPT_COUNT_AGGREGATION);
+			conceptCounts.put(bucket.getKeyAsString(), concepts.getValue());
+		}
+		return new InMemoryTermsAggregation(terms.getName(), conceptCounts, AGGREGATION_SIZE);
+	}
+
+	private LongSet findConceptIdsWithActiveStatus(BranchCriteria branchCriteria, LongSet conceptIds, boolean active) {
+		LongSet conceptIdsWithStatus = new LongOpenHashSet();
+		for (List<Long> conceptIdsSegment : Iterables.partition(conceptIds, CLAUSE_LIMIT)) {
+			try (CloseableIterator<Concept> conceptStream = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(branchCriteria.getEntityBranchCriteria(Concept.class))
+							.must(termQuery(Concept.Fields.ACTIVE, active)))
+					.withFilter(termsQuery(Concept.Fields.CONCEPT_ID, conceptIdsSegment))
+					.withFields(Concept.Fields.CONCEPT_ID)
+					.withPageable(LARGE_PAGE)
+					.build(), Concept.class)) {
+				conceptStream.forEachRemaining(concept -> conceptIdsWithStatus.add(Long.parseLong(concept.getConceptId())));
+			}
+		}
+		return conceptIdsWithStatus;
+	}
+
+	private LongSet findDescriptionConceptIds(BoolQueryBuilder descriptionCriteria) {
+		LongSet conceptIds = new LongOpenHashSet();
 		try (CloseableIterator<Description> descriptionStream = elasticsearchTemplate.stream(
 				new NativeSearchQueryBuilder()
 						.withQuery(descriptionCriteria)
@@ -304,22 +427,6 @@ public class DescriptionService extends ComponentService {
 						.build(), Description.class)) {
 			descriptionStream.forEachRemaining(description -> conceptIds.add(Long.parseLong(description.getConceptId())));
 		}
-
-		if (!conceptIds.isEmpty() && conceptActive != null) {
-			// Apply concept active filter
-			Set<Long> conceptsWithActiveStatus = new HashSet<>();
-			try (CloseableIterator<Concept> conceptStream = elasticsearchTemplate.stream(
-					new NativeSearchQueryBuilder()
-							.withQuery(boolQuery()
-									.must(termsQuery(Concept.Fields.CONCEPT_ID, conceptIds))
-									.must(termQuery(Concept.Fields.ACTIVE, conceptActive.booleanValue())))
-							.withFields(Concept.Fields.CONCEPT_ID)
-							.build(), Concept.class)) {
-				conceptStream.forEachRemaining(concept -> conceptsWithActiveStatus.add(Long.parseLong(concept.getConceptId())));
-			}
-			return conceptsWithActiveStatus;
-		}
-
 		return conceptIds;
 	}
 
@@ -348,6 +455,40 @@ public class DescriptionService extends ComponentService {
 		}
 	}
 
+	void addTypeaheadTermClauses(String term, Collection<String> languageCodes, BoolQueryBuilder boolBuilder) {
+		if (IdentifierService.isConceptId(term)) {
+			boolBuilder.must(termQuery(Description.Fields.CONCEPT_ID, term));
+		} else {
+			if (!Strings.isNullOrEmpty(term)) {
+
+				// The search term is folded using the rules of each requested language
+				// The index analyzer stores edge n-grams of each word so every given word is matched as a prefix without wildcards
+				// e.g. 'Clin Fin' matches 'Clinical Finding'
+				Map<String, Set<Character>> charactersNotFoldedSets = searchLanguagesConfiguration.getCharactersNotFoldedSets();
+				if (languageCodes == null || languageCodes.isEmpty()) {
+					// No language filter, the term is folded without language exceptions
+					boolBuilder.must(matchQuery(Description.Fields.TERM_FOLDED, DescriptionHelper.foldTerm(term.trim(), null)).operator(Operator.AND));
+					return;
+				}
+				BoolQueryBuilder languageQueries = boolQuery();
+				for (String languageCode : languageCodes) {
+					String termFolded = DescriptionHelper.foldTerm(term.trim(), charactersNotFoldedSets.get(languageCode));
+					languageQueries.should(boolQuery()
+							.must(termQuery(Description.Fields.LANGUAGE_CODE, languageCode))
+							.must(matchQuery(Description.Fields.TERM_FOLDED, termFolded).operator(Operator.AND)));
+				}
+				boolBuilder.must(languageQueries);
+			}
+		}
+	}
+
+	void updateTermFolded(Collection<Description> descriptions) {
+		Map<String, Set<Character>> charactersNotFoldedSets = searchLanguagesConfiguration.getCharactersNotFoldedSets();
+		for (Description description : descriptions) {
+			description.setTermFolded(DescriptionHelper.foldTerm(description.getTerm(), charactersNotFoldedSets.get(description.getLanguageCode())));
+		}
+	}
+
 	static NativeSearchQuery addTermSort(NativeSearchQuery query) {
 		query.addSort(Sort.by("termLen"));
 		query.addSort(Sort.by("_score"));
@@ -1,10 +1,12 @@
 package org.snomed.snowstorm.core.data.services;
 
+import com.google.common.collect.Iterables;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.VersionControlHelper;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import it.unimi.dsi.fastutil.longs.LongArraySet;
 import it.unimi.dsi.fastutil.longs.LongComparators;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.search.sort.SortBuilders;
 import org.slf4j.Logger;
@@ -25,6 +27,8 @@ import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
@@ -36,6 +40,7 @@ import static org.snomed.snowstorm.config.Config.DEFAULT_LANGUAGE_CODES;
 public class QueryService {
 
 	static final PageRequest PAGE_OF_ONE = PageRequest.of(0, 1);
+	private static final int STREAM_BATCH_SIZE = 1_000;
 	private static final long IS_A_LONG = parseLong(Concepts.ISA);
 
 	@Autowired
@@ -88,6 +93,77 @@ public class QueryService {
 		});
 	}
 
+	/**
+	 * Passes every concept matching the query to the consumer, in the same order as the search method, without paging.
+	 * The search runs once to collect the matching concept ids, concept details are then loaded one batch at a time
+	 * so that only the ids of the whole result are held in memory.
+	 */
+	public void streamSearch(ConceptQueryBuilder conceptQuery, String branchPath, Consumer<List<ConceptMini>> batchConsumer) {
+		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
+		TimerUtil timer = new TimerUtil("Stream search");
+		List<Long> conceptIds = searchForAllIds(conceptQuery, branchPath, branchCriteria);
+		timer.checkpoint("Collect " + conceptIds.size() + " concept ids");
+		for (List<Long> batch : Iterables.partition(conceptIds, STREAM_BATCH_SIZE)) {
+			ResultMapPage<String, ConceptMini> conceptMinis = conceptService.findConceptMinis(branchCriteria, batch, conceptQuery.getLanguageCodes());
+			batchConsumer.accept(sortConceptMinisByTermOrder(batch, conceptMinis.getResultsMap()));
+		}
+		timer.finish();
+	}
+
+	private List<Long> searchForAllIds(ConceptQueryBuilder conceptQuery, String branchPath, BranchCriteria branchCriteria) {
+		String term = conceptQuery.getTermPrefix();
+		if (term != null && term.length() < 3) {
+			return Collections.emptyList();
+		}
+		boolean hasLexicalCriteria = term != null;
+		boolean hasLogicalConditions = conceptQuery.hasLogicalConditions();
+
+		if (hasLexicalCriteria && !hasLogicalConditions) {
+			// Lexical Only
+			return findLexicalMatchDescriptionConceptIds(branchCriteria, term, conceptQuery.getLanguageCodes());
+
+		} else if (hasLogicalConditions && !hasLexicalCriteria) {
+			// Logical Only
+			Set<String> conceptIds = conceptQuery.getConceptIds();
+			if (conceptIds != null && !conceptIds.isEmpty()) {
+				return conceptIds.stream().map(Long::parseLong).collect(Collectors.toList());
+			} else if (conceptQuery.getEcl() != null) {
+				return doEclSearch(conceptQuery, branchPath, branchCriteria, null);
+			} else {
+				return streamConceptIds(new NativeSearchQueryBuilder()
+						.withQuery(boolQuery()
+								.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+								.must(conceptQuery.getRootBuilder())
+						)
+						.withFields(QueryConcept.Fields.CONCEPT_ID)
+						.withPageable(LARGE_PAGE)
+						.build(), QueryConcept.class, QueryConcept::getConceptIdL);
+			}
+
+		} else if (hasLogicalConditions) {
+			// Logical and Lexical
+			List<Long> allLexicalMatchesWithOrdering = findLexicalMatchDescriptionConceptIds(branchCriteria, term, conceptQuery.getLanguageCodes());
+			Set<Long> allFilteredLogicalMatches = new LongOpenHashSet(
+					findLogicalMatchesWithinLexicalMatches(conceptQuery, branchPath, branchCriteria, allLexicalMatchesWithOrdering));
+			return allLexicalMatchesWithOrdering.stream().filter(allFilteredLogicalMatches::contains).collect(Collectors.toList());
+		}
+
+		// No criteria - all concepts
+		return streamConceptIds(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery().must(branchCriteria.getEntityBranchCriteria(Concept.class)))
+				.withFields(Concept.Fields.CONCEPT_ID)
+				.withPageable(LARGE_PAGE)
+				.build(), Concept.class, Concept::getConceptIdAsLong);
+	}
+
+	private <T> List<Long> streamConceptIds(NativeSearchQuery query, Class<T> clazz, Function<T, Long> idFunction) {
+		List<Long> conceptIds = new LongArrayList();
+		try (CloseableIterator<T> stream = elasticsearchTemplate.stream(query, clazz)) {
+			stream.forEachRemaining(component -> conceptIds.add(idFunction.apply(component)));
+		}
+		return conceptIds;
+	}
+
 	private Optional<Page<Long>> doSearchForIds(ConceptQueryBuilder conceptQuery, String branchPath, BranchCriteria branchCriteria, PageRequest pageRequest) {
 
 		// Validate Lexical criteria
@@ -145,46 +221,7 @@ public class QueryService {
 
 			// Fetch Logical matches
 			// Have to fetch all logical matches and then create a page using the lexical ordering
-			List<Long> allFilteredLogicalMatches;
-			if (conceptQuery.getEcl() != null) {
-				allFilteredLogicalMatches = doEclSearch(conceptQuery, branchPath, branchCriteria, allLexicalMatchesWithOrdering);
-			} else {
-				logger.info("Primitive Logical Search ");
-				allFilteredLogicalMatches = new LongArrayList();
-
-				Boolean activeFilter = conceptQuery.getActiveFilter();
-				if (activeFilter == null || activeFilter) {
-					// All QueryConcepts are active
-
-					NativeSearchQueryBuilder logicalSearchQuery = new NativeSearchQueryBuilder()
-							.withQuery(boolQuery()
-									.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
-									.must(conceptQuery.getRootBuilder())
-							)
-							.withFilter(termsQuery(QueryConcept.Fields.CONCEPT_ID, allLexicalMatchesWithOrdering))
-							.withFields(QueryConcept.Fields.CONCEPT_ID)
-							.withPageable(LARGE_PAGE);
-
-					try (CloseableIterator<QueryConcept> stream = elasticsearchTemplate.stream(logicalSearchQuery.build(), QueryConcept.class)) {
-						stream.forEachRemaining(c -> allFilteredLogicalMatches.add(c.getConceptIdL()));
-					}
-				} else {
-					// Find inactive concepts
-					if (!conceptQuery.hasRelationshipConditions()) {
-						NativeSearchQueryBuilder inactiveConceptQuery = new NativeSearchQueryBuilder()
-								.withQuery(boolQuery()
-										.must(branchCriteria.getEntityBranchCriteria(Concept.class))
-										.must(termQuery(Concept.Fields.ACTIVE, false))
-								)
-								.withFilter(termsQuery(Concept.Fields.CONCEPT_ID, allLexicalMatchesWithOrdering))
-								.withFields(Concept.Fields.CONCEPT_ID)
-								.withPageable(LARGE_PAGE);
-						try (CloseableIterator<Concept> stream = elasticsearchTemplate.stream(inactiveConceptQuery.build(), Concept.class)) {
-							stream.forEachRemaining(c -> allFilteredLogicalMatches.add(c.getConceptIdAsLong()));
-						}
-					}
-				}
-			}
+			List<Long> allFilteredLogicalMatches = findLogicalMatchesWithinLexicalMatches(conceptQuery, branchPath, branchCriteria, allLexicalMatchesWithOrdering);
 			timer.checkpoint("filtered logical complete");
 
 			logger.info("{} lexical results, {} logical results", allLexicalMatchesWithOrdering.size(), allFilteredLogicalMatches.size());
@@ -200,6 +237,51 @@ public class QueryService {
 		}
 	}
 
+	private List<Long> findLogicalMatchesWithinLexicalMatches(ConceptQueryBuilder conceptQuery, String branchPath, BranchCriteria branchCriteria,
+			List<Long> allLexicalMatchesWithOrdering) {
+
+		if (conceptQuery.getEcl() != null) {
+			return doEclSearch(conceptQuery, branchPath, branchCriteria, allLexicalMatchesWithOrdering);
+		}
+
+		logger.info("Primitive Logical Search ");
+		List<Long> allFilteredLogicalMatches = new LongArrayList();
+
+		Boolean activeFilter = conceptQuery.getActiveFilter();
+		if (activeFilter == null || activeFilter) {
+			// All QueryConcepts are active
+
+			NativeSearchQueryBuilder logicalSearchQuery = new NativeSearchQueryBuilder()
+					.withQuery(boolQuery()
+							.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+							.must(conceptQuery.getRootBuilder())
+					)
+					.withFilter(termsQuery(QueryConcept.Fields.CONCEPT_ID, allLexicalMatchesWithOrdering))
+					.withFields(QueryConcept.Fields.CONCEPT_ID)
+					.withPageable(LARGE_PAGE);
+
+			try (CloseableIterator<QueryConcept> stream = elasticsearchTemplate.stream(logicalSearchQuery.build(), QueryConcept.class)) {
+				stream.forEachRemaining(c -> allFilteredLogicalMatches.add(c.getConceptIdL()));
+			}
+		} else {
+			// Find inactive concepts
+			if (!conceptQuery.hasRelationshipConditions()) {
+				NativeSearchQueryBuilder inactiveConceptQuery = new NativeSearchQueryBuilder()
+						.withQuery(boolQuery()
+								.must(branchCriteria.getEntityBranchCriteria(Concept.class))
+								.must(termQuery(Concept.Fields.ACTIVE, false))
+						)
+						.withFilter(termsQuery(Concept.Fields.CONCEPT_ID, allLexicalMatchesWithOrdering))
+						.withFields(Concept.Fields.CONCEPT_ID)
+						.withPageable(LARGE_PAGE);
+				try (CloseableIterator<Concept> stream = elasticsearchTemplate.stream(inactiveConceptQuery.build(), Concept.class)) {
+					stream.forEachRemaining(c -> allFilteredLogicalMatches.add(c.getConceptIdAsLong()));
+				}
+			}
+		}
+		return allFilteredLogicalMatches;
+	}
+
 	private Page<Long> getSimpleLogicalSearchPage(ConceptQueryBuilder conceptQuery, BranchCriteria branchCriteria, PageRequest pageRequest) {
 		Page<Long> conceptIdPage;
 		NativeSearchQueryBuilder logicalSearchQuery = new NativeSearchQueryBuilder()
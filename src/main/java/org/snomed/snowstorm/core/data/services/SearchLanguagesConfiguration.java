@@ -0,0 +1,38 @@
+package org.snomed.snowstorm.core.data.services;
+
+import javax.annotation.PostConstruct;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+public class SearchLanguagesConfiguration {
+
+	// Language code -> characters which are significant in that language and must not be folded to ASCII
+	private Map<String, String> charactersNotFolded = new HashMap<>();
+
+	// Built once the configuration properties are bound
+	private Map<String, Set<Character>> charactersNotFoldedSets;
+
+	public Map<String, String> getCharactersNotFolded() {
+		return charactersNotFolded;
+	}
+
+	@PostConstruct
+	public void init() {
+		Map<String, Set<Character>> sets = new HashMap<>();
+		for (String languageCode : charactersNotFolded.keySet()) {
+			Set<Character> characters = new HashSet<>();
+			for (char c : charactersNotFolded.get(languageCode).toCharArray()) {
+				characters.add(c);
+			}
+			sets.put(languageCode, characters);
+		}
+		charactersNotFoldedSets = sets;
+	}
+
+	public Map<String, Set<Character>> getCharactersNotFoldedSets() {
+		return charactersNotFoldedSets;
+	}
+
+}
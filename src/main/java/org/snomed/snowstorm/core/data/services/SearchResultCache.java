@@ -0,0 +1,169 @@
+package org.snomed.snowstorm.core.data.services;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Size bounded cache of search results.
+ * Each result is stored with the head timestamp of the branch it was calculated from and is only a hit while the branch head is the same.
+ * When stale-while-revalidate is enabled a result from an older branch head is returned immediately and replaced in the background.
+ */
+public class SearchResultCache<V> {
+
+	private final String name;
+	private final boolean enabled;
+	private final boolean staleWhileRevalidate;
+	private final Cache<CacheKey, CachedResult<V>> cache;
+	private final Set<CacheKey> revalidationsInProgress = ConcurrentHashMap.newKeySet();
+	private final ExecutorService revalidationExecutorService;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong staleHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong revalidations = new AtomicLong();
+	private final AtomicLong revalidationFailures = new AtomicLong();
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public SearchResultCache(String name, boolean enabled, int maxEntries, boolean staleWhileRevalidate) {
+		this(name, enabled, maxEntries, staleWhileRevalidate, staleWhileRevalidate ? Executors.newSingleThreadExecutor() : null);
+	}
+
+	SearchResultCache(String name, boolean enabled, int maxEntries, boolean staleWhileRevalidate, ExecutorService revalidationExecutorService) {
+		this.name = name;
+		this.enabled = enabled;
+		this.staleWhileRevalidate = staleWhileRevalidate;
+		cache = CacheBuilder.newBuilder()
+				.maximumSize(enabled ? maxEntries : 0)
+				.recordStats()
+				.build();
+		this.revalidationExecutorService = revalidationExecutorService;
+		if (enabled) {
+			logger.info("{} cache enabled with max {} entries, stale-while-revalidate {}.", name, maxEntries, staleWhileRevalidate);
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		if (revalidationExecutorService != null) {
+			revalidationExecutorService.shutdownNow();
+		}
+	}
+
+	/**
+	 * @param branchPath the branch searched.
+	 * @param headTimestamp the current head timestamp of the branch.
+	 * @param queryParams all other parameters which affect the result, including paging.
+	 * @param loader performs the search when there is no usable cached result.
+	 */
+	public V get(String branchPath, long headTimestamp, List<Object> queryParams, Supplier<V> loader) {
+		if (!enabled) {
+			return loader.get();
+		}
+
+		CacheKey key = new CacheKey(branchPath, queryParams);
+		CachedResult<V> cachedResult = cache.getIfPresent(key);
+		if (cachedResult != null) {
+			if (cachedResult.headTimestamp == headTimestamp) {
+				hits.incrementAndGet();
+				return cachedResult.value;
+			}
+			if (staleWhileRevalidate && cachedResult.headTimestamp < headTimestamp) {
+				staleHits.incrementAndGet();
+				revalidate(key, headTimestamp, loader);
+				return cachedResult.value;
+			}
+		}
+
+		misses.incrementAndGet();
+		V value = loader.get();
+		cache.put(key, new CachedResult<>(headTimestamp, value));
+		return value;
+	}
+
+	private void revalidate(CacheKey key, long headTimestamp, Supplier<V> loader) {
+		if (revalidationsInProgress.add(key)) {
+			revalidationExecutorService.submit(() -> {
+				try {
+					V value = loader.get();
+					cache.put(key, new CachedResult<>(headTimestamp, value));
+					revalidations.incrementAndGet();
+				} catch (Exception e) {
+					revalidationFailures.incrementAndGet();
+					logger.warn("Failed to refresh {} cache entry {}.", name, key, e);
+				} finally {
+					revalidationsInProgress.remove(key);
+				}
+			});
+		}
+	}
+
+	public Map<String, Object> getMetrics() {
+		Map<String, Object> metrics = new LinkedHashMap<>();
+		metrics.put("name", name);
+		metrics.put("enabled", enabled);
+		metrics.put("staleWhileRevalidate", staleWhileRevalidate);
+		metrics.put("size", cache.size());
+		metrics.put("hits", hits.get());
+		metrics.put("staleHits", staleHits.get());
+		metrics.put("misses", misses.get());
+		metrics.put("revalidations", revalidations.get());
+		metrics.put("revalidationFailures", revalidationFailures.get());
+		metrics.put("evictions", cache.stats().evictionCount());
+		return metrics;
+	}
+
+	public void clear() {
+		cache.invalidateAll();
+	}
+
+	private static final class CacheKey {
+
+		private final String branchPath;
+		private final List<Object> queryParams;
+
+		private CacheKey(String branchPath, List<Object> queryParams) {
+			this.branchPath = branchPath;
+			this.queryParams = queryParams;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) return true;
+			if (o == null || getClass() != o.getClass()) return false;
+			CacheKey cacheKey = (CacheKey) o;
+			return branchPath.equals(cacheKey.branchPath) && queryParams.equals(cacheKey.queryParams);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(branchPath, queryParams);
+		}
+
+		@Override
+		public String toString() {
+			return branchPath + " " + queryParams;
+		}
+	}
+
+	private static final class CachedResult<V> {
+
+		private final long headTimestamp;
+		private final V value;
+
+		private CachedResult(long headTimestamp, V value) {
+			this.headTimestamp = headTimestamp;
+			this.value = value;
+		}
+	}
+}
@@ -16,6 +16,7 @@ import org.snomed.otf.owltoolkit.conversion.ConversionException;
 import org.snomed.snowstorm.core.data.domain.*;
 import org.snomed.snowstorm.core.data.repositories.QueryConceptRepository;
 import org.snomed.snowstorm.core.data.services.pojo.SAxiomRepresentation;
+import org.snomed.snowstorm.core.data.services.pojo.SemanticIndexChanges;
 import org.snomed.snowstorm.core.data.services.transitiveclosure.GraphBuilder;
 import org.snomed.snowstorm.core.data.services.transitiveclosure.Node;
 import org.snomed.snowstorm.core.util.TimerUtil;
@@ -64,6 +65,12 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 	@Autowired
 	private AxiomConversionService axiomConversionService;
 
+	// Weak keys so that a deferred commit which is never completed is released
+	private final Set<Commit> commitsWithIndexingDeferred = Collections.newSetFromMap(Collections.synchronizedMap(new WeakHashMap<>()));
+
+	// Weak keys so that changes given for a commit which is never completed are released
+	private final Map<Commit, SemanticIndexChanges> knownCommitChanges = Collections.synchronizedMap(new WeakHashMap<>());
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	@PostConstruct
@@ -73,9 +80,13 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 
 	@Override
 	public void preCommitCompletion(Commit commit) throws IllegalStateException {
-		if (semanticIndexingEnabled) {
+		SemanticIndexChanges knownChanges = knownCommitChanges.remove(commit);
+		String branchPath = commit.getBranch().getPath();
+		if (commitsWithIndexingDeferred.remove(commit)) {
+			logger.info("Semantic indexing deferred for commit on branch {}.", branchPath);
+		} else if (semanticIndexingEnabled) {
 			try {
-				updateStatedAndInferredSemanticIndex(commit);
+				updateStatedAndInferredSemanticIndex(commit, knownChanges);
 			} catch (ConversionException e) {
 				throw new IllegalStateException("Failed to convert OWL Axioms.", e);
 			}
@@ -84,17 +95,33 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		}
 	}
 
+	/**
+	 * Stops the open commit from updating the semantic index when it completes, other commits on the branch are not affected.
+	 * This is intended for imports which make many commits in a row, the index must be rebuilt afterwards.
+	 */
+	public void deferIndexing(Commit commit) {
+		commitsWithIndexingDeferred.add(commit);
+	}
+
+	/**
+	 * Gives the relationship and axiom changes of an open commit, collected by the caller while writing them.
+	 * When the commit completes the index update uses these rather than searching the commit for changes.
+	 */
+	public void setCommitChanges(Commit commit, SemanticIndexChanges changes) {
+		knownCommitChanges.put(commit, changes);
+	}
+
 	public void rebuildStatedAndInferredSemanticIndex(String branch) throws ConversionException {
 		// TODO: Only use on MAIN
 		try (Commit commit = branchService.openCommit(branch)) {
 			BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(commit.getBranch());
-			updateSemanticIndex(true, branchCriteria, Collections.emptySet(), commit, true);
-			updateSemanticIndex(false, branchCriteria, Collections.emptySet(), commit, true);
+			updateSemanticIndex(true, branchCriteria, Collections.emptySet(), commit, true, null);
+			updateSemanticIndex(false, branchCriteria, Collections.emptySet(), commit, true, null);
 			commit.markSuccessful();
 		}
 	}
 
-	private void updateStatedAndInferredSemanticIndex(Commit commit) throws IllegalStateException, ConversionException {
+	private void updateStatedAndInferredSemanticIndex(Commit commit, SemanticIndexChanges knownChanges) throws IllegalStateException, ConversionException {
 		if (commit.isRebase()) {
 			// Recreate query index using new parent base point + content on this branch
 			Branch branch = commit.getBranch();
@@ -103,18 +130,22 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 			BranchCriteria changesBranchCriteria = versionControlHelper.getChangesOnBranchCriteria(branch);
 			Set<String> relationshipAndAxiomDeletionsToProcess = new HashSet<>(branch.getVersionsReplaced(ReferenceSetMember.class));
 			relationshipAndAxiomDeletionsToProcess.addAll(branch.getVersionsReplaced(Relationship.class));
-			updateSemanticIndex(true, changesBranchCriteria, relationshipAndAxiomDeletionsToProcess, commit, false);
-			updateSemanticIndex(false, changesBranchCriteria, relationshipAndAxiomDeletionsToProcess, commit, false);
+			updateSemanticIndex(true, changesBranchCriteria, relationshipAndAxiomDeletionsToProcess, commit, false, null);
+			updateSemanticIndex(false, changesBranchCriteria, relationshipAndAxiomDeletionsToProcess, commit, false, null);
 		} else {
 			// Update query index using changes in the current commit
 			BranchCriteria changesBranchCriteria = versionControlHelper.getBranchCriteriaChangesAndDeletionsWithinOpenCommitOnly(commit);
 			Set<String> deletedComponents = commit.getEntityVersionsDeleted();
-			updateSemanticIndex(true, changesBranchCriteria, deletedComponents, commit, false);
-			updateSemanticIndex(false, changesBranchCriteria, deletedComponents, commit, false);
+			if (knownChanges != null && !knownChanges.isComplete()) {
+				knownChanges = null;
+			}
+			updateSemanticIndex(true, changesBranchCriteria, deletedComponents, commit, false, knownChanges);
+			updateSemanticIndex(false, changesBranchCriteria, deletedComponents, commit, false, knownChanges);
 		}
 	}
 
-	private void updateSemanticIndex(boolean stated, BranchCriteria changesBranchCriteria, Set<String> relationshipAndAxiomDeletionsToProcess, Commit commit, boolean rebuild) throws IllegalStateException, ConversionException {
+	private void updateSemanticIndex(boolean stated, BranchCriteria changesBranchCriteria, Set<String> relationshipAndAxiomDeletionsToProcess, Commit commit, boolean rebuild,
+			SemanticIndexChanges knownChanges) throws IllegalStateException, ConversionException {
 		// Note: Searches within this method use a filter clause for collections of identifiers because these
 		//       can become larger than the maximum permitted query criteria.
 
@@ -142,59 +173,81 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		if (rebuild) {
 			logger.info("Performing {} of {} semantic index", "rebuild", formName);
 		} else {
-			// Step: Collect source and destinations of changed is-a relationships
-			try (final CloseableIterator<Relationship> changedIsARelationships = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
-					.withQuery(boolQuery()
-							.must(changesBranchCriteria.getEntityBranchCriteria(Relationship.class))
-							.must(termQuery("typeId", Concepts.ISA))
-							.must(termsQuery("characteristicTypeId", characteristicTypeIds))
-					)
-					.withFields(Relationship.Fields.SOURCE_ID, Relationship.Fields.DESTINATION_ID)
-					.withPageable(ConceptService.LARGE_PAGE).build(), Relationship.class)) {
-				changedIsARelationships.forEachRemaining(relationship -> {
-					updateSource.add(parseLong(relationship.getSourceId()));
-					updateDestination.add(parseLong(relationship.getDestinationId()));
-				});
-			}
-			timer.checkpoint("Collect changed is-a relationships.");
-
-			boolean someChangedAxioms = false;
-			if (stated) {
-				// Step: Collect source and destinations of is-a fragments within changed axioms
-				try (final CloseableIterator<ReferenceSetMember> changedAxioms = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
-						.withQuery(boolQuery()
-								.must(changesBranchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
-								.must(termQuery(ReferenceSetMember.Fields.REFSET_ID, Concepts.OWL_AXIOM_REFERENCE_SET))
-						)
-						.withFields(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, ReferenceSetMember.OwlExpressionFields.OWL_EXPRESSION_FIELD_PATH)
-						.withPageable(ConceptService.LARGE_PAGE).build(), ReferenceSetMember.class)) {
-					someChangedAxioms = changedAxioms.hasNext();
+			if (knownChanges != null) {
+				// Changes were collected as the commit was written so there is no need to search for them
+				updateSource.addAll(knownChanges.getIsASourceIds(stated));
+				updateDestination.addAll(knownChanges.getIsADestinationIds(stated));
+				boolean someChangedAxioms = false;
+				if (stated) {
+					someChangedAxioms = !knownChanges.getAxiomMembers().isEmpty();
 					axiomStreamToRelationshipStream(
-							changedAxioms,
-							// filter
+							knownChanges.getAxiomMembers().iterator(),
 							relationship -> relationship.getTypeId().equals(Concepts.ISA),
-							// for each
 							(component, relationship) -> {
 								updateSource.add(parseLong(relationship.getSourceId()));
 								updateDestination.add(parseLong(relationship.getDestinationId()));
 							});
 				}
-				timer.checkpoint("Collect changed axiom is-a fragments.");
-			}
-
-			if (updateSource.isEmpty() && !someChangedAxioms) {
-				// There are no is-a relationships changes
-				// Are there any other relationship changes?
-				long notIsAUpdateCount = elasticsearchTemplate.count(new NativeSearchQueryBuilder()
+				timer.checkpoint("Collect known is-a changes.");
+				if (updateSource.isEmpty() && !someChangedAxioms && !knownChanges.isOtherRelationshipChanged(stated)) {
+					// Stop here - nothing to update
+					return;
+				}
+			} else {
+				// Step: Collect source and destinations of changed is-a relationships
+				try (final CloseableIterator<Relationship> changedIsARelationships = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
 						.withQuery(boolQuery()
 								.must(changesBranchCriteria.getEntityBranchCriteria(Relationship.class))
-								.mustNot(termQuery("typeId", Concepts.ISA))
+								.must(termQuery("typeId", Concepts.ISA))
 								.must(termsQuery("characteristicTypeId", characteristicTypeIds))
-						).build(), Relationship.class);
+						)
+						.withFields(Relationship.Fields.SOURCE_ID, Relationship.Fields.DESTINATION_ID)
+						.withPageable(ConceptService.LARGE_PAGE).build(), Relationship.class)) {
+					changedIsARelationships.forEachRemaining(relationship -> {
+						updateSource.add(parseLong(relationship.getSourceId()));
+						updateDestination.add(parseLong(relationship.getDestinationId()));
+					});
+				}
+				timer.checkpoint("Collect changed is-a relationships.");
+
+				boolean someChangedAxioms = false;
+				if (stated) {
+					// Step: Collect source and destinations of is-a fragments within changed axioms
+					try (final CloseableIterator<ReferenceSetMember> changedAxioms = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
+							.withQuery(boolQuery()
+									.must(changesBranchCriteria.getEntityBranchCriteria(ReferenceSetMember.class))
+									.must(termQuery(ReferenceSetMember.Fields.REFSET_ID, Concepts.OWL_AXIOM_REFERENCE_SET))
+							)
+							.withFields(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, ReferenceSetMember.OwlExpressionFields.OWL_EXPRESSION_FIELD_PATH)
+							.withPageable(ConceptService.LARGE_PAGE).build(), ReferenceSetMember.class)) {
+						someChangedAxioms = changedAxioms.hasNext();
+						axiomStreamToRelationshipStream(
+								changedAxioms,
+								// filter
+								relationship -> relationship.getTypeId().equals(Concepts.ISA),
+								// for each
+								(component, relationship) -> {
+									updateSource.add(parseLong(relationship.getSourceId()));
+									updateDestination.add(parseLong(relationship.getDestinationId()));
+								});
+					}
+					timer.checkpoint("Collect changed axiom is-a fragments.");
+				}
 
-				if (notIsAUpdateCount == 0) {
-					// Stop here - nothing to update
-					return;
+				if (updateSource.isEmpty() && !someChangedAxioms) {
+					// There are no is-a relationships changes
+					// Are there any other relationship changes?
+					long notIsAUpdateCount = elasticsearchTemplate.count(new NativeSearchQueryBuilder()
+							.withQuery(boolQuery()
+									.must(changesBranchCriteria.getEntityBranchCriteria(Relationship.class))
+									.mustNot(termQuery("typeId", Concepts.ISA))
+									.must(termsQuery("characteristicTypeId", characteristicTypeIds))
+							).build(), Relationship.class);
+
+					if (notIsAUpdateCount == 0) {
+						// Stop here - nothing to update
+						return;
+					}
 				}
 			}
 
@@ -435,7 +488,7 @@ public class SemanticIndexUpdateService extends ComponentService implements Comm
 		timer.finish();
 	}
 
-	private void axiomStreamToRelationshipStream(CloseableIterator<ReferenceSetMember> changedAxioms, Predicate<Relationship> relationshipPredicate,
+	private void axiomStreamToRelationshipStream(Iterator<ReferenceSetMember> changedAxioms, Predicate<Relationship> relationshipPredicate,
 			BiConsumer<SnomedComponent, Relationship> relationshipConsumer) throws ConversionException {
 
 		AtomicReference<ConversionException> exceptionHolder = new AtomicReference<>();// Used to hold exceptions thrown within the lambda function
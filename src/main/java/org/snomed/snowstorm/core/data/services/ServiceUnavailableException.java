@@ -0,0 +1,11 @@
+package org.snomed.snowstorm.core.data.services;
+
+/**
+ * The request is valid but the server is too busy to accept it, the client should try again later.
+ */
+public class ServiceUnavailableException extends RuntimeException {
+
+	public ServiceUnavailableException(String message) {
+		super(message);
+	}
+}
@@ -238,8 +238,8 @@ public class ClassificationService {
 			throw new IllegalStateException("Missing branch metadata for " + BranchMetadataKeys.CLASSIFICATION_PREVIOUS_PACKAGE);
 		}
 
-		try {
-			File deltaExport = exportService.exportRF2ArchiveFile(path, SIMPLE_DATE_FORMAT.format(new Date()), RF2Type.DELTA, true);
+		// The delta is uploaded while it is being exported
+		try (InputStream deltaExport = exportService.exportRF2ArchiveStream(path, SIMPLE_DATE_FORMAT.format(new Date()), RF2Type.DELTA, true)) {
 			String remoteClassificationId = serviceClient.createClassification(previousPackage, deltaExport, path, reasonerId);
 			classification.setId(remoteClassificationId);
 			classification.setStatus(ClassificationStatus.SCHEDULED);
@@ -247,7 +247,7 @@ public class ClassificationService {
 			synchronized (classificationsInProgress) {
 				classificationsInProgress.add(classification);
 			}
-		} catch (RestClientException | ExportException e) {
+		} catch (RestClientException | ExportException | IOException e) {
 			throw new ServiceException("Failed to create classification.", e);
 		}
 
@@ -6,8 +6,9 @@ import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.core.data.services.classification.pojo.ClassificationStatusResponse;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
-import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
 import org.springframework.http.*;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
@@ -16,8 +17,10 @@ import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Base64;
 import java.util.Collections;
 
 @Service
@@ -25,6 +28,8 @@ class RemoteClassificationServiceClient {
 
 	private String serviceUrl;
 	private RestTemplate restTemplate;
+	private RestTemplate uploadRestTemplate;
+	private String authorization;
 
 	private Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -42,26 +47,38 @@ class RemoteClassificationServiceClient {
 				.rootUri(serviceUrl)
 				.basicAuthorization(serviceUsername, servicePassword)
 				.build();
+
+		// Request interceptors buffer the whole request body so uploads use a template without the authorization interceptor
+		SimpleClientHttpRequestFactory streamingRequestFactory = new SimpleClientHttpRequestFactory();
+		streamingRequestFactory.setBufferRequestBody(false);
+		uploadRestTemplate = new RestTemplateBuilder()
+				.rootUri(serviceUrl)
+				.requestFactory(() -> streamingRequestFactory)
+				.build();
+		authorization = "Basic " + Base64.getEncoder().encodeToString((serviceUsername + ":" + servicePassword).getBytes(StandardCharsets.UTF_8));
 	}
 
 	/**
 	 *
 	 * @param previousPackage The path or identifier of the previous RF2 snapshot archive.
-	 * @param deltaFile The RF2 delta archive of the content to be added to the previous package and classified.
+	 * @param deltaArchive The RF2 delta archive of the content to be added to the previous package and classified.
+	 *                     The archive is sent in chunks as it is read so it can be written while the upload is in progress.
 	 * @param branchPath The path of the branch which is being classified.
 	 * @param reasonerId The identifier of the reasoner to use for classification.
 	 * @return remoteClassificationId The identifier of the classification run on the remote service.
 	 * @throws RestClientException if something goes wrong when communicating with the remote service.
 	 */
-	String createClassification(String previousPackage, File deltaFile, String branchPath, String reasonerId) throws RestClientException {
+	String createClassification(String previousPackage, InputStream deltaArchive, String branchPath, String reasonerId) throws RestClientException {
 		MultiValueMap<String, Object> params = new LinkedMultiValueMap<>();
 		params.put("previousRelease", Collections.singletonList(previousPackage));
-		params.put("rf2Delta", Collections.singletonList(new FileSystemResource(deltaFile)));
+		params.put("rf2Delta", Collections.singletonList(new StreamedArchiveResource(deltaArchive)));
 		params.put("branch", Collections.singletonList(branchPath));
 		params.put("reasonerId", Collections.singletonList(reasonerId));
 
-
-		ResponseEntity<Void> response = restTemplate.postForEntity("/classifications", new HttpEntity<>(params, MULTIPART_HEADERS), Void.class);
+		HttpHeaders headers = new HttpHeaders();
+		headers.putAll(MULTIPART_HEADERS);
+		headers.set(HttpHeaders.AUTHORIZATION, authorization);
+		ResponseEntity<Void> response = uploadRestTemplate.postForEntity("/classifications", new HttpEntity<>(params, headers), Void.class);
 		String location = response.getHeaders().getLocation().toString();
 		String remoteClassificationId = location.substring(location.lastIndexOf("/") + 1);
 
@@ -91,4 +108,24 @@ class RemoteClassificationServiceClient {
 			}
 		};
 	}
+
+	/**
+	 * Multipart file part read from a stream. The length is reported as unknown so the stream is read once, while the request is written.
+	 */
+	private static final class StreamedArchiveResource extends InputStreamResource {
+
+		private StreamedArchiveResource(InputStream inputStream) {
+			super(inputStream);
+		}
+
+		@Override
+		public String getFilename() {
+			return "rf2-delta.zip";
+		}
+
+		@Override
+		public long contentLength() {
+			return -1;
+		}
+	}
 }
@@ -0,0 +1,93 @@
+package org.snomed.snowstorm.core.data.services.pojo;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongSet;
+
+import java.util.*;
+
+/**
+ * Semantic tags and reference set memberships of every concept on a branch at a point in time.
+ * Allows description search facets to be counted in memory from a set of concept ids, each concept is counted once per value.
+ * Tags and reference set ids are held once in a dictionary and referenced by index from each concept.
+ */
+public class ConceptFacetIndex {
+
+	private final String path;
+	private final long headTimestamp;
+
+	private final List<String> semanticTags = new ArrayList<>();
+	private final Map<String, Integer> semanticTagIndexes = new HashMap<>();
+	private final Long2ObjectMap<int[]> conceptSemanticTags = new Long2ObjectOpenHashMap<>();
+
+	private final List<String> refsetIds = new ArrayList<>();
+	private final Map<String, Integer> refsetIdIndexes = new HashMap<>();
+	private final Long2ObjectMap<int[]> conceptRefsets = new Long2ObjectOpenHashMap<>();
+
+	public ConceptFacetIndex(String path, long headTimestamp) {
+		this.path = path;
+		this.headTimestamp = headTimestamp;
+	}
+
+	public void addSemanticTag(long conceptId, String semanticTag) {
+		addValue(conceptId, semanticTag, semanticTags, semanticTagIndexes, conceptSemanticTags);
+	}
+
+	public void addRefsetMembership(long conceptId, String refsetId) {
+		addValue(conceptId, refsetId, refsetIds, refsetIdIndexes, conceptRefsets);
+	}
+
+	public Map<String, Long> countSemanticTags(LongSet conceptIds) {
+		return count(conceptIds, semanticTags, conceptSemanticTags);
+	}
+
+	public Map<String, Long> countRefsetMemberships(LongSet conceptIds) {
+		return count(conceptIds, refsetIds, conceptRefsets);
+	}
+
+	private void addValue(long conceptId, String value, List<String> dictionary, Map<String, Integer> dictionaryIndexes, Long2ObjectMap<int[]> conceptValues) {
+		Integer index = dictionaryIndexes.get(value);
+		if (index == null) {
+			index = dictionary.size();
+			dictionary.add(value);
+			dictionaryIndexes.put(value, index);
+		}
+		// Most concepts have one value so grow the array one at a time rather than using lists
+		int[] indexes = conceptValues.get(conceptId);
+		if (indexes == null) {
+			indexes = new int[] {index};
+		} else {
+			indexes = Arrays.copyOf(indexes, indexes.length + 1);
+			indexes[indexes.length - 1] = index;
+		}
+		conceptValues.put(conceptId, indexes);
+	}
+
+	private Map<String, Long> count(LongSet conceptIds, List<String> dictionary, Long2ObjectMap<int[]> conceptValues) {
+		long[] counts = new long[dictionary.size()];
+		for (LongIterator iterator = conceptIds.iterator(); iterator.hasNext(); ) {
+			int[] indexes = conceptValues.get(iterator.nextLong());
+			if (indexes != null) {
+				for (int index : indexes) {
+					counts[index]++;
+				}
+			}
+		}
+		Map<String, Long> countMap = new HashMap<>();
+		for (int i = 0; i < counts.length; i++) {
+			if (counts[i] > 0) {
+				countMap.put(dictionary.get(i), counts[i]);
+			}
+		}
+		return countMap;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	public long getHeadTimestamp() {
+		return headTimestamp;
+	}
+}
@@ -0,0 +1,30 @@
+package org.snomed.snowstorm.core.data.services.pojo;
+
+import org.elasticsearch.search.aggregations.bucket.terms.ParsedStringTerms;
+
+import java.util.Map;
+
+/**
+ * Terms aggregation calculated within Snowstorm rather than by Elasticsearch.
+ * Extends the Elasticsearch client type so that it can be returned alongside aggregations from search responses.
+ */
+public class InMemoryTermsAggregation extends ParsedStringTerms {
+
+	public InMemoryTermsAggregation(String name, Map<String, Long> counts, int size) {
+		setName(name);
+		// Same ordering as the Elasticsearch terms aggregation; highest count first
+		counts.entrySet().stream()
+				.sorted(Map.Entry.<String, Long>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+				.limit(size)
+				.forEach(entry -> buckets.add(new Bucket(entry.getKey(), entry.getValue())));
+	}
+
+	private static final class Bucket extends ParsedStringTerms.ParsedBucket {
+
+		private Bucket(String key, long docCount) {
+			setKeyAsString(key);
+			setDocCount(docCount);
+		}
+	}
+
+}
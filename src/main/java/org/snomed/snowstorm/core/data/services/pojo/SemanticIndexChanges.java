@@ -0,0 +1,113 @@
+package org.snomed.snowstorm.core.data.services.pojo;
+
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static java.lang.Long.parseLong;
+
+/**
+ * Relationship and axiom changes collected while the rows of a commit are read, so that the semantic index update
+ * does not have to search the commit to find them. The collected changes may include rows which are later found to be unchanged,
+ * this only widens the update. If more rows are recorded than the limit the changes are discarded and the update searches as usual.
+ */
+public class SemanticIndexChanges {
+
+	private final int maxRows;
+	private int rows;
+	private boolean overflow;
+
+	private final Form stated = new Form();
+	private final Form inferred = new Form();
+	private final List<ReferenceSetMember> axiomMembers = new ArrayList<>();
+
+	public SemanticIndexChanges(int maxRows) {
+		this.maxRows = maxRows;
+	}
+
+	public synchronized void relationshipChanged(String characteristicTypeId, String typeId, String sourceId, String destinationId) {
+		if (!recordRow()) {
+			return;
+		}
+		boolean additional = Concepts.ADDITIONAL_RELATIONSHIP.equals(characteristicTypeId);
+		if (additional || Concepts.STATED_RELATIONSHIP.equals(characteristicTypeId)) {
+			stated.relationshipChanged(typeId, sourceId, destinationId);
+		}
+		if (additional || Concepts.INFERRED_RELATIONSHIP.equals(characteristicTypeId)) {
+			inferred.relationshipChanged(typeId, sourceId, destinationId);
+		}
+	}
+
+	public synchronized void memberChanged(ReferenceSetMember member) {
+		if (Concepts.OWL_AXIOM_REFERENCE_SET.equals(member.getRefsetId()) && recordRow()) {
+			axiomMembers.add(member);
+		}
+	}
+
+	private boolean recordRow() {
+		if (overflow) {
+			return false;
+		}
+		if (++rows > maxRows) {
+			overflow = true;
+			stated.clear();
+			inferred.clear();
+			axiomMembers.clear();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return false if the limit was reached, in which case none of the changes are known.
+	 */
+	public synchronized boolean isComplete() {
+		return !overflow;
+	}
+
+	public Set<Long> getIsASourceIds(boolean stated) {
+		return getForm(stated).isASourceIds;
+	}
+
+	public Set<Long> getIsADestinationIds(boolean stated) {
+		return getForm(stated).isADestinationIds;
+	}
+
+	public boolean isOtherRelationshipChanged(boolean stated) {
+		return getForm(stated).otherRelationshipChanged;
+	}
+
+	public List<ReferenceSetMember> getAxiomMembers() {
+		return axiomMembers;
+	}
+
+	private Form getForm(boolean stated) {
+		return stated ? this.stated : inferred;
+	}
+
+	private static final class Form {
+
+		private final Set<Long> isASourceIds = new LongOpenHashSet();
+		private final Set<Long> isADestinationIds = new LongOpenHashSet();
+		private boolean otherRelationshipChanged;
+
+		private void relationshipChanged(String typeId, String sourceId, String destinationId) {
+			if (Concepts.ISA.equals(typeId)) {
+				isASourceIds.add(parseLong(sourceId));
+				isADestinationIds.add(parseLong(destinationId));
+			} else {
+				otherRelationshipChanged = true;
+			}
+		}
+
+		private void clear() {
+			isASourceIds.clear();
+			isADestinationIds.clear();
+			otherRelationshipChanged = false;
+		}
+	}
+}
@@ -2,40 +2,21 @@ package org.snomed.snowstorm.core.rf2.export;
 
 import org.snomed.snowstorm.core.data.domain.Concept;
 
-import java.io.BufferedWriter;
-import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
 
-class ConceptExportWriter extends ExportWriter<Concept> {
+class ConceptExportWriter extends ExportWriter {
 
 	static final String HEADER = "id\teffectiveTime\tactive\tmoduleId\tdefinitionStatusId";
 
-	ConceptExportWriter(BufferedWriter bufferedWriter) {
-		super(bufferedWriter);
-	}
-
-	void writeHeader() throws IOException {
-		bufferedWriter.write(HEADER);
-		bufferedWriter.newLine();
-	}
-
-	void flush() {
-		try {
-			for (Concept concept : componentBuffer) {
-				bufferedWriter.write(concept.getConceptId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(concept.getEffectiveTimeI() != null ? concept.getEffectiveTimeI().toString() : "");
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(concept.isActive() ? "1" : "0");
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(concept.getModuleId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(concept.getDefinitionStatusId());
-				bufferedWriter.newLine();
-			}
-			componentBuffer.clear();
-		} catch (IOException e) {
-			throw new ExportException("Failed to write Concept to RF2 file.", e);
-		}
+	ConceptExportWriter(OutputStream outputStream) {
+		super(outputStream, HEADER, Arrays.asList(
+				Concept.Fields.CONCEPT_ID,
+				Concept.Fields.EFFECTIVE_TIME,
+				Concept.Fields.ACTIVE,
+				Concept.Fields.MODULE_ID,
+				"definitionStatusId"), Collections.emptySet());
 	}
 
 }
@@ -2,48 +2,25 @@ package org.snomed.snowstorm.core.rf2.export;
 
 import org.snomed.snowstorm.core.data.domain.Description;
 
-import java.io.BufferedWriter;
-import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
 
-class DescriptionExportWriter extends ExportWriter<Description> {
+class DescriptionExportWriter extends ExportWriter {
 
 	static final String HEADER = "id\teffectiveTime\tactive\tmoduleId\tconceptId\tlanguageCode\ttypeId\tterm\tcaseSignificanceId";
 
-	DescriptionExportWriter(BufferedWriter bufferedWriter) {
-		super(bufferedWriter);
-	}
-
-	void writeHeader() throws IOException {
-		bufferedWriter.write(HEADER);
-		bufferedWriter.newLine();
-	}
-
-	void flush() {
-		try {
-			for (Description description : componentBuffer) {
-				bufferedWriter.write(description.getDescriptionId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(description.getEffectiveTimeI() != null ? description.getEffectiveTimeI().toString() : "");
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(description.isActive() ? "1" : "0");
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(description.getModuleId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(description.getConceptId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(description.getLanguageCode());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(description.getTypeId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(description.getTerm());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(description.getCaseSignificanceId());
-				bufferedWriter.newLine();
-			}
-			componentBuffer.clear();
-		} catch (IOException e) {
-			throw new ExportException("Failed to write Description to RF2 file.", e);
-		}
+	DescriptionExportWriter(OutputStream outputStream) {
+		super(outputStream, HEADER, Arrays.asList(
+				Description.Fields.DESCRIPTION_ID,
+				Description.Fields.EFFECTIVE_TIME,
+				Description.Fields.ACTIVE,
+				Description.Fields.MODULE_ID,
+				Description.Fields.CONCEPT_ID,
+				Description.Fields.LANGUAGE_CODE,
+				Description.Fields.TYPE_ID,
+				Description.Fields.TERM,
+				"caseSignificanceId"), Collections.emptySet());
 	}
 
 }
@@ -0,0 +1,220 @@
+package org.snomed.snowstorm.core.rf2.export;
+
+import com.google.common.hash.Hashing;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Size bounded cache of RF2 export archives on disk, least recently used archives are deleted first.
+ * Only used for branches which do not change, such as code system versions, so the key must include everything which affects the content.
+ * Requests for an archive which is being built wait for it rather than starting another export.
+ * The most recently added archive is kept even if it alone exceeds the size limit.
+ * Archives are pinned while they are being served and are only evicted once every user has closed them.
+ */
+public class ExportArchiveCache {
+
+	private static final String ARCHIVE_SUFFIX = ".zip";
+
+	private final boolean enabled;
+	private final File directory;
+	private final long maxSizeBytes;
+
+	// Archive file name to size, in access order
+	private final LinkedHashMap<String, Long> archiveSizes = new LinkedHashMap<>(16, 0.75f, true);
+	private final Map<String, CompletableFuture<File>> archivesInProgress = new HashMap<>();
+	// Archive file name to number of users which have not closed it yet
+	private final Map<String, Integer> pinCounts = new HashMap<>();
+	private long totalSizeBytes;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public ExportArchiveCache(boolean enabled, String directory, long maxSizeMegabytes) {
+		this.enabled = enabled;
+		this.directory = new File(directory);
+		this.maxSizeBytes = maxSizeMegabytes * 1024 * 1024;
+		if (enabled) {
+			if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+				throw new IllegalStateException("Failed to create export cache directory " + this.directory.getAbsolutePath());
+			}
+			loadExistingArchives();
+			logger.info("Export archive cache enabled in {} with max {} MB, {} archives found.", this.directory.getAbsolutePath(), maxSizeMegabytes, archiveSizes.size());
+		}
+	}
+
+	private synchronized void loadExistingArchives() {
+		File[] files = directory.listFiles((dir, name) -> name.endsWith(ARCHIVE_SUFFIX));
+		if (files != null) {
+			Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+			for (File file : files) {
+				archiveSizes.put(file.getName(), file.length());
+				totalSizeBytes += file.length();
+			}
+			evictUnpinned();
+		}
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @param key everything which affects the content of the archive.
+	 * @param archiveBuilder writes the archive to a temporary file when it is not cached, the file is moved into the cache.
+	 * @return the cached archive, which is not deleted until it is closed.
+	 */
+	public CachedArchive get(List<Object> key, Supplier<File> archiveBuilder) throws ExportException {
+		String name = Hashing.sha256().hashString(key.toString(), StandardCharsets.UTF_8).toString() + ARCHIVE_SUFFIX;
+		File cachedArchive = new File(directory, name);
+		CompletableFuture<File> future;
+		boolean build = false;
+		synchronized (this) {
+			if (archiveSizes.get(name) != null) {
+				hits++;
+				return pin(name, cachedArchive);
+			}
+			future = archivesInProgress.get(name);
+			if (future == null) {
+				misses++;
+				future = new CompletableFuture<>();
+				archivesInProgress.put(name, future);
+				build = true;
+			}
+		}
+		if (!build) {
+			waitFor(future);
+			// The archive may have been evicted again before this caller could pin it
+			return get(key, archiveBuilder);
+		}
+
+		File archive = null;
+		try {
+			logger.info("Building export archive {} for cache.", key);
+			archive = archiveBuilder.get();
+			Files.move(archive.toPath(), cachedArchive.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			CachedArchive pinnedArchive;
+			synchronized (this) {
+				archivesInProgress.remove(name);
+				pinnedArchive = pin(name, cachedArchive);
+				archiveSizes.put(name, cachedArchive.length());
+				totalSizeBytes += cachedArchive.length();
+				evictUnpinned();
+			}
+			future.complete(cachedArchive);
+			return pinnedArchive;
+		} catch (IOException | RuntimeException e) {
+			if (archive != null) {
+				archive.delete();
+			}
+			synchronized (this) {
+				archivesInProgress.remove(name);
+			}
+			future.completeExceptionally(e);
+			if (e instanceof ExportException) {
+				throw (ExportException) e;
+			}
+			throw new ExportException("Failed to cache export archive.", e);
+		}
+	}
+
+	private File waitFor(CompletableFuture<File> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ExportException("Interrupted while waiting for export archive.", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof ExportException) {
+				throw (ExportException) e.getCause();
+			}
+			throw new ExportException("Failed to build export archive.", e.getCause());
+		}
+	}
+
+	private CachedArchive pin(String name, File file) {
+		pinCounts.merge(name, 1, Integer::sum);
+		return new CachedArchive(name, file);
+	}
+
+	private synchronized void release(String name) {
+		if (pinCounts.merge(name, -1, Integer::sum) <= 0) {
+			pinCounts.remove(name);
+			// Eviction may have been held back by this archive
+			evictUnpinned();
+		}
+	}
+
+	/**
+	 * Deletes least recently used archives until the cache is within its size limit, skipping pinned archives and the most recently used archive.
+	 */
+	private void evictUnpinned() {
+		Iterator<Map.Entry<String, Long>> iterator = archiveSizes.entrySet().iterator();
+		int remaining = archiveSizes.size();
+		while (totalSizeBytes > maxSizeBytes && remaining > 1) {
+			Map.Entry<String, Long> eldest = iterator.next();
+			remaining--;
+			if (pinCounts.containsKey(eldest.getKey())) {
+				continue;
+			}
+			if (!new File(directory, eldest.getKey()).delete()) {
+				logger.warn("Failed to delete cached export archive {}.", eldest.getKey());
+			}
+			totalSizeBytes -= eldest.getValue();
+			iterator.remove();
+			evictions++;
+		}
+	}
+
+	public synchronized Map<String, Object> getMetrics() {
+		Map<String, Object> metrics = new LinkedHashMap<>();
+		metrics.put("enabled", enabled);
+		metrics.put("archives", archiveSizes.size());
+		metrics.put("sizeBytes", totalSizeBytes);
+		metrics.put("maxSizeBytes", maxSizeBytes);
+		metrics.put("hits", hits);
+		metrics.put("misses", misses);
+		metrics.put("evictions", evictions);
+		return metrics;
+	}
+
+	/**
+	 * An archive in the cache which can not be evicted until it is closed.
+	 */
+	public final class CachedArchive implements Closeable {
+
+		private final String name;
+		private final File file;
+		private final AtomicBoolean closed = new AtomicBoolean();
+
+		private CachedArchive(String name, File file) {
+			this.name = name;
+			this.file = file;
+		}
+
+		public File getFile() {
+			return file;
+		}
+
+		@Override
+		public void close() {
+			if (closed.compareAndSet(false, true)) {
+				release(name);
+			}
+		}
+	}
+}
@@ -3,36 +3,54 @@ package org.snomed.snowstorm.core.rf2.export;
 import com.google.common.collect.Sets;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.BranchService;
+import io.kaicode.elasticvc.api.PathUtil;
 import io.kaicode.elasticvc.api.VersionControlHelper;
+import io.kaicode.elasticvc.domain.Branch;
 import org.apache.tomcat.util.http.fileupload.util.Streams;
 import org.elasticsearch.index.query.BoolQueryBuilder;
 import org.elasticsearch.index.query.QueryBuilder;
 import org.elasticsearch.index.query.QueryBuilders;
+import org.elasticsearch.index.query.RangeQueryBuilder;
+import org.elasticsearch.search.aggregations.AggregationBuilders;
+import org.elasticsearch.search.aggregations.bucket.terms.ParsedStringTerms;
+import org.elasticsearch.search.aggregations.bucket.terms.Terms;
+import org.elasticsearch.search.aggregations.bucket.terms.TermsAggregationBuilder;
+import org.elasticsearch.search.aggregations.bucket.terms.support.IncludeExclude;
 import org.elasticsearch.search.sort.SortBuilders;
+import org.elasticsearch.search.sort.SortOrder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.core.data.domain.*;
 import org.snomed.snowstorm.core.data.domain.jobs.ExportConfiguration;
 import org.snomed.snowstorm.core.data.repositories.ExportConfigurationRepository;
+import org.snomed.snowstorm.core.data.services.CodeSystemService;
 import org.snomed.snowstorm.core.data.services.NotFoundException;
-import org.snomed.snowstorm.core.data.services.QueryService;
 import org.snomed.snowstorm.core.rf2.RF2Type;
 import org.snomed.snowstorm.core.util.DateUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.data.elasticsearch.core.aggregation.AggregatedPage;
+import org.springframework.data.elasticsearch.core.mapping.ElasticsearchPersistentEntity;
+import org.springframework.data.elasticsearch.core.query.FetchSourceFilter;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQuery;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
 import java.io.*;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
 import static org.elasticsearch.index.query.QueryBuilders.*;
+import static org.snomed.snowstorm.config.Config.PAGE_OF_ONE;
 
 @Service
 public class ExportService {
@@ -43,21 +61,52 @@ public class ExportService {
 	@Autowired
 	private ElasticsearchOperations elasticsearchTemplate;
 
-	@Autowired
-	private QueryService queryService;
-
 	@Autowired
 	private ExportConfigurationRepository exportConfigurationRepository;
 
 	@Autowired
 	private BranchService branchService;
 
+	@Autowired
+	private CodeSystemService codeSystemService;
+
+	@Autowired
+	private ExportArchiveCache exportArchiveCache;
+
+	private static final int MAX_REFSETS = 10_000;
+
 	private Set<String> refsetTypesRequiredForClassification = Sets.newHashSet(Concepts.REFSET_MRCM_ATTRIBUTE_DOMAIN, Concepts.OWL_AXIOM_REFERENCE_SET);
 
+	private static final int PIPE_BUFFER_SIZE = 1024 * 1024;
+
+	private final ExecutorService exportExecutorService;
+
+	// Writes archives which are read as a stream, streams waiting for a thread are started in the order they were requested
+	private final ExecutorService archiveWriterExecutorService;
+
 	private Logger logger = LoggerFactory.getLogger(getClass());
 
+	public ExportService(@Value("${export.threads}") int exportThreads, @Value("${export.stream.threads}") int streamThreads) {
+		// Shared by all exports so the number of concurrent scrolls is bounded
+		exportExecutorService = Executors.newFixedThreadPool(exportThreads);
+		ThreadPoolExecutor streamExecutor = new ThreadPoolExecutor(streamThreads, streamThreads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+		streamExecutor.allowCoreThreadTimeOut(true);
+		archiveWriterExecutorService = streamExecutor;
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		exportExecutorService.shutdownNow();
+		archiveWriterExecutorService.shutdownNow();
+	}
+
 	public String createJob(ExportConfiguration exportConfiguration) {
 		branchService.findBranchOrThrow(exportConfiguration.getBranchPath());
+		Integer startEffectiveTime = exportConfiguration.getStartEffectiveTime();
+		Integer endEffectiveTime = exportConfiguration.getEndEffectiveTime();
+		if (startEffectiveTime != null && endEffectiveTime != null && startEffectiveTime > endEffectiveTime) {
+			throw new IllegalArgumentException("The startEffectiveTime must not be after the endEffectiveTime.");
+		}
 		exportConfiguration.setId(UUID.randomUUID().toString());
 		if (exportConfiguration.getFilenameEffectiveDate() == null) {
 			exportConfiguration.setFilenameEffectiveDate(DateUtil.DATE_STAMP_FORMAT.format(new Date()));
@@ -75,16 +124,16 @@ public class ExportService {
 	}
 
 	public void exportRF2Archive(ExportConfiguration exportConfiguration, OutputStream outputStream) throws ExportException {
-		synchronized (this) {
-			if (exportConfiguration.getStartDate() != null) {
-				throw new IllegalStateException("Export already started.");
-			}
-			exportConfiguration.setStartDate(new Date());
-			exportConfigurationRepository.save(exportConfiguration);
+		markStarted(exportConfiguration);
+
+		if (exportConfiguration.isStreamed()) {
+			// Entries are written to the client as they are completed, no archive is built on disk first
+			List<ExportFile<?>> exportFiles = getExportFiles(exportConfiguration);
+			writeArchive(exportFiles, exportConfiguration.getFilenameEffectiveDate(), exportConfiguration.getType(), exportConfiguration.getCompressionLevel(), outputStream);
+			return;
 		}
 
-		File exportFile = exportRF2ArchiveFile(exportConfiguration.getBranchPath(), exportConfiguration.getFilenameEffectiveDate(),
-				exportConfiguration.getType(), exportConfiguration.isConceptsAndRelationshipsOnly());
+		File exportFile = exportRF2ArchiveFile(exportConfiguration);
 		try {
 			Streams.copy(new FileInputStream(exportFile), outputStream, false);
 		} catch (IOException e) {
@@ -94,88 +143,247 @@ public class ExportService {
 		}
 	}
 
+	/**
+	 * Exports of code system version branches are kept in the export archive cache because the content of those branches does not change.
+	 * The same cached archive can be read more than once, for example to resume a download with a Range request.
+	 * @return the cached archive, which must be closed once it has been served, or null if the branch is not a code system version or the cache is disabled.
+	 */
+	public ExportArchiveCache.CachedArchive getCachedRF2Archive(ExportConfiguration exportConfiguration) throws ExportException {
+		String branchPath = exportConfiguration.getBranchPath();
+		if (!exportArchiveCache.isEnabled() || !codeSystemService.findVersionByBranchPath(branchPath).isPresent()) {
+			return null;
+		}
+		synchronized (this) {
+			// Only the first read is recorded, a repeated read is served from the cache
+			if (exportConfiguration.getStartDate() == null) {
+				markStarted(exportConfiguration);
+			}
+		}
+
+		// The head timestamp is included in case content was added to the version branch
+		long headTimestamp = branchService.findBranchOrThrow(branchPath).getHeadTimestamp();
+		List<Object> key = Arrays.asList(branchPath, headTimestamp, exportConfiguration.getType(), exportConfiguration.getFilenameEffectiveDate(),
+				exportConfiguration.isConceptsAndRelationshipsOnly(), exportConfiguration.getCompressionLevel(),
+				sorted(exportConfiguration.getModuleIds()), sorted(exportConfiguration.getRefsetIds()),
+				exportConfiguration.getStartEffectiveTime(), exportConfiguration.getEndEffectiveTime());
+		return exportArchiveCache.get(key, () -> exportRF2ArchiveFile(exportConfiguration));
+	}
+
+	private static Set<String> sorted(Set<String> ids) {
+		return ids != null ? new TreeSet<>(ids) : Collections.emptySet();
+	}
+
+	public Map<String, Object> getCacheMetrics() {
+		return exportArchiveCache.getMetrics();
+	}
+
+	private void markStarted(ExportConfiguration exportConfiguration) {
+		synchronized (this) {
+			if (exportConfiguration.getStartDate() != null) {
+				throw new IllegalStateException("Export already started.");
+			}
+			exportConfiguration.setStartDate(new Date());
+			exportConfigurationRepository.save(exportConfiguration);
+		}
+	}
+
 	public File exportRF2ArchiveFile(String branchPath, String filenameEffectiveDate, RF2Type exportType, boolean forClassification) throws ExportException {
-		if (exportType == RF2Type.FULL) {
-			throw new IllegalArgumentException("Full RF2 export is not implemented.");
+		return exportRF2ArchiveFile(getExportConfiguration(branchPath, filenameEffectiveDate, exportType, forClassification));
+	}
+
+	/**
+	 * Writes the archive on another thread so it can be read, for example uploaded, while it is being written. No archive is written to disk.
+	 * Reading the stream fails if the export fails. The export is abandoned if the stream is closed before the archive is complete.
+	 */
+	public InputStream exportRF2ArchiveStream(String branchPath, String filenameEffectiveDate, RF2Type exportType, boolean forClassification) throws ExportException {
+		List<ExportFile<?>> exportFiles = getExportFiles(getExportConfiguration(branchPath, filenameEffectiveDate, exportType, forClassification));
+		ArchivePipe pipe = new ArchivePipe(PIPE_BUFFER_SIZE);
+		archiveWriterExecutorService.submit(() -> {
+			RuntimeException failure = null;
+			try {
+				writeArchive(exportFiles, filenameEffectiveDate, exportType, null, pipe.getOutputStream());
+			} catch (RuntimeException e) {
+				logger.warn("Streamed RF2 export of {} failed.", branchPath, e);
+				failure = e;
+			} finally {
+				// The pipe is closed here rather than by the zip so that a failure is recorded before the reader reaches the end of the stream
+				pipe.closeWriter(failure);
+			}
+		});
+		return pipe.getInputStream();
+	}
+
+	private ExportConfiguration getExportConfiguration(String branchPath, String filenameEffectiveDate, RF2Type exportType, boolean forClassification) {
+		ExportConfiguration exportConfiguration = new ExportConfiguration(branchPath, exportType);
+		exportConfiguration.setFilenameEffectiveDate(filenameEffectiveDate);
+		exportConfiguration.setConceptsAndRelationshipsOnly(forClassification);
+		return exportConfiguration;
+	}
+
+	private File exportRF2ArchiveFile(ExportConfiguration exportConfiguration) throws ExportException {
+		List<ExportFile<?>> exportFiles = getExportFiles(exportConfiguration);
+		File archiveFile = null;
+		try {
+			archiveFile = File.createTempFile("export-" + new Date().getTime(), ".zip");
+			writeArchive(exportFiles, exportConfiguration.getFilenameEffectiveDate(), exportConfiguration.getType(), exportConfiguration.getCompressionLevel(),
+					new FileOutputStream(archiveFile));
+			return archiveFile;
+		} catch (IOException | RuntimeException e) {
+			if (archiveFile != null) {
+				archiveFile.delete();
+			}
+			if (e instanceof ExportException) {
+				throw (ExportException) e;
+			}
+			throw new ExportException("Failed to write RF2 zip file.", e);
 		}
+	}
 
+	private List<ExportFile<?>> getExportFiles(ExportConfiguration exportConfiguration) {
+		String branchPath = exportConfiguration.getBranchPath();
+		RF2Type exportType = exportConfiguration.getType();
+		boolean forClassification = exportConfiguration.isConceptsAndRelationshipsOnly();
 		BranchCriteria branchCriteria = versionControlHelper.getBranchCriteria(branchPath);
+		BoolQueryBuilder versionHistoryCriteria = exportType == RF2Type.FULL ? getVersionHistoryCriteria(branchPath) : null;
+
+		// Files are written to the zip in this order
+		List<ExportFile<?>> exportFiles = new ArrayList<>();
+
+		// Concepts
+		exportFiles.add(new ExportFile<>(Concept.class, "Terminology/", "sct2_Concept_", "concept states",
+				getContentQuery(exportConfiguration, branchCriteria.getEntityBranchCriteria(Concept.class), versionHistoryCriteria), null));
+
+		if (!forClassification) {
+			// Descriptions
+			BoolQueryBuilder descriptionBranchCriteria = branchCriteria.getEntityBranchCriteria(Description.class);
+			BoolQueryBuilder descriptionContentQuery = getContentQuery(exportConfiguration, descriptionBranchCriteria, versionHistoryCriteria);
+			descriptionContentQuery.mustNot(termQuery(Description.Fields.TYPE_ID, Concepts.TEXT_DEFINITION));
+			exportFiles.add(new ExportFile<>(Description.class, "Terminology/", "sct2_Description_", "description states", descriptionContentQuery, null));
+
+			// Text Definitions
+			BoolQueryBuilder textDefinitionContentQuery = getContentQuery(exportConfiguration, descriptionBranchCriteria, versionHistoryCriteria);
+			textDefinitionContentQuery.must(termQuery(Description.Fields.TYPE_ID, Concepts.TEXT_DEFINITION));
+			exportFiles.add(new ExportFile<>(Description.class, "Terminology/", "sct2_TextDefinition_", "text definition states", textDefinitionContentQuery, null));
+		}
 
-		try {
-			File exportFile = File.createTempFile("export-" + new Date().getTime(), ".zip");
-			try (ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(exportFile))) {
-				// Write Concepts
-				int conceptLines = exportComponents(Concept.class, "Terminology/", "sct2_Concept_", filenameEffectiveDate, exportType, zipOutputStream, getContentQuery(exportType, branchCriteria.getEntityBranchCriteria(Concept.class)), null);
-				logger.info("{} concept states exported", conceptLines);
-
-				if (!forClassification) {
-					// Write Descriptions
-					BoolQueryBuilder descriptionBranchCriteria = branchCriteria.getEntityBranchCriteria(Description.class);
-					BoolQueryBuilder descriptionContentQuery = getContentQuery(exportType, descriptionBranchCriteria);
-					descriptionContentQuery.mustNot(termQuery(Description.Fields.TYPE_ID, Concepts.TEXT_DEFINITION));
-					int descriptionLines = exportComponents(Description.class, "Terminology/", "sct2_Description_", filenameEffectiveDate, exportType, zipOutputStream, descriptionContentQuery, null);
-					logger.info("{} description states exported", descriptionLines);
-
-					// Write Text Definitions
-					BoolQueryBuilder textDefinitionContentQuery = getContentQuery(exportType, descriptionBranchCriteria);
-					textDefinitionContentQuery.must(termQuery(Description.Fields.TYPE_ID, Concepts.TEXT_DEFINITION));
-					int textDefinitionLines = exportComponents(Description.class, "Terminology/", "sct2_TextDefinition_", filenameEffectiveDate, exportType, zipOutputStream, textDefinitionContentQuery, null);
-					logger.info("{} text defintion states exported", textDefinitionLines);
-				}
+		// Stated Relationships
+		BoolQueryBuilder relationshipBranchCritera = branchCriteria.getEntityBranchCriteria(Relationship.class);
+		BoolQueryBuilder relationshipQuery = getContentQuery(exportConfiguration, relationshipBranchCritera, versionHistoryCriteria);
+		relationshipQuery.must(termQuery("characteristicTypeId", Concepts.STATED_RELATIONSHIP));
+		exportFiles.add(new ExportFile<>(Relationship.class, "Terminology/", "sct2_StatedRelationship_", "stated relationship states", relationshipQuery, null));
+
+		// Inferred Relationships
+		relationshipQuery = getContentQuery(exportConfiguration, relationshipBranchCritera, versionHistoryCriteria);
+		// Not 'stated' will include inferred and additional
+		relationshipQuery.mustNot(termQuery("characteristicTypeId", Concepts.STATED_RELATIONSHIP));
+		exportFiles.add(new ExportFile<>(Relationship.class, "Terminology/", "sct2_Relationship_", "inferred and additional relationship states", relationshipQuery, null));
+
+		// Reference Sets
+		List<ReferenceSetType> referenceSetTypes = getReferenceSetTypes(branchCriteria.getEntityBranchCriteria(ReferenceSetType.class)).stream()
+				.filter(type -> !forClassification || refsetTypesRequiredForClassification.contains(type.getConceptId()))
+				.collect(Collectors.toList());
+
+		logger.info("{} Reference Set Types found for this export: {}", referenceSetTypes.size(), referenceSetTypes);
+
+		// Reference sets with members in this export are found with one aggregation and matched to types using their ancestors
+		BoolQueryBuilder memberBranchCriteria = branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class);
+		BoolQueryBuilder allMembersQuery = getContentQuery(exportConfiguration, memberBranchCriteria, versionHistoryCriteria);
+		Set<String> refsetIds = exportConfiguration.getRefsetIds();
+		if (refsetIds != null && !refsetIds.isEmpty()) {
+			allMembersQuery.filter(termsQuery(ReferenceSetMember.Fields.REFSET_ID, refsetIds));
+		}
+		Map<Long, Long> refsetMemberCounts = getRefsetMemberCounts(allMembersQuery);
+		Map<Long, Set<Long>> refsetAncestors = getStatedAncestors(branchCriteria, refsetMemberCounts.keySet());
+		// The refset id is added to the file name when the type has subtypes
+		Set<Long> typesWithSubtypes = getConceptsWithStatedDescendants(branchCriteria,
+				referenceSetTypes.stream().map(type -> Long.parseLong(type.getConceptId())).collect(Collectors.toSet()));
+		for (ReferenceSetType referenceSetType : referenceSetTypes) {
+			Long typeId = Long.parseLong(referenceSetType.getConceptId());
+			List<Long> refsetsOfThisType = refsetMemberCounts.keySet().stream()
+					.filter(refsetId -> refsetId.equals(typeId) || refsetAncestors.getOrDefault(refsetId, Collections.emptySet()).contains(typeId))
+					.sorted()
+					.collect(Collectors.toList());
+			for (Long refsetToExport : refsetsOfThisType) {
+				BoolQueryBuilder memberQuery = getContentQuery(exportConfiguration, memberBranchCriteria, versionHistoryCriteria);
+				memberQuery.must(QueryBuilders.termQuery(ReferenceSetMember.Fields.REFSET_ID, refsetToExport));
+				logger.info("Exporting Reference Set {} {} with {} members", refsetToExport, referenceSetType.getName(), refsetMemberCounts.get(refsetToExport));
+				String exportDir = referenceSetType.getExportDir();
+				String entryDirectory = !exportDir.startsWith("/") ? "Refset/" + exportDir + "/" : exportDir.substring(1) + "/";
+				boolean typeHasSubtypes = typesWithSubtypes.contains(typeId);
+				String entryFilenamePrefix = (!entryDirectory.startsWith("Terminology/") ? "der2_" : "sct2_") + referenceSetType.getFieldTypes() + "Refset_" + referenceSetType.getName() + (typeHasSubtypes ? refsetToExport : "");
+				exportFiles.add(new ExportFile<>(ReferenceSetMember.class, entryDirectory, entryFilenamePrefix, "reference set " + refsetToExport + " member states",
+						memberQuery, referenceSetType.getFieldNameList()));
+			}
+		}
+
+		if (exportType == RF2Type.FULL) {
+			exportFiles.forEach(exportFile -> exportFile.versionHistory = true);
+		}
+		return exportFiles;
+	}
 
-				// Write Stated Relationships
-				BoolQueryBuilder relationshipBranchCritera = branchCriteria.getEntityBranchCriteria(Relationship.class);
-				BoolQueryBuilder relationshipQuery = getContentQuery(exportType, relationshipBranchCritera);
-				relationshipQuery.must(termQuery("characteristicTypeId", Concepts.STATED_RELATIONSHIP));
-				int statedRelationshipLines = exportComponents(Relationship.class, "Terminology/", "sct2_StatedRelationship_", filenameEffectiveDate, exportType, zipOutputStream, relationshipQuery, null);
-				logger.info("{} stated relationship states exported", statedRelationshipLines);
-
-				// Write Inferred Relationships
-				relationshipQuery = getContentQuery(exportType, relationshipBranchCritera);
-				// Not 'stated' will include inferred and additional
-				relationshipQuery.mustNot(termQuery("characteristicTypeId", Concepts.STATED_RELATIONSHIP));
-				int inferredRelationshipLines = exportComponents(Relationship.class, "Terminology/", "sct2_Relationship_", filenameEffectiveDate, exportType, zipOutputStream, relationshipQuery, null);
-				logger.info("{} inferred and additional relationship states exported", inferredRelationshipLines);
-
-				// Write Reference Sets
-				List<ReferenceSetType> referenceSetTypes = getReferenceSetTypes(branchCriteria.getEntityBranchCriteria(ReferenceSetType.class)).stream()
-						.filter(type -> !forClassification || refsetTypesRequiredForClassification.contains(type.getConceptId()))
-						.collect(Collectors.toList());
-
-				logger.info("{} Reference Set Types found for this export: {}", referenceSetTypes.size(), referenceSetTypes);
-
-				BoolQueryBuilder memberBranchCriteria = branchCriteria.getEntityBranchCriteria(ReferenceSetMember.class);
-				for (ReferenceSetType referenceSetType : referenceSetTypes) {
-					List<Long> refsetsOfThisType = new ArrayList<>(queryService.findDescendantIdsAsUnion(branchCriteria, true, Collections.singleton(Long.parseLong(referenceSetType.getConceptId()))));
-					refsetsOfThisType.add(Long.parseLong(referenceSetType.getConceptId()));
-					for (Long refsetToExport : refsetsOfThisType) {
-						BoolQueryBuilder memberQuery = getContentQuery(exportType, memberBranchCriteria);
-						memberQuery.must(QueryBuilders.termQuery(ReferenceSetMember.Fields.REFSET_ID, refsetToExport));
-						long memberCount = elasticsearchTemplate.count(getNativeSearchQuery(memberQuery), ReferenceSetMember.class);
-						if (memberCount > 0) {
-							logger.info("Exporting Reference Set {} {} with {} members", refsetToExport, referenceSetType.getName(), memberCount);
-							String exportDir = referenceSetType.getExportDir();
-							String entryDirectory = !exportDir.startsWith("/") ? "Refset/" + exportDir + "/" : exportDir.substring(1) + "/";
-							String entryFilenamePrefix = (!entryDirectory.startsWith("Terminology/") ? "der2_" : "sct2_") + referenceSetType.getFieldTypes() + "Refset_" + referenceSetType.getName() + (refsetsOfThisType.size() > 1 ? refsetToExport : "");
-							exportComponents(
-									ReferenceSetMember.class,
-									entryDirectory,
-									entryFilenamePrefix,
-									filenameEffectiveDate,
-									exportType,
-									zipOutputStream,
-									memberQuery,
-									referenceSetType.getFieldNameList());
-						}
+	/**
+	 * Writes the zip to the output stream, which is closed when complete.
+	 * Each file is read by its own scroll and written to a temporary file so that files are read concurrently.
+	 * When the zip reaches a file whose scroll has not started yet that file is written straight into the zip instead,
+	 * so writing starts immediately and only files read ahead of the zip use disk.
+	 */
+	private void writeArchive(List<ExportFile<?>> exportFiles, String filenameEffectiveDate, RF2Type exportType, Integer compressionLevel,
+			OutputStream outputStream) throws ExportException {
+
+		List<Future<File>> futures = new ArrayList<>();
+		for (ExportFile<?> exportFile : exportFiles) {
+			futures.add(exportExecutorService.submit(() -> exportFile.claim() ? exportComponents(exportFile, filenameEffectiveDate, exportType) : null));
+		}
+
+		int next = 0;
+		try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+			if (compressionLevel != null) {
+				zipOutputStream.setLevel(compressionLevel);
+			}
+			for (; next < exportFiles.size(); next++) {
+				ExportFile<?> exportFile = exportFiles.get(next);
+				zipOutputStream.putNextEntry(new ZipEntry(exportFile.getEntryPath(filenameEffectiveDate, exportType)));
+				if (exportFile.claim()) {
+					writeComponents(exportFile, zipOutputStream);
+				} else {
+					File componentFile = getExportedFile(futures.get(next));
+					try {
+						Files.copy(componentFile.toPath(), zipOutputStream);
+					} finally {
+						componentFile.delete();
 					}
 				}
+				zipOutputStream.closeEntry();
+			}
+		} catch (IOException | RuntimeException e) {
+			// Stop the scrolls which have not finished and remove what they have written
+			for (; next < futures.size(); next++) {
+				exportFiles.get(next).abandon();
+				futures.get(next).cancel(true);
+			}
+			if (e instanceof ExportException) {
+				throw (ExportException) e;
 			}
-			return exportFile;
-		} catch (IOException e) {
 			throw new ExportException("Failed to write RF2 zip file.", e);
 		}
 	}
 
+	private File getExportedFile(Future<File> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ExportException("Interrupted while waiting for export files.", e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof ExportException) {
+				throw (ExportException) cause;
+			}
+			throw new ExportException("Failed to write export file.", cause);
+		}
+	}
+
 	public String getFilename(ExportConfiguration exportConfiguration) {
 		return String.format("snomed-%s-%s-%s.zip",
 				exportConfiguration.getBranchPath().replace("/", "_"),
@@ -183,71 +391,406 @@ public class ExportService {
 				exportConfiguration.getType().getName());
 	}
 
-	private BoolQueryBuilder getContentQuery(RF2Type exportType, QueryBuilder branchCriteria) {
-		BoolQueryBuilder contentQuery = boolQuery().must(branchCriteria);
-		if (exportType == RF2Type.DELTA) {
-			contentQuery.mustNot(existsQuery(SnomedComponent.Fields.EFFECTIVE_TIME));
+	private BoolQueryBuilder getContentQuery(ExportConfiguration exportConfiguration, QueryBuilder branchCriteria, BoolQueryBuilder versionHistoryCriteria) {
+		BoolQueryBuilder contentQuery;
+		if (exportConfiguration.getType() == RF2Type.FULL) {
+			// Every released version in the history of the branch plus the unreleased rows of the snapshot
+			contentQuery = boolQuery().must(boolQuery()
+					.should(boolQuery()
+							.must(versionHistoryCriteria)
+							.must(existsQuery(SnomedComponent.Fields.EFFECTIVE_TIME)))
+					.should(boolQuery()
+							.must(branchCriteria)
+							.mustNot(existsQuery(SnomedComponent.Fields.EFFECTIVE_TIME))));
+		} else {
+			contentQuery = boolQuery().must(branchCriteria);
+			if (exportConfiguration.getType() == RF2Type.DELTA) {
+				contentQuery.mustNot(existsQuery(SnomedComponent.Fields.EFFECTIVE_TIME));
+			}
+		}
+
+		// Filters are applied in the query so rows which are not wanted are not fetched
+		Set<String> moduleIds = exportConfiguration.getModuleIds();
+		if (moduleIds != null && !moduleIds.isEmpty()) {
+			contentQuery.filter(termsQuery(SnomedComponent.Fields.MODULE_ID, moduleIds));
+		}
+		Integer startEffectiveTime = exportConfiguration.getStartEffectiveTime();
+		Integer endEffectiveTime = exportConfiguration.getEndEffectiveTime();
+		if (startEffectiveTime != null || endEffectiveTime != null) {
+			RangeQueryBuilder effectiveTimeRange = rangeQuery(SnomedComponent.Fields.EFFECTIVE_TIME).gte(startEffectiveTime).lte(endEffectiveTime);
+			if (endEffectiveTime == null) {
+				// A range without an end includes unreleased rows
+				contentQuery.filter(boolQuery()
+						.should(effectiveTimeRange)
+						.should(boolQuery().mustNot(existsQuery(SnomedComponent.Fields.EFFECTIVE_TIME))));
+			} else {
+				contentQuery.filter(effectiveTimeRange);
+			}
 		}
 		return contentQuery;
 	}
 
-	private <T> int exportComponents(Class<T> componentClass, String entryDirectory, String entryFilenamePrefix, String filenameEffectiveDate,
-									 RF2Type exportType, ZipOutputStream zipOutputStream, BoolQueryBuilder contentQuery, List<String> extraFieldNames) {
+	/**
+	 * Selects every version committed to the branch or one of its ancestors, including versions which have since been replaced.
+	 * Versions on an ancestor are only included if they were committed before the base of the branch below it.
+	 */
+	private BoolQueryBuilder getVersionHistoryCriteria(String branchPath) {
+		BoolQueryBuilder criteria = boolQuery();
+		Branch branch = branchService.findBranchOrThrow(branchPath);
+		String path = branchPath;
+		long timepoint = branch.getHeadTimestamp();
+		while (path != null) {
+			criteria.should(boolQuery()
+					.must(termQuery("path", path))
+					.must(rangeQuery("start").lte(timepoint)));
+			path = PathUtil.getParentPath(path);
+			if (path != null) {
+				timepoint = branch.getBaseTimestamp();
+				branch = branchService.findBranchOrThrow(path);
+			}
+		}
+		return criteria;
+	}
 
-		String componentFilePath = "SnomedCT_Export/RF2Release/" + entryDirectory + entryFilenamePrefix + String.format("%s_INT_%s.txt", exportType.getName(), filenameEffectiveDate);
+	private <T> File exportComponents(ExportFile<T> exportFile, String filenameEffectiveDate, RF2Type exportType) {
+		String componentFilePath = exportFile.getEntryPath(filenameEffectiveDate, exportType);
 		logger.info("Exporting file {}", componentFilePath);
+		File componentFile = null;
+		boolean kept = false;
 		try {
-			// Open zip entry
-			zipOutputStream.putNextEntry(new ZipEntry(componentFilePath));
-
-			// Stream components into zip
-			try (ExportWriter<T> writer = getExportWriter(componentClass, zipOutputStream, extraFieldNames);
-					CloseableIterator<T> componentStream = elasticsearchTemplate.stream(getNativeSearchQuery(contentQuery), componentClass)) {
-				writer.writeHeader();
-				componentStream.forEachRemaining(writer::write);
-				return writer.getContentLinesWritten();
-			} finally {
-				// Close zip entry
-				zipOutputStream.closeEntry();
+			componentFile = File.createTempFile("export-component-" + new Date().getTime(), ".txt");
+			try (OutputStream outputStream = new FileOutputStream(componentFile)) {
+				writeComponents(exportFile, outputStream);
+			}
+			kept = exportFile.keep(componentFile);
+			if (!kept) {
+				// The export was abandoned while this file was being written
+				throw new ExportException("Export cancelled.");
+			}
+			return componentFile;
+		} catch (IOException | RuntimeException e) {
+			throw new ExportException("Failed to write export file '" + componentFilePath + "'", e);
+		} finally {
+			// Also covers a task which was cancelled, its result is never read so nothing else would delete the file
+			if (!kept && componentFile != null) {
+				componentFile.delete();
 			}
-		} catch (IOException e) {
-			throw new ExportException("Failed to write export zip entry '" + componentFilePath + "'", e);
 		}
 	}
 
-	private <T> ExportWriter<T> getExportWriter(Class<T> componentClass, OutputStream outputStream, List<String> extraFieldNames) throws IOException {
+	private void writeComponents(ExportFile<?> exportFile, OutputStream outputStream) throws IOException {
+		try (ExportWriter writer = getExportWriter(exportFile.componentClass, outputStream, exportFile.extraFieldNames)) {
+			writer.writeHeader();
+			// The writer maps each page of hits to a chunk of RF2 rows, only the fields written are fetched
+			ElasticsearchPersistentEntity<?> persistentEntity = elasticsearchTemplate.getPersistentEntityFor(exportFile.componentClass);
+			NativeSearchQueryBuilder queryBuilder = new NativeSearchQueryBuilder()
+					.withQuery(exportFile.contentQuery)
+					.withIndices(persistentEntity.getIndexName())
+					.withTypes(persistentEntity.getIndexType())
+					.withSourceFilter(new FetchSourceFilter(writer.getSourceFields(), null))
+					.withPageable(LARGE_PAGE);
+			if (exportFile.versionHistory) {
+				// A sorted scroll gives the Full file in effective time order without holding the history in memory,
+				// the most recent copy of a version found on more than one branch comes first and the others are skipped
+				String[] sourceFields = writer.getSourceFields();
+				queryBuilder
+						.withSort(SortBuilders.fieldSort(SnomedComponent.Fields.EFFECTIVE_TIME).order(SortOrder.ASC).missing("_last"))
+						.withSort(SortBuilders.fieldSort(sourceFields[0]))
+						.withSort(SortBuilders.fieldSort("start").order(SortOrder.DESC));
+				writer.setSkipRepeatedVersions(true);
+			}
+			NativeSearchQuery query = queryBuilder.build();
+			try (CloseableIterator<byte[]> chunks = elasticsearchTemplate.stream(query, byte[].class, writer)) {
+				chunks.forEachRemaining(writer::write);
+			}
+			logger.info("{} {} exported", writer.getContentLinesWritten(), exportFile.description);
+		}
+	}
+
+	private ExportWriter getExportWriter(Class<?> componentClass, OutputStream outputStream, List<String> extraFieldNames) {
 		if (componentClass.equals(Concept.class)) {
-			return (ExportWriter<T>) new ConceptExportWriter(getBufferedWriter(outputStream));
+			return new ConceptExportWriter(outputStream);
 		}
 		if (componentClass.equals(Description.class)) {
-			return (ExportWriter<T>) new DescriptionExportWriter(getBufferedWriter(outputStream));
+			return new DescriptionExportWriter(outputStream);
 		}
 		if (componentClass.equals(Relationship.class)) {
-			return (ExportWriter<T>) new RelationshipExportWriter(getBufferedWriter(outputStream));
+			return new RelationshipExportWriter(outputStream);
 		}
 		if (componentClass.equals(ReferenceSetMember.class)) {
-			return (ExportWriter<T>) new ReferenceSetMemberExportWriter(getBufferedWriter(outputStream), extraFieldNames);
+			return new ReferenceSetMemberExportWriter(outputStream, extraFieldNames);
 		}
 		throw new UnsupportedOperationException("Not able to export component of type " + componentClass.getCanonicalName());
 	}
 
+	/**
+	 * Counts members per reference set. When there are more than MAX_REFSETS reference sets the ids are split into partitions,
+	 * the number of partitions is doubled until no partition is truncated.
+	 */
+	private Map<Long, Long> getRefsetMemberCounts(BoolQueryBuilder memberQuery) {
+		for (int numPartitions = 1; ; numPartitions *= 2) {
+			Map<Long, Long> refsetMemberCounts = new HashMap<>();
+			boolean truncated = false;
+			for (int partition = 0; partition < numPartitions && !truncated; partition++) {
+				TermsAggregationBuilder refsetsAggregation = AggregationBuilders.terms("refsets").field(ReferenceSetMember.Fields.REFSET_ID).size(MAX_REFSETS);
+				if (numPartitions > 1) {
+					refsetsAggregation.includeExclude(new IncludeExclude(partition, numPartitions));
+				}
+				AggregatedPage<ReferenceSetMember> page = (AggregatedPage<ReferenceSetMember>) elasticsearchTemplate.queryForPage(new NativeSearchQueryBuilder()
+						.withQuery(memberQuery)
+						.withPageable(PAGE_OF_ONE)
+						.addAggregation(refsetsAggregation)
+						.build(), ReferenceSetMember.class);
+				ParsedStringTerms refsets = (ParsedStringTerms) page.getAggregation("refsets");
+				// Buckets beyond the size are dropped silently, only counted in sum_other_doc_count
+				truncated = refsets.getSumOfOtherDocCounts() > 0;
+				for (Terms.Bucket bucket : refsets.getBuckets()) {
+					refsetMemberCounts.put(Long.parseLong(bucket.getKeyAsString()), bucket.getDocCount());
+				}
+			}
+			if (!truncated) {
+				return refsetMemberCounts;
+			}
+			logger.info("More than {} reference sets found in {} partitions, trying again with {} partitions.", MAX_REFSETS, numPartitions, numPartitions * 2);
+		}
+	}
+
+	private Map<Long, Set<Long>> getStatedAncestors(BranchCriteria branchCriteria, Set<Long> conceptIds) {
+		Map<Long, Set<Long>> ancestors = new HashMap<>();
+		if (conceptIds.isEmpty()) {
+			return ancestors;
+		}
+		try (CloseableIterator<QueryConcept> queryConcepts = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+						.must(termsQuery(QueryConcept.Fields.CONCEPT_ID, conceptIds))
+						.must(termQuery(QueryConcept.Fields.STATED, true)))
+				.withPageable(LARGE_PAGE)
+				.build(), QueryConcept.class)) {
+			queryConcepts.forEachRemaining(queryConcept -> ancestors.put(queryConcept.getConceptIdL(), queryConcept.getAncestors()));
+		}
+		return ancestors;
+	}
+
+	/**
+	 * Finds which of the concepts have at least one stated descendant, using one aggregation on the ancestors of the semantic index.
+	 */
+	private Set<Long> getConceptsWithStatedDescendants(BranchCriteria branchCriteria, Set<Long> conceptIds) {
+		if (conceptIds.isEmpty()) {
+			return Collections.emptySet();
+		}
+		long[] includeIds = conceptIds.stream().mapToLong(Long::longValue).toArray();
+		AggregatedPage<QueryConcept> page = (AggregatedPage<QueryConcept>) elasticsearchTemplate.queryForPage(new NativeSearchQueryBuilder()
+				.withQuery(boolQuery()
+						.must(branchCriteria.getEntityBranchCriteria(QueryConcept.class))
+						.must(termsQuery(QueryConcept.Fields.ANCESTORS, conceptIds))
+						.must(termQuery(QueryConcept.Fields.STATED, true)))
+				.withPageable(PAGE_OF_ONE)
+				.addAggregation(AggregationBuilders.terms("ancestors").field(QueryConcept.Fields.ANCESTORS)
+						.includeExclude(new IncludeExclude(includeIds, null))
+						.size(conceptIds.size()))
+				.build(), QueryConcept.class);
+		Terms ancestors = (Terms) page.getAggregation("ancestors");
+		Set<Long> conceptsWithDescendants = new HashSet<>();
+		for (Terms.Bucket bucket : ancestors.getBuckets()) {
+			conceptsWithDescendants.add(bucket.getKeyAsNumber().longValue());
+		}
+		return conceptsWithDescendants;
+	}
+
 	private List<ReferenceSetType> getReferenceSetTypes(QueryBuilder branchCriteria) {
-		BoolQueryBuilder contentQuery = getContentQuery(RF2Type.SNAPSHOT, branchCriteria);
 		return elasticsearchTemplate.queryForList(new NativeSearchQueryBuilder()
-				.withQuery(contentQuery)
+				.withQuery(branchCriteria)
 				.withSort(SortBuilders.fieldSort(ReferenceSetType.Fields.NAME))
 				.withPageable(LARGE_PAGE)
 				.build(), ReferenceSetType.class);
 	}
 
-	private NativeSearchQuery getNativeSearchQuery(BoolQueryBuilder contentQuery) {
-		return new NativeSearchQueryBuilder()
-				.withQuery(contentQuery)
-				.withPageable(LARGE_PAGE)
-				.build();
+	/**
+	 * Bounded buffer between the thread writing an archive and the reader of the stream.
+	 * Each side wakes the other as soon as data or space is available, so neither waits longer than needed.
+	 * Closing the input stream before the end makes the writer fail, which abandons the export.
+	 */
+	private static final class ArchivePipe {
+
+		private final byte[] buffer;
+		private int readPosition;
+		private int available;
+		private boolean writerClosed;
+		private boolean readerClosed;
+		private Throwable failure;
+
+		private final InputStream inputStream = new InputStream() {
+			@Override
+			public int read() throws IOException {
+				byte[] b = new byte[1];
+				return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				return ArchivePipe.this.read(b, off, len);
+			}
+
+			@Override
+			public int available() {
+				synchronized (ArchivePipe.this) {
+					return available;
+				}
+			}
+
+			@Override
+			public void close() {
+				closeReader();
+			}
+		};
+
+		// Not closed by the zip, the writing task closes the pipe with closeWriter
+		private final OutputStream outputStream = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[]{(byte) b}, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				ArchivePipe.this.write(b, off, len);
+			}
+		};
+
+		private ArchivePipe(int bufferSize) {
+			buffer = new byte[bufferSize];
+		}
+
+		private InputStream getInputStream() {
+			return inputStream;
+		}
+
+		private OutputStream getOutputStream() {
+			return outputStream;
+		}
+
+		private synchronized void write(byte[] b, int off, int len) throws IOException {
+			while (len > 0) {
+				while (available == buffer.length && !readerClosed) {
+					waitForOtherSide();
+				}
+				if (readerClosed) {
+					throw new IOException("RF2 export stream was closed by the reader.");
+				}
+				int writePosition = (readPosition + available) % buffer.length;
+				int chunk = Math.min(len, Math.min(buffer.length - available, buffer.length - writePosition));
+				System.arraycopy(b, off, buffer, writePosition, chunk);
+				available += chunk;
+				off += chunk;
+				len -= chunk;
+				notifyAll();
+			}
+		}
+
+		private synchronized int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			while (available == 0 && !writerClosed && !readerClosed) {
+				waitForOtherSide();
+			}
+			if (readerClosed) {
+				throw new IOException("Stream closed.");
+			}
+			if (available == 0) {
+				// A failed export must not look like a complete archive to the reader
+				if (failure != null) {
+					throw new IOException("RF2 export failed.", failure);
+				}
+				return -1;
+			}
+			int chunk = Math.min(len, Math.min(available, buffer.length - readPosition));
+			System.arraycopy(buffer, readPosition, b, off, chunk);
+			readPosition = (readPosition + chunk) % buffer.length;
+			available -= chunk;
+			notifyAll();
+			return chunk;
+		}
+
+		private void waitForOtherSide() throws InterruptedIOException {
+			try {
+				wait();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for the RF2 export stream.");
+			}
+		}
+
+		private synchronized void closeWriter(Throwable failure) {
+			this.failure = failure;
+			writerClosed = true;
+			notifyAll();
+		}
+
+		private synchronized void closeReader() {
+			readerClosed = true;
+			notifyAll();
+		}
 	}
 
-	private BufferedWriter getBufferedWriter(OutputStream outputStream) {
-		return new BufferedWriter(new OutputStreamWriter(outputStream));
+	private static final class ExportFile<T> {
+
+		private final Class<T> componentClass;
+		private final String entryDirectory;
+		private final String entryFilenamePrefix;
+		private final String description;
+		private final BoolQueryBuilder contentQuery;
+		private final List<String> extraFieldNames;
+		private final AtomicBoolean claimed = new AtomicBoolean();
+		// Guarded by this, the temporary file written ahead of the zip
+		private File writtenFile;
+		private boolean abandoned;
+		// Full files are written in effective time order
+		private boolean versionHistory;
+
+		private ExportFile(Class<T> componentClass, String entryDirectory, String entryFilenamePrefix, String description,
+				BoolQueryBuilder contentQuery, List<String> extraFieldNames) {
+			this.componentClass = componentClass;
+			this.entryDirectory = entryDirectory;
+			this.entryFilenamePrefix = entryFilenamePrefix;
+			this.description = description;
+			this.contentQuery = contentQuery;
+			this.extraFieldNames = extraFieldNames;
+		}
+
+		/**
+		 * @return true for the first caller only, which is then responsible for writing the file.
+		 */
+		private boolean claim() {
+			return claimed.compareAndSet(false, true);
+		}
+
+		/**
+		 * Records the temporary file written for this export file.
+		 * @return false if the export has been abandoned, the caller must then delete the file.
+		 */
+		private synchronized boolean keep(File file) {
+			if (abandoned) {
+				return false;
+			}
+			writtenFile = file;
+			return true;
+		}
+
+		/**
+		 * Deletes the temporary file if one has been written, a file written later is deleted by its writer.
+		 */
+		private synchronized void abandon() {
+			abandoned = true;
+			if (writtenFile != null) {
+				writtenFile.delete();
+				writtenFile = null;
+			}
+		}
+
+		private String getEntryPath(String filenameEffectiveDate, RF2Type exportType) {
+			return "SnomedCT_Export/RF2Release/" + entryDirectory + entryFilenamePrefix + String.format("%s_INT_%s.txt", exportType.getName(), filenameEffectiveDate);
+		}
 	}
 }
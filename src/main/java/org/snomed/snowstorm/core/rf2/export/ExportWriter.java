@@ -1,40 +1,265 @@
 package org.snomed.snowstorm.core.rf2.export;
 
-import java.io.BufferedWriter;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.search.SearchHit;
+import org.snomed.snowstorm.core.data.domain.SnomedComponent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.elasticsearch.core.SearchResultMapper;
+import org.springframework.data.elasticsearch.core.aggregation.AggregatedPage;
+import org.springframework.data.elasticsearch.core.aggregation.impl.AggregatedPageImpl;
+
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
 
-public abstract class ExportWriter<T> implements AutoCloseable {
+/**
+ * Writes RF2 rows straight from the source of search hits without mapping them to domain objects.
+ * Used as the result mapper of the export scroll, each page of hits is encoded as UTF-8 into a reusable buffer and returned as one chunk of rows.
+ * Column values are copied out of the JSON parser so no objects are created per row.
+ */
+abstract class ExportWriter implements SearchResultMapper, AutoCloseable {
 
-	private static final int FLUSH_SIZE = 1000;
 	static final String TAB = "\t";
+	private static final byte TAB_BYTE = '\t';
+	private static final byte[] NEW_LINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+	private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+	private final OutputStream outputStream;
+	private final String header;
+
+	// Source field paths in RF2 column order, nested fields are joined with a dot
+	private final String[] columns;
+	private final Map<String, Integer> columnIndexes;
+	private final boolean[] requiredColumns;
+	private final char[][] values;
+	private final int[] valueLengths;
+	private final boolean[] valuesFound;
+	private final int effectiveTimeColumn;
 
-	final BufferedWriter bufferedWriter;
-	final List<T> componentBuffer;
+	// The id and effective time of the last row written, when repeated versions are skipped
+	private boolean skipRepeatedVersions;
+	private char[] previousId = new char[32];
+	private int previousIdLength;
+	private char[] previousEffectiveTime = new char[8];
+	private int previousEffectiveTimeLength = -1;
+
+	private byte[] buffer = new byte[64 * 1024];
+	private int bufferLength;
 	private int contentLinesWritten;
 
-	ExportWriter(BufferedWriter bufferedWriter) {
-		this.bufferedWriter = bufferedWriter;
-		componentBuffer = new ArrayList<>();
+	ExportWriter(OutputStream outputStream, String header, List<String> columns, Set<String> requiredColumns) {
+		this.outputStream = outputStream;
+		this.header = header;
+		this.columns = columns.toArray(new String[0]);
+		columnIndexes = new HashMap<>();
+		this.requiredColumns = new boolean[columns.size()];
+		values = new char[columns.size()][];
+		valueLengths = new int[columns.size()];
+		valuesFound = new boolean[columns.size()];
+		for (int i = 0; i < this.columns.length; i++) {
+			columnIndexes.put(this.columns[i], i);
+			this.requiredColumns[i] = requiredColumns.contains(this.columns[i]);
+			values[i] = new char[32];
+		}
+		effectiveTimeColumn = columnIndexes.getOrDefault(SnomedComponent.Fields.EFFECTIVE_TIME, -1);
+	}
+
+	void writeHeader() throws IOException {
+		outputStream.write(header.getBytes(StandardCharsets.UTF_8));
+		outputStream.write(NEW_LINE);
+	}
+
+	/**
+	 * @return the source fields to fetch from Elasticsearch.
+	 */
+	String[] getSourceFields() {
+		return columns.clone();
 	}
 
-	abstract void writeHeader() throws IOException;
+	/**
+	 * Used when hits are sorted by effective time and id. Rows with the same id and effective time as the row before are not written,
+	 * so a version found on more than one branch of the ancestry is written once.
+	 */
+	void setSkipRepeatedVersions(boolean skipRepeatedVersions) {
+		this.skipRepeatedVersions = skipRepeatedVersions;
+	}
 
-	void write(T component) {
-		componentBuffer.add(component);
+	@Override
+	public <T> AggregatedPage<T> mapResults(SearchResponse response, Class<T> clazz, Pageable pageable) {
+		SearchHit[] hits = response.getHits().getHits();
+		List<T> chunks = new ArrayList<>();
+		if (hits.length > 0) {
+			for (SearchHit hit : hits) {
+				BytesRef source = hit.getSourceRef().toBytesRef();
+				appendRow(source.bytes, source.offset, source.length);
+			}
+			@SuppressWarnings("unchecked")
+			T chunk = (T) takeChunk();
+			chunks.add(chunk);
+		}
+		// An empty page ends the stream
+		return new AggregatedPageImpl<>(chunks);
+	}
+
+	void write(byte[] chunk) {
+		try {
+			outputStream.write(chunk);
+		} catch (IOException e) {
+			throw new ExportException("Failed to write RF2 rows.", e);
+		}
+	}
+
+	/**
+	 * Adds the RF2 row of one JSON source document to the buffer.
+	 */
+	void appendRow(byte[] source, int offset, int length) {
+		Arrays.fill(valuesFound, false);
+		try (JsonParser parser = JSON_FACTORY.createParser(source, offset, length)) {
+			parser.nextToken();
+			readFields(parser, null);
+		} catch (IOException e) {
+			throw new ExportException("Failed to read component source.", e);
+		}
+		if (skipRepeatedVersions && isRepeatedVersion()) {
+			return;
+		}
+
+		for (int i = 0; i < columns.length; i++) {
+			if (!valuesFound[i] && requiredColumns[i]) {
+				throw new IllegalStateException(String.format("Field '%s' value is null for component %s", columns[i], new String(values[0], 0, valueLengths[0])));
+			}
+			if (i > 0) {
+				ensureCapacity(1);
+				buffer[bufferLength++] = TAB_BYTE;
+			}
+			if (valuesFound[i]) {
+				appendUtf8(values[i], valueLengths[i]);
+			}
+		}
+		ensureCapacity(NEW_LINE.length);
+		System.arraycopy(NEW_LINE, 0, buffer, bufferLength, NEW_LINE.length);
+		bufferLength += NEW_LINE.length;
 		contentLinesWritten++;
-		if (componentBuffer.size() == FLUSH_SIZE) {
-			flush();
+	}
+
+	private void readFields(JsonParser parser, String objectPath) throws IOException {
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String fieldPath = objectPath == null ? parser.getCurrentName() : objectPath + "." + parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			if (token == JsonToken.START_OBJECT) {
+				readFields(parser, fieldPath);
+				continue;
+			}
+			Integer column = columnIndexes.get(fieldPath);
+			if (column == null || token == JsonToken.VALUE_NULL) {
+				parser.skipChildren();
+			} else if (token == JsonToken.VALUE_TRUE || token == JsonToken.VALUE_FALSE) {
+				// RF2 booleans are written as 1 and 0
+				setValue(column, token == JsonToken.VALUE_TRUE ? '1' : '0');
+			} else {
+				setValue(column, parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+			}
 		}
 	}
 
-	abstract void flush();
+	private boolean isRepeatedVersion() {
+		if (effectiveTimeColumn == -1 || !valuesFound[effectiveTimeColumn]) {
+			// Unreleased rows are only found on the branch itself
+			previousEffectiveTimeLength = -1;
+			return false;
+		}
+		char[] effectiveTime = values[effectiveTimeColumn];
+		int effectiveTimeLength = valueLengths[effectiveTimeColumn];
+		if (equal(effectiveTime, effectiveTimeLength, previousEffectiveTime, previousEffectiveTimeLength)
+				&& equal(values[0], valueLengths[0], previousId, previousIdLength)) {
+			return true;
+		}
+		if (previousId.length < valueLengths[0]) {
+			previousId = new char[values[0].length];
+		}
+		System.arraycopy(values[0], 0, previousId, 0, valueLengths[0]);
+		previousIdLength = valueLengths[0];
+		if (previousEffectiveTime.length < effectiveTimeLength) {
+			previousEffectiveTime = new char[effectiveTime.length];
+		}
+		System.arraycopy(effectiveTime, 0, previousEffectiveTime, 0, effectiveTimeLength);
+		previousEffectiveTimeLength = effectiveTimeLength;
+		return false;
+	}
+
+	private static boolean equal(char[] a, int aLength, char[] b, int bLength) {
+		if (aLength != bLength) {
+			return false;
+		}
+		for (int i = 0; i < aLength; i++) {
+			if (a[i] != b[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void setValue(int column, char value) {
+		values[column][0] = value;
+		valueLengths[column] = 1;
+		valuesFound[column] = true;
+	}
+
+	private void setValue(int column, char[] text, int offset, int length) {
+		if (values[column].length < length) {
+			values[column] = new char[Math.max(length, values[column].length * 2)];
+		}
+		System.arraycopy(text, offset, values[column], 0, length);
+		valueLengths[column] = length;
+		valuesFound[column] = true;
+	}
+
+	private void appendUtf8(char[] chars, int length) {
+		ensureCapacity(length * 3);
+		for (int i = 0; i < length; i++) {
+			char c = chars[i];
+			if (c < 0x80) {
+				buffer[bufferLength++] = (byte) c;
+			} else if (c < 0x800) {
+				buffer[bufferLength++] = (byte) (0xC0 | (c >> 6));
+				buffer[bufferLength++] = (byte) (0x80 | (c & 0x3F));
+			} else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars[i + 1])) {
+				int codePoint = Character.toCodePoint(c, chars[++i]);
+				buffer[bufferLength++] = (byte) (0xF0 | (codePoint >> 18));
+				buffer[bufferLength++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				buffer[bufferLength++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				buffer[bufferLength++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else {
+				buffer[bufferLength++] = (byte) (0xE0 | (c >> 12));
+				buffer[bufferLength++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+				buffer[bufferLength++] = (byte) (0x80 | (c & 0x3F));
+			}
+		}
+	}
+
+	private void ensureCapacity(int additionalBytes) {
+		if (bufferLength + additionalBytes > buffer.length) {
+			buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, bufferLength + additionalBytes));
+		}
+	}
+
+	/**
+	 * @return the rows appended since the last chunk was taken.
+	 */
+	byte[] takeChunk() {
+		byte[] chunk = Arrays.copyOf(buffer, bufferLength);
+		bufferLength = 0;
+		return chunk;
+	}
 
 	@Override
 	public void close() throws IOException {
-		flush();
-		bufferedWriter.flush();
+		outputStream.flush();
 	}
 
 	public int getContentLinesWritten() {
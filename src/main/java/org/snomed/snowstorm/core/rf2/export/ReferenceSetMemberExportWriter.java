@@ -3,56 +3,40 @@ package org.snomed.snowstorm.core.rf2.export;
 import org.elasticsearch.common.Strings;
 import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
 
-import java.io.BufferedWriter;
-import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
-class ReferenceSetMemberExportWriter extends ExportWriter<ReferenceSetMember> {
+class ReferenceSetMemberExportWriter extends ExportWriter {
 
 	static final String HEADER = "id\teffectiveTime\tactive\tmoduleId\trefsetId\treferencedComponentId";
 
-	private final List<String> extraFieldNames;
-
-	ReferenceSetMemberExportWriter(BufferedWriter bufferedWriter, List<String> extraFieldNames) {
-		super(bufferedWriter);
-		this.extraFieldNames = extraFieldNames;
+	ReferenceSetMemberExportWriter(OutputStream outputStream, List<String> extraFieldNames) {
+		super(outputStream, HEADER + Strings.collectionToDelimitedString(extraFieldNames, TAB, TAB, ""),
+				getColumns(extraFieldNames), getAdditionalFieldColumns(extraFieldNames));
 	}
 
-	@Override
-	void writeHeader() throws IOException {
-		bufferedWriter.write(HEADER + Strings.collectionToDelimitedString(extraFieldNames, TAB, TAB, ""));
-		bufferedWriter.newLine();
+	private static List<String> getColumns(List<String> extraFieldNames) {
+		List<String> columns = new ArrayList<>(Arrays.asList(
+				ReferenceSetMember.Fields.MEMBER_ID,
+				ReferenceSetMember.Fields.EFFECTIVE_TIME,
+				ReferenceSetMember.Fields.ACTIVE,
+				ReferenceSetMember.Fields.MODULE_ID,
+				ReferenceSetMember.Fields.REFSET_ID,
+				ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID));
+		columns.addAll(getAdditionalFieldColumns(extraFieldNames));
+		return columns;
 	}
 
-	@Override
-	void flush() {
-		try {
-			for (ReferenceSetMember member : componentBuffer) {
-				bufferedWriter.write(member.getMemberId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(member.getEffectiveTimeI() != null ? member.getEffectiveTimeI().toString() : "");
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(member.isActive() ? "1" : "0");
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(member.getModuleId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(member.getRefsetId());
-				bufferedWriter.write(TAB);
-				bufferedWriter.write(member.getReferencedComponentId());
-
-				for (String extraField : extraFieldNames) {
-					bufferedWriter.write(TAB);
-					String value = member.getAdditionalField(extraField);
-					if (value == null) {
-						throw new IllegalStateException(String.format("Additional field '%s' value is null for member %s", extraField, member.getMemberId()));
-					}
-					bufferedWriter.write(value);
-				}
-				bufferedWriter.newLine();
-			}
-			componentBuffer.clear();
-		} catch (IOException e) {
-			throw new ExportException("Failed to write ReferenceSetMember to RF2 file.", e);
+	// Every member of the refset must have a value for each additional field of its type
+	private static Set<String> getAdditionalFieldColumns(List<String> extraFieldNames) {
+		Set<String> columns = new HashSet<>();
+		for (String extraFieldName : extraFieldNames) {
+			columns.add(ReferenceSetMember.Fields.ADDITIONAL_FIELDS_PREFIX + extraFieldName);
 		}
+		return columns;
 	}
 }
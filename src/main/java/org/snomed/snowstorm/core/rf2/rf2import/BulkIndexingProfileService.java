@@ -0,0 +1,116 @@
+package org.snomed.snowstorm.core.rf2.rf2import;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.entity.NStringEntity;
+import org.elasticsearch.client.Response;
+import org.elasticsearch.client.RestClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.snowstorm.core.data.domain.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Switches the component indices to settings suited to bulk loading while RF2 imports run.
+ * Periodic refresh is disabled and replicas are removed, the settings found before the first import started are put back after the last import finishes.
+ * Imports still see their own writes because batches are saved using an explicit refresh.
+ */
+@Service
+public class BulkIndexingProfileService {
+
+	private static final List<Class<?>> IMPORT_ENTITY_TYPES = Arrays.asList(Concept.class, Description.class, Relationship.class, ReferenceSetMember.class, QueryConcept.class);
+	private static final String REFRESH_INTERVAL = "index.refresh_interval";
+	private static final String NUMBER_OF_REPLICAS = "index.number_of_replicas";
+
+	@Autowired
+	private ElasticsearchOperations elasticsearchTemplate;
+
+	@Autowired
+	private RestClient elasticsearchLowLevelClient;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private int activeImports;
+	private final Map<String, Map<String, String>> previousSettings = new HashMap<>();
+
+	private final Logger logger = LoggerFactory.getLogger(getClass());
+
+	public synchronized void apply() {
+		if (activeImports > 0) {
+			activeImports++;
+			return;
+		}
+		previousSettings.clear();
+		try {
+			for (String indexName : getIndexNames()) {
+				previousSettings.put(indexName, getSettings(indexName));
+				Map<String, Object> bulkSettings = new HashMap<>();
+				bulkSettings.put(REFRESH_INTERVAL, "-1");
+				bulkSettings.put(NUMBER_OF_REPLICAS, 0);
+				putSettings(indexName, bulkSettings);
+			}
+		} catch (IOException e) {
+			restoreSettings();
+			throw new IllegalStateException("Failed to apply bulk indexing profile.", e);
+		}
+		activeImports++;
+		logger.info("Bulk indexing profile applied to {}.", previousSettings.keySet());
+	}
+
+	/**
+	 * Puts back the settings saved before the first import. Failures are logged rather than thrown so the result of the import is not hidden.
+	 */
+	public synchronized void restore() {
+		if (activeImports == 0 || --activeImports > 0) {
+			return;
+		}
+		restoreSettings();
+		logger.info("Index settings restored after bulk indexing.");
+	}
+
+	private void restoreSettings() {
+		for (Map.Entry<String, Map<String, String>> entry : previousSettings.entrySet()) {
+			// A null value returns the setting to the Elasticsearch default
+			Map<String, Object> settings = new HashMap<>();
+			settings.put(REFRESH_INTERVAL, entry.getValue().get(REFRESH_INTERVAL));
+			settings.put(NUMBER_OF_REPLICAS, entry.getValue().get(NUMBER_OF_REPLICAS));
+			try {
+				putSettings(entry.getKey(), settings);
+			} catch (IOException e) {
+				logger.error("Failed to restore settings {} of index {}.", settings, entry.getKey(), e);
+			}
+		}
+		previousSettings.clear();
+	}
+
+	private Map<String, String> getSettings(String indexName) throws IOException {
+		Response response = elasticsearchLowLevelClient.performRequest("GET", "/" + indexName + "/_settings", Collections.singletonMap("flat_settings", "true"));
+		JsonNode settingsNode = objectMapper.readTree(response.getEntity().getContent()).path(indexName).path("settings");
+		Map<String, String> settings = new HashMap<>();
+		for (String setting : Arrays.asList(REFRESH_INTERVAL, NUMBER_OF_REPLICAS)) {
+			JsonNode value = settingsNode.get(setting);
+			settings.put(setting, value != null ? value.asText() : null);
+		}
+		return settings;
+	}
+
+	private void putSettings(String indexName, Map<String, Object> settings) throws IOException {
+		elasticsearchLowLevelClient.performRequest("PUT", "/" + indexName + "/_settings", Collections.emptyMap(),
+				new NStringEntity(objectMapper.writeValueAsString(settings), ContentType.APPLICATION_JSON));
+	}
+
+	private List<String> getIndexNames() {
+		List<String> indexNames = new ArrayList<>();
+		for (Class<?> type : IMPORT_ENTITY_TYPES) {
+			indexNames.add(elasticsearchTemplate.getPersistentEntityFor(type).getIndexName());
+		}
+		return indexNames;
+	}
+
+}
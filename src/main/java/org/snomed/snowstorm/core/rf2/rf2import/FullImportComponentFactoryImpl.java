@@ -1,37 +1,76 @@
 package org.snomed.snowstorm.core.rf2.rf2import;
 
+import com.google.common.util.concurrent.RateLimiter;
 import io.kaicode.elasticvc.api.BranchService;
 import org.ihtsdo.otf.snomedboot.factory.HistoryAwareComponentFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.core.data.services.CodeSystemService;
 import org.snomed.snowstorm.core.data.services.ConceptService;
 import org.snomed.snowstorm.core.data.services.ReferenceSetMemberService;
 
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
 public class FullImportComponentFactoryImpl extends ImportComponentFactoryImpl implements HistoryAwareComponentFactory {
 
+	private static final Logger logger = LoggerFactory.getLogger(FullImportComponentFactoryImpl.class);
+
 	private String basePath;
 	private final CodeSystemService codeSystemService;
 	private final String stopImportAfterEffectiveTime;
+	private final boolean versionEachRelease;
+	private final Runnable beforeVersion;
+	private final String resumeAfterReleaseDate;
+	private final Consumer<String> releaseCommittedListener;
 
+	/**
+	 * @param beforeVersion run after a release is committed and before it is versioned, may be null.
+	 * @param resumeAfterReleaseDate releases up to and including this date are read but not written because a previous run committed them.
+	 * @param releaseCommittedListener called with the release date after each release is committed and versioned, to record a checkpoint.
+	 */
 	public FullImportComponentFactoryImpl(ConceptService conceptService, ReferenceSetMemberService memberService, BranchService branchService, CodeSystemService codeSystemService,
-										  String path, String stopImportAfterEffectiveTime) {
-		super(conceptService, memberService, branchService, path, null);
+										  ExecutorService writerExecutorService, RateLimiter writeRateLimiter, ImportProgress progress, String path, String stopImportAfterEffectiveTime,
+										  boolean versionEachRelease, Runnable beforeVersion, String resumeAfterReleaseDate, Consumer<String> releaseCommittedListener) {
+		super(conceptService, memberService, branchService, writerExecutorService, writeRateLimiter, progress, path, null);
 		this.basePath = path;
 		this.stopImportAfterEffectiveTime = stopImportAfterEffectiveTime;
 		this.codeSystemService = codeSystemService;
+		this.versionEachRelease = versionEachRelease;
+		this.beforeVersion = beforeVersion;
+		this.resumeAfterReleaseDate = resumeAfterReleaseDate;
+		this.releaseCommittedListener = releaseCommittedListener;
 	}
 
 	@Override
 	public void loadingReleaseDeltaStarting(String releaseDate) {
+		// Release dates are in yyyyMMdd format so compare correctly as strings
+		skipComponents = resumeAfterReleaseDate != null && releaseDate.compareTo(resumeAfterReleaseDate) <= 0;
+		if (skipComponents) {
+			logger.info("Skipping release {} on {}, already imported.", releaseDate, basePath);
+			return;
+		}
 		setCommit(getBranchService().openCommit(basePath));
 	}
 
 	@Override
 	public void loadingReleaseDeltaFinished(String releaseDate) {
+		int effectiveDate = Integer.parseInt(releaseDate);
+		if (skipComponents) {
+			skipComponents = false;
+			return;
+		}
+
 		completeImportCommit();
 
-		// Create codesystem version if there is one on this path
-		int effectiveDate = Integer.parseInt(releaseDate);
-		codeSystemService.createVersionIfCodeSystemFoundOnPath(basePath, effectiveDate);
+		if (versionEachRelease) {
+			if (beforeVersion != null) {
+				beforeVersion.run();
+			}
+			// Create codesystem version if there is one on this path
+			codeSystemService.createVersionIfCodeSystemFoundOnPath(basePath, effectiveDate);
+		}
+		releaseCommittedListener.accept(releaseDate);
 
 		if (stopImportAfterEffectiveTime != null && stopImportAfterEffectiveTime.equals(releaseDate)) {
 			throw new RuntimeException("Stopping import here after " + stopImportAfterEffectiveTime);
@@ -1,5 +1,8 @@
 package org.snomed.snowstorm.core.rf2.rf2import;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.util.concurrent.RateLimiter;
 import io.kaicode.elasticvc.api.BranchCriteria;
 import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.api.VersionControlHelper;
@@ -11,13 +14,17 @@ import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.core.data.domain.*;
 import org.snomed.snowstorm.core.data.services.ConceptService;
 import org.snomed.snowstorm.core.data.services.ReferenceSetMemberService;
+import org.snomed.snowstorm.core.data.services.SemanticIndexUpdateService;
+import org.snomed.snowstorm.core.data.services.pojo.SemanticIndexChanges;
 import org.springframework.data.elasticsearch.core.ElasticsearchOperations;
 import org.springframework.data.elasticsearch.core.query.NativeSearchQueryBuilder;
 import org.springframework.data.util.CloseableIterator;
 
 import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import static io.kaicode.elasticvc.api.ComponentService.LARGE_PAGE;
@@ -28,80 +35,105 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 	private static Logger logger = LoggerFactory.getLogger(ImportComponentFactoryImpl.class);
 	private static final int FLUSH_INTERVAL = 5000;
 	private static final int MEMBER_ADDITIONAL_FIELD_OFFSET = 6;
-	private static final Pattern EFFECTIVE_DATE_PATTERN = Pattern.compile("\\d{8}");
+	private static final int EFFECTIVE_DATE_LENGTH = 8;
+
+	// Member fields with few distinct values, other additional fields such as targetComponentId or owlExpression are not pooled
+	private static final Set<String> LOW_CARDINALITY_MEMBER_FIELDS = new HashSet<>(Arrays.asList("acceptabilityId", "valueId", "correlationId", "mapCategoryId"));
 
 	private final BranchService branchService;
 	private final VersionControlHelper versionControlHelper;
 	private final String path;
 	private Commit commit;
 	private BranchCriteria branchCriteriaBeforeOpenCommit;
+	private final Map<Class<?>, Boolean> componentTypeEmptyBeforeCommit = new ConcurrentHashMap<>();
 
 	private PersistBuffer<Concept> conceptPersistBuffer;
 	private PersistBuffer<Description> descriptionPersistBuffer;
 	private PersistBuffer<Relationship> relationshipPersistBuffer;
 	private PersistBuffer<ReferenceSetMember> memberPersistBuffer;
-	private List<PersistBuffer> persistBuffers;
 	private List<PersistBuffer> coreComponentPersistBuffers;
 	private MaxEffectiveTimeCollector maxEffectiveTimeCollector;
 
-	boolean coreComponentsFlushed;
+	private final ExecutorService writerExecutorService;
+	private final RateLimiter writeRateLimiter;
+	private final ImportProgress progress;
+
+	private SemanticIndexUpdateService semanticIndexUpdateService;
+	private SemanticIndexChanges semanticIndexChanges;
+	private boolean deferSemanticIndex;
+
+	// Each row has its own copy of values such as moduleId or typeId, one shared instance is kept in the buffered components instead
+	private final Interner<String> valuePool = Interners.newStrongInterner();
+
+	volatile boolean coreComponentsFlushed;
 
-	ImportComponentFactoryImpl(ConceptService conceptService, ReferenceSetMemberService memberService, BranchService branchService, String path, Integer patchReleaseVersion) {
+	// Rows are read but not written while true, used to pass over releases which a previous run already committed
+	volatile boolean skipComponents;
+
+	ImportComponentFactoryImpl(ConceptService conceptService, ReferenceSetMemberService memberService, BranchService branchService,
+			ExecutorService writerExecutorService, RateLimiter writeRateLimiter, ImportProgress progress, String path, Integer patchReleaseVersion) {
 		this.branchService = branchService;
+		this.writerExecutorService = writerExecutorService;
+		this.writeRateLimiter = writeRateLimiter;
+		this.progress = progress;
 		this.path = path;
-		persistBuffers = new ArrayList<>();
 		maxEffectiveTimeCollector = new MaxEffectiveTimeCollector();
 		coreComponentPersistBuffers = new ArrayList<>();
 		ElasticsearchOperations elasticsearchTemplate = conceptService.getElasticsearchTemplate();
 		versionControlHelper = conceptService.getVersionControlHelper();
 
-		conceptPersistBuffer = new PersistBuffer<Concept>() {
+		conceptPersistBuffer = new PersistBuffer<Concept>("Concept") {
 			@Override
 			public void persistCollection(Collection<Concept> entities) {
 				processEntities(entities, patchReleaseVersion, elasticsearchTemplate, Concept.class);
 				if (!entities.isEmpty()) {
 					conceptService.doSaveBatchConcepts(entities, commit);
+					progress.rowsPersisted(componentType, entities.size());
 				}
 			}
 		};
 		coreComponentPersistBuffers.add(conceptPersistBuffer);
 
-		descriptionPersistBuffer = new PersistBuffer<Description>() {
+		descriptionPersistBuffer = new PersistBuffer<Description>("Description") {
 			@Override
 			public void persistCollection(Collection<Description> entities) {
 				processEntities(entities, patchReleaseVersion, elasticsearchTemplate, Description.class);
 				if (!entities.isEmpty()) {
 					conceptService.doSaveBatchDescriptions(entities, commit);
+					progress.rowsPersisted(componentType, entities.size());
 				}
 			}
 		};
 		coreComponentPersistBuffers.add(descriptionPersistBuffer);
 
-		relationshipPersistBuffer = new PersistBuffer<Relationship>() {
+		relationshipPersistBuffer = new PersistBuffer<Relationship>("Relationship") {
 			@Override
 			public void persistCollection(Collection<Relationship> entities) {
 				processEntities(entities, patchReleaseVersion, elasticsearchTemplate, Relationship.class);
 				if (!entities.isEmpty()) {
 					conceptService.doSaveBatchRelationships(entities, commit);
+					progress.rowsPersisted(componentType, entities.size());
 				}
 			}
 		};
 		coreComponentPersistBuffers.add(relationshipPersistBuffer);
 
-		memberPersistBuffer = new PersistBuffer<ReferenceSetMember>() {
+		memberPersistBuffer = new PersistBuffer<ReferenceSetMember>("ReferenceSetMember") {
 			@Override
-			public void persistCollection(Collection<ReferenceSetMember> entities) {
-				if (!coreComponentsFlushed) { // Avoid having to sync to check this
-					synchronized (this) {
-						if (!coreComponentsFlushed) {
-							coreComponentPersistBuffers.forEach(PersistBuffer::flush);
-							coreComponentsFlushed = true;
-						}
-					}
+			void beforeWrite() {
+				// Core components must be written before any members
+				if (!coreComponentsFlushed) {
+					coreComponentPersistBuffers.forEach(PersistBuffer::flushAndWait);
+					coreComponentsFlushed = true;
 				}
+			}
+
+			@Override
+			public void persistCollection(Collection<ReferenceSetMember> entities) {
 				processEntities(entities, patchReleaseVersion, elasticsearchTemplate, ReferenceSetMember.class);
 				if (!entities.isEmpty()) {
 					memberService.doSaveBatchMembers(entities, commit);
+					progress.rowsPersisted(componentType, entities.size());
 				}
 			}
 		};
@@ -122,12 +154,16 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 				maxEffectiveTimeCollector.add(effectiveTimeI);
 			}
 		});
+		if (effectiveDateMap.isEmpty() || isEmptyBeforeCommit(componentClass, elasticsearchTemplate)) {
+			// Nothing to compare against, for example the first load into an empty branch
+			return;
+		}
 		for (Integer effectiveTime : new TreeSet<>(effectiveDateMap.keySet())) {
 			// Find component states with an equal or greater effective time
 			boolean replacementOfThisEffectiveTimeAllowed = patchReleaseVersion != null && patchReleaseVersion.equals(effectiveTime);
 			List<T> componentsAtDate = effectiveDateMap.get(effectiveTime);
 			String idField = componentsAtDate.get(0).getIdField();
-			AtomicInteger alreadyExistingComponentCount = new AtomicInteger();
+			Set<String> alreadyExistingComponentIds = new HashSet<>();
 			try (CloseableIterator<T> componentsWithSameOrLaterEffectiveTime = elasticsearchTemplate.stream(new NativeSearchQueryBuilder()
 					.withQuery(boolQuery()
 							.must(branchCriteriaBeforeOpenCommit.getEntityBranchCriteria(componentClass))
@@ -138,28 +174,67 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 					.withFields(idField)// Only fetch the id
 					.withPageable(LARGE_PAGE)
 					.build(), componentClass)) {
-				componentsWithSameOrLaterEffectiveTime.forEachRemaining(component -> {
-					components.remove(component);// Compared by id only
-					alreadyExistingComponentCount.incrementAndGet();
-				});
+				componentsWithSameOrLaterEffectiveTime.forEachRemaining(component -> alreadyExistingComponentIds.add(component.getId()));
 			}
-			if (alreadyExistingComponentCount.get() > 0) {
+			if (!alreadyExistingComponentIds.isEmpty()) {
 				// Remove ineffective components
+				components.removeIf(component -> effectiveTime.equals(component.getEffectiveTimeI()) && alreadyExistingComponentIds.contains(component.getId()));
 				logger.warn("{} {} components in the RF2 import with effectiveTime {} will not be imported because components already exist " +
-						"with the same identifier at the same or later effectiveTime.", alreadyExistingComponentCount.get(), componentClass.getSimpleName(), effectiveTime);
+						"with the same identifier at the same or later effectiveTime.", alreadyExistingComponentIds.size(), componentClass.getSimpleName(), effectiveTime);
 			}
 		}
 	}
 
+	private boolean isEmptyBeforeCommit(Class<? extends SnomedComponent> componentClass, ElasticsearchOperations elasticsearchTemplate) {
+		return componentTypeEmptyBeforeCommit.computeIfAbsent(componentClass, type -> {
+			boolean empty = elasticsearchTemplate.count(new NativeSearchQueryBuilder()
+					.withQuery(branchCriteriaBeforeOpenCommit.getEntityBranchCriteria(componentClass))
+					.build(), componentClass) == 0;
+			if (empty) {
+				logger.info("No existing {} components on {}, effectiveTime checks will be skipped.", componentClass.getSimpleName(), path);
+			}
+			return empty;
+		});
+	}
+
+	/**
+	 * Records relationship and axiom rows as they are read and hands them to the semantic index update when the commit completes,
+	 * so the update does not have to search the commit for changes. Intended for small imports such as deltas.
+	 */
+	void collectSemanticIndexChanges(SemanticIndexUpdateService semanticIndexUpdateService, int maxRows) {
+		this.semanticIndexUpdateService = semanticIndexUpdateService;
+		semanticIndexChanges = new SemanticIndexChanges(maxRows);
+	}
+
+	/**
+	 * Stops the commits of this import from updating the semantic index, the caller must rebuild the index afterwards.
+	 */
+	void deferSemanticIndex(SemanticIndexUpdateService semanticIndexUpdateService) {
+		this.semanticIndexUpdateService = semanticIndexUpdateService;
+		deferSemanticIndex = true;
+	}
+
 	@Override
 	public void loadingComponentsStarting() {
-		commit = branchService.openCommit(path);
-		branchCriteriaBeforeOpenCommit = versionControlHelper.getBranchCriteriaBeforeOpenCommit(commit);
+		setCommit(branchService.openCommit(path));
 	}
 
 	protected void setCommit(Commit commit) {
+		// Writer threads share the commit and record the versions they replace in it through doSaveBatchComponents.
+		// The commit's map is a plain HashMap so an entry is created for each component type before any writes, as a concurrent set.
+		// Writers then only read the map and add to the sets, which is thread-safe.
+		Map<String, Set<String>> versionsReplaced = commit.getEntityVersionsReplaced();
+		for (Class<? extends SnomedComponent> componentClass : Arrays.asList(Concept.class, Description.class, Relationship.class, ReferenceSetMember.class)) {
+			Set<String> replaced = ConcurrentHashMap.newKeySet();
+			replaced.addAll(versionsReplaced.getOrDefault(componentClass.getSimpleName(), Collections.emptySet()));
+			versionsReplaced.put(componentClass.getSimpleName(), replaced);
+		}
 		this.commit = commit;
+		if (deferSemanticIndex) {
+			semanticIndexUpdateService.deferIndexing(commit);
+		}
 		branchCriteriaBeforeOpenCommit = versionControlHelper.getBranchCriteriaBeforeOpenCommit(commit);
+		componentTypeEmptyBeforeCommit.clear();
 	}
 
 	@Override
@@ -168,15 +243,26 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 	}
 
 	void completeImportCommit() {
-		persistBuffers.forEach(PersistBuffer::flush);
-		commit.markSuccessful();
-		commit.close();
+		try {
+			coreComponentPersistBuffers.forEach(PersistBuffer::flushAndWait);
+			memberPersistBuffer.flushAndWait();
+			if (semanticIndexChanges != null) {
+				semanticIndexUpdateService.setCommitChanges(commit, semanticIndexChanges);
+			}
+			commit.markSuccessful();
+		} finally {
+			// Rolled back if any batch failed to write
+			commit.close();
+		}
 	}
 
 	@Override
 	public void newConceptState(String conceptId, String effectiveTime, String active, String moduleId, String definitionStatusId) {
+		if (skipComponents) {
+			return;
+		}
 		Integer effectiveTimeI = getEffectiveTimeI(effectiveTime);
-		final Concept concept = new Concept(conceptId, effectiveTimeI, isActive(active), moduleId, definitionStatusId);
+		final Concept concept = new Concept(conceptId, effectiveTimeI, isActive(active), pooled(moduleId), pooled(definitionStatusId));
 		if (effectiveTimeI != null) {
 			concept.release(effectiveTimeI);
 		}
@@ -187,12 +273,18 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 	public void newRelationshipState(String id, String effectiveTime, String active, String moduleId, String sourceId, String destinationId,
 			String relationshipGroup, String typeId, String characteristicTypeId, String modifierId) {
 
+		if (skipComponents) {
+			return;
+		}
 		Integer effectiveTimeI = getEffectiveTimeI(effectiveTime);
-		final Relationship relationship = new Relationship(id, effectiveTimeI, isActive(active), moduleId, sourceId,
-				destinationId, Integer.parseInt(relationshipGroup), typeId, characteristicTypeId, modifierId);
+		final Relationship relationship = new Relationship(id, effectiveTimeI, isActive(active), pooled(moduleId), sourceId,
+				destinationId, Integer.parseInt(relationshipGroup), pooled(typeId), pooled(characteristicTypeId), pooled(modifierId));
 		if (effectiveTime != null) {
 			relationship.release(effectiveTimeI);
 		}
+		if (semanticIndexChanges != null) {
+			semanticIndexChanges.relationshipChanged(characteristicTypeId, typeId, sourceId, destinationId);
+		}
 		relationshipPersistBuffer.save(relationship);
 	}
 
@@ -200,8 +292,12 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 	public void newDescriptionState(String id, String effectiveTime, String active, String moduleId, String conceptId, String languageCode,
 			String typeId, String term, String caseSignificanceId) {
 
+		if (skipComponents) {
+			return;
+		}
 		Integer effectiveTimeI = getEffectiveTimeI(effectiveTime);
-		final Description description = new Description(id, effectiveTimeI, isActive(active), moduleId, conceptId, languageCode, typeId, term, caseSignificanceId);
+		final Description description = new Description(id, effectiveTimeI, isActive(active), pooled(moduleId), conceptId, pooled(languageCode), pooled(typeId), term,
+				pooled(caseSignificanceId));
 		if (effectiveTimeI != null) {
 			description.release(effectiveTimeI);
 		}
@@ -212,19 +308,51 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 	public void newReferenceSetMemberState(String[] fieldNames, String id, String effectiveTime, String active, String moduleId, String refsetId,
 			String referencedComponentId, String... otherValues) {
 
+		if (skipComponents) {
+			return;
+		}
 		Integer effectiveTimeI = getEffectiveTimeI(effectiveTime);
-		ReferenceSetMember member = new ReferenceSetMember(id, effectiveTimeI, isActive(active), moduleId, refsetId, referencedComponentId);
+		ReferenceSetMember member = new ReferenceSetMember(id, effectiveTimeI, isActive(active), pooled(moduleId), pooled(refsetId), referencedComponentId);
 		for (int i = MEMBER_ADDITIONAL_FIELD_OFFSET; i < fieldNames.length; i++) {
-			member.setAdditionalField(fieldNames[i], otherValues[i - MEMBER_ADDITIONAL_FIELD_OFFSET]);
+			String fieldName = fieldNames[i];
+			String value = otherValues[i - MEMBER_ADDITIONAL_FIELD_OFFSET];
+			member.setAdditionalField(fieldName, LOW_CARDINALITY_MEMBER_FIELDS.contains(fieldName) ? pooled(value) : value);
 		}
 		if (effectiveTime != null) {
 			member.release(effectiveTimeI);
 		}
+		if (semanticIndexChanges != null) {
+			semanticIndexChanges.memberChanged(member);
+		}
 		memberPersistBuffer.save(member);
 	}
 
 	private Integer getEffectiveTimeI(String effectiveTime) {
-		return effectiveTime != null && !effectiveTime.isEmpty() && EFFECTIVE_DATE_PATTERN.matcher(effectiveTime).matches() ? Integer.parseInt(effectiveTime) : null;
+		int effectiveTimeI = parseEffectiveTime(effectiveTime);
+		return effectiveTimeI != -1 ? effectiveTimeI : null;
+	}
+
+	/**
+	 * Parses a yyyyMMdd effective time without a regex or an exception for blank values.
+	 * @return the effective time as an int or -1 if the value is not eight digits.
+	 */
+	static int parseEffectiveTime(String effectiveTime) {
+		if (effectiveTime == null || effectiveTime.length() != EFFECTIVE_DATE_LENGTH) {
+			return -1;
+		}
+		int value = 0;
+		for (int i = 0; i < EFFECTIVE_DATE_LENGTH; i++) {
+			char c = effectiveTime.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	private String pooled(String value) {
+		return value != null ? valuePool.intern(value) : null;
 	}
 
 	Integer getMaxEffectiveTime() {
@@ -239,12 +367,20 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 		return "1".equals(active);
 	}
 
+	/**
+	 * Collects components into batches which are written by the shared writer threads.
+	 * When all writers are busy and the writer queue is full the batch is written by the calling RF2 reader thread,
+	 * this slows reading to the rate Elasticsearch can accept so memory use stays bounded.
+	 * An optional rate limit slows reading further to cap the write rate of the import.
+	 */
 	private abstract class PersistBuffer<E extends Entity> {
 
+		final String componentType;
 		private List<E> entities = new ArrayList<>();
+		private final List<Future<?>> pendingWrites = new ArrayList<>();
 
-		PersistBuffer() {
-			persistBuffers.add(this);
+		PersistBuffer(String componentType) {
+			this.componentType = componentType;
 		}
 
 		synchronized void save(E entity) {
@@ -255,8 +391,56 @@ public class ImportComponentFactoryImpl extends ImpotentComponentFactory {
 		}
 
 		synchronized void flush() {
-			persistCollection(entities);
-			entities.clear();
+			if (entities.isEmpty()) {
+				return;
+			}
+			beforeWrite();
+			List<E> batch = entities;
+			entities = new ArrayList<>();
+			progress.rowsParsed(componentType, batch.size());
+			if (writeRateLimiter != null) {
+				// Blocks the reading thread when this import is writing faster than allowed
+				writeRateLimiter.acquire(batch.size());
+			}
+			removeCompletedWrites();
+			pendingWrites.add(writerExecutorService.submit(() -> persistCollection(batch)));
+		}
+
+		void flushAndWait() {
+			List<Future<?>> writes;
+			synchronized (this) {
+				flush();
+				writes = new ArrayList<>(pendingWrites);
+				pendingWrites.clear();
+			}
+			for (Future<?> write : writes) {
+				waitForWrite(write);
+			}
+		}
+
+		private void removeCompletedWrites() {
+			for (Iterator<Future<?>> iterator = pendingWrites.iterator(); iterator.hasNext(); ) {
+				Future<?> write = iterator.next();
+				if (write.isDone()) {
+					// Fail fast rather than continue reading after a write has failed
+					waitForWrite(write);
+					iterator.remove();
+				}
+			}
+		}
+
+		private void waitForWrite(Future<?> write) {
+			try {
+				write.get();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for import batch to be written.", e);
+			} catch (ExecutionException e) {
+				throw new IllegalStateException("Failed to write import batch.", e.getCause());
+			}
+		}
+
+		void beforeWrite() {
 		}
 
 		abstract void persistCollection(Collection<E> entities);
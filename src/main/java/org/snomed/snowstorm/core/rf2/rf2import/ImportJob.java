@@ -2,6 +2,9 @@ package org.snomed.snowstorm.core.rf2.rf2import;
 
 import org.snomed.snowstorm.core.rf2.RF2Type;
 
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Set;
 
 public class ImportJob {
@@ -14,13 +17,40 @@ public class ImportJob {
 	}
 
 	public enum ImportStatus {
-		WAITING_FOR_FILE, RUNNING, COMPLETED, FAILED;
+		WAITING_FOR_FILE, QUEUED, RUNNING, COMPLETED, FAILED;
 	}
 
 	private ImportStatus status;
 
 	private String errorMessage;
 
+	private String localFilePath;
+
+	private String checkpointReleaseDate;
+	private Long checkpointBranchHeadTimestamp;
+
+	private final ImportProgress progress = new ImportProgress();
+
+	private String currentPhase;
+	private long currentPhaseStart;
+	private final Map<String, Long> phaseTimingsMillis = new LinkedHashMap<>();
+
+	/**
+	 * Records the duration of the current phase, if any, and starts timing the next.
+	 */
+	public synchronized void startPhase(String phase) {
+		endPhase();
+		currentPhase = phase;
+		currentPhaseStart = System.currentTimeMillis();
+	}
+
+	public synchronized void endPhase() {
+		if (currentPhase != null) {
+			phaseTimingsMillis.put(currentPhase, System.currentTimeMillis() - currentPhaseStart);
+			currentPhase = null;
+		}
+	}
+
 	public void setStatus(ImportStatus status) {
 		this.status = status;
 	}
@@ -29,6 +59,19 @@ public class ImportJob {
 		this.errorMessage = errorMessage;
 	}
 
+	void setLocalFilePath(String localFilePath) {
+		this.localFilePath = localFilePath;
+	}
+
+	void setCheckpoint(String releaseDate, Long branchHeadTimestamp) {
+		checkpointReleaseDate = releaseDate;
+		checkpointBranchHeadTimestamp = branchHeadTimestamp;
+	}
+
+	RF2ImportConfiguration getImportConfiguration() {
+		return importConfiguration;
+	}
+
 	public RF2Type getType() {
 		return importConfiguration.getType();
 	}
@@ -49,6 +92,14 @@ public class ImportJob {
 		return importConfiguration.isCreateCodeSystemVersion();
 	}
 
+	public boolean isBulkIndexingProfile() {
+		return importConfiguration.isBulkIndexingProfile();
+	}
+
+	public boolean isDeferSemanticIndex() {
+		return importConfiguration.isDeferSemanticIndex();
+	}
+
 	public ImportStatus getStatus() {
 		return status;
 	}
@@ -56,4 +107,31 @@ public class ImportJob {
 	public String getErrorMessage() {
 		return errorMessage;
 	}
+
+	public String getLocalFilePath() {
+		return localFilePath;
+	}
+
+	/**
+	 * The last release date committed by this Full import. A resumed import skips releases up to and including this date.
+	 */
+	public String getCheckpointReleaseDate() {
+		return checkpointReleaseDate;
+	}
+
+	public Long getCheckpointBranchHeadTimestamp() {
+		return checkpointBranchHeadTimestamp;
+	}
+
+	public synchronized String getCurrentPhase() {
+		return currentPhase;
+	}
+
+	public synchronized Map<String, Long> getPhaseTimingsMillis() {
+		return Collections.unmodifiableMap(new LinkedHashMap<>(phaseTimingsMillis));
+	}
+
+	public ImportProgress getProgress() {
+		return progress;
+	}
 }
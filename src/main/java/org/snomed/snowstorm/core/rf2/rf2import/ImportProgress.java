@@ -0,0 +1,73 @@
+package org.snomed.snowstorm.core.rf2.rf2import;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Row counts of a running import by component type.
+ * Parsed rows have been read from the RF2 files and batched for writing, persisted rows have been written to Elasticsearch.
+ * The estimated total is only known when the archive can be scanned before the import starts.
+ */
+public class ImportProgress {
+
+	private final Map<String, AtomicLong> rowsParsed = new ConcurrentHashMap<>();
+	private final Map<String, AtomicLong> rowsPersisted = new ConcurrentHashMap<>();
+	private final AtomicLong totalRowsParsed = new AtomicLong();
+	private volatile Long estimatedTotalRows;
+	private volatile long startTime;
+
+	void start() {
+		startTime = System.currentTimeMillis();
+	}
+
+	// Called once per batch rather than per row to keep contention off the parsing threads
+	void rowsParsed(String componentType, int count) {
+		rowsParsed.computeIfAbsent(componentType, type -> new AtomicLong()).addAndGet(count);
+		totalRowsParsed.addAndGet(count);
+	}
+
+	void rowsPersisted(String componentType, int count) {
+		rowsPersisted.computeIfAbsent(componentType, type -> new AtomicLong()).addAndGet(count);
+	}
+
+	void setEstimatedTotalRows(Long estimatedTotalRows) {
+		this.estimatedTotalRows = estimatedTotalRows;
+	}
+
+	public Map<String, Long> getRowsParsed() {
+		return toMap(rowsParsed);
+	}
+
+	public Map<String, Long> getRowsPersisted() {
+		return toMap(rowsPersisted);
+	}
+
+	public Long getEstimatedTotalRows() {
+		return estimatedTotalRows;
+	}
+
+	public Long getRowsParsedPerSecond() {
+		if (startTime == 0) {
+			return null;
+		}
+		long elapsedMillis = System.currentTimeMillis() - startTime;
+		return elapsedMillis > 0 ? totalRowsParsed.get() * 1_000 / elapsedMillis : null;
+	}
+
+	public Long getEstimatedSecondsRemaining() {
+		Long rate = getRowsParsedPerSecond();
+		Long total = estimatedTotalRows;
+		if (rate == null || rate == 0 || total == null) {
+			return null;
+		}
+		return Math.max(0, total - totalRowsParsed.get()) / rate;
+	}
+
+	private Map<String, Long> toMap(Map<String, AtomicLong> counts) {
+		Map<String, Long> map = new TreeMap<>();
+		counts.forEach((type, count) -> map.put(type, count.get()));
+		return map;
+	}
+}
@@ -1,25 +1,34 @@
 package org.snomed.snowstorm.core.rf2.rf2import;
 
+import com.google.common.util.concurrent.RateLimiter;
 import io.kaicode.elasticvc.api.BranchService;
 import org.ihtsdo.otf.snomedboot.ReleaseImportException;
 import org.ihtsdo.otf.snomedboot.ReleaseImporter;
-import org.ihtsdo.otf.snomedboot.factory.HistoryAwareComponentFactory;
 import org.ihtsdo.otf.snomedboot.factory.LoadingProfile;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.snomed.otf.owltoolkit.conversion.ConversionException;
 import org.snomed.snowstorm.core.data.domain.CodeSystem;
+import org.snomed.snowstorm.core.data.domain.jobs.ImportJobState;
+import org.snomed.snowstorm.core.data.repositories.jobs.ImportJobStateRepository;
 import org.snomed.snowstorm.core.data.services.CodeSystemService;
 import org.snomed.snowstorm.core.data.services.ConceptService;
 import org.snomed.snowstorm.core.data.services.NotFoundException;
 import org.snomed.snowstorm.core.data.services.ReferenceSetMemberService;
+import org.snomed.snowstorm.core.data.services.SemanticIndexUpdateService;
 import org.snomed.snowstorm.core.rf2.RF2Type;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.bind.annotation.PathVariable;
 
-import java.io.InputStream;
+import javax.annotation.PreDestroy;
+import java.io.*;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import static org.snomed.snowstorm.core.rf2.RF2Type.FULL;
 
@@ -30,6 +39,9 @@ public class ImportService {
 
 	private static final LoadingProfile DEFAULT_LOADING_PROFILE = LoadingProfile.complete.withFullRefsetMemberObjects();
 
+	// Larger deltas fall back to the semantic index update searching the commit for changes
+	private static final int DELTA_KNOWN_CHANGES_MAX_ROWS = 100_000;
+
 	@Autowired
 	private ConceptService conceptService;
 
@@ -40,15 +52,48 @@ public class ImportService {
 	private BranchService branchService;
 
 	@Autowired
-	private ExecutorService executorService;
+	private CodeSystemService codeSystemService;
 
 	@Autowired
-	private CodeSystemService codeSystemService;
+	private BulkIndexingProfileService bulkIndexingProfileService;
+
+	@Autowired
+	private SemanticIndexUpdateService semanticIndexUpdateService;
+
+	@Autowired
+	private ImportJobStateRepository importJobStateRepository;
+
+	private final ExecutorService writerExecutorService;
+
+	private final ThreadPoolExecutor importExecutorService;
+	private final AtomicLong importSequence = new AtomicLong();
+
+	@Value("${import.writer.max-rows-per-second}")
+	private int maxRowsPerSecond;
+
+	@Value("${import.local-file.directory}")
+	private String localFileDirectory;
 
 	private Logger logger = LoggerFactory.getLogger(getClass());
 
-	public ImportService() {
-		importJobMap = new HashMap<>();
+	public ImportService(
+			@Value("${import.writer.threads}") int writerThreads,
+			@Value("${import.writer.queue-size}") int writerQueueSize,
+			@Value("${import.scheduler.max-concurrent}") int maxConcurrentImports) {
+
+		importJobMap = new ConcurrentHashMap<>();
+		// Batches of each component type are written concurrently. When the queue is full the RF2 reader thread writes the batch itself.
+		writerExecutorService = new ThreadPoolExecutor(writerThreads, writerThreads, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(writerQueueSize), new ThreadPoolExecutor.CallerRunsPolicy());
+		// Imports waiting for a free slot are ordered by ScheduledImport
+		importExecutorService = new ThreadPoolExecutor(maxConcurrentImports, maxConcurrentImports, 0L, TimeUnit.MILLISECONDS,
+				new PriorityBlockingQueue<>());
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		importExecutorService.shutdownNow();
+		writerExecutorService.shutdown();
 	}
 
 	public String createJob(RF2Type importType, String branchPath, boolean createCodeSystemVersion) {
@@ -64,6 +109,16 @@ public class ImportService {
 			throw new IllegalArgumentException(String.format("Branch %s does not exist.", branchPath));
 		}
 
+		if (importConfiguration.isDeferSemanticIndex()) {
+			if (importConfiguration.getType() != FULL) {
+				throw new IllegalArgumentException(String.format("The %s option can only be used with a %s import.", "deferSemanticIndex", FULL));
+			}
+			// The semantic index rebuild is only safe on MAIN
+			if (!"MAIN".equals(branchPath)) {
+				throw new IllegalArgumentException(String.format("The %s option can only be used on %s.", "deferSemanticIndex", "MAIN"));
+			}
+		}
+
 		if (importConfiguration.isCreateCodeSystemVersion()) {
 			// Check there is a code system on this branch
 			Optional<CodeSystem> optionalCodeSystem = codeSystemService.findAll().stream().filter(codeSystem -> codeSystem.getBranchPath().equals(branchPath)).findAny();
@@ -72,15 +127,71 @@ public class ImportService {
 			}
 		}
 
-		importJobMap.put(id, new ImportJob(importConfiguration));
+		ImportJob job = new ImportJob(importConfiguration);
+		importJobMap.put(id, job);
+		saveJobState(id, job);
 		return id;
 	}
 
+	/**
+	 * Returns a failed job to the waiting state so the archive can be loaded again.
+	 * A Full import which committed some releases before failing continues after the last committed release,
+	 * provided nothing else has been committed to the branch since. Jobs importing a local file are started again straight away.
+	 */
+	public void resumeJob(String importId) {
+		ImportJob job = getImportJobOrThrow(importId);
+		if (job.getStatus() != ImportJob.ImportStatus.FAILED) {
+			throw new IllegalStateException("Only an Import Job in state " + ImportJob.ImportStatus.FAILED + " can be resumed.");
+		}
+		if (job.getCheckpointReleaseDate() != null) {
+			long headTimestamp = branchService.findBranchOrThrow(job.getBranchPath()).getHeadTimestamp();
+			if (job.getCheckpointBranchHeadTimestamp() == null || headTimestamp != job.getCheckpointBranchHeadTimestamp()) {
+				throw new IllegalStateException(String.format("Branch %s has changed since release %s was imported, the import can not be resumed.",
+						job.getBranchPath(), job.getCheckpointReleaseDate()));
+			}
+		}
+		job.setStatus(ImportJob.ImportStatus.WAITING_FOR_FILE);
+		job.setErrorMessage(null);
+		saveJobState(importId, job);
+		if (job.getLocalFilePath() != null) {
+			importArchiveFromLocalFileAsync(importId, job.getLocalFilePath());
+		}
+	}
+
+	/**
+	 * Imports the archive and waits for the import to complete.
+	 * The import is scheduled like an asynchronous import so that it waits for a free slot and MAIN imports run first.
+	 */
 	public void importArchive(String importId, InputStream releaseFileStream) throws ReleaseImportException {
-		ImportJob job = getJob(importId);
-		if (job.getStatus() != ImportJob.ImportStatus.WAITING_FOR_FILE) {
-			throw new IllegalStateException("Import Job must be in state " + ImportJob.ImportStatus.WAITING_FOR_FILE);
+		ImportJob job = getImportJobOrThrow(importId);
+		assertWaitingForFile(job);
+		FutureTask<Void> importTask = new FutureTask<>(() -> {
+			doImportArchive(importId, job, releaseFileStream);
+			return null;
+		});
+		schedule(importId, job, importTask);
+		try {
+			importTask.get();
+		} catch (InterruptedException e) {
+			importTask.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for import " + importId, e);
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof ReleaseImportException) {
+				throw (ReleaseImportException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException("Import " + importId + " failed.", cause);
 		}
+	}
+
+	private void doImportArchive(String importId, ImportJob job, InputStream releaseFileStream) throws ReleaseImportException {
 		RF2Type importType = job.getType();
 		String branchPath = job.getBranchPath();
 		Integer patchReleaseVersion = job.getPatchReleaseVersion();
@@ -88,67 +199,237 @@ public class ImportService {
 		try {
 			Date start = new Date();
 			logger.info("Starting RF2 {}{} import on branch {}. ID {}", importType, patchReleaseVersion != null ? " RELEASE PATCH on effectiveTime " + patchReleaseVersion : "", branchPath, importId);
+			if (job.getCheckpointReleaseDate() != null) {
+				logger.info("Resuming import after release {}. ID {}", job.getCheckpointReleaseDate(), importId);
+			}
 
 			ReleaseImporter releaseImporter = new ReleaseImporter();
 			job.setStatus(ImportJob.ImportStatus.RUNNING);
+			saveJobState(importId, job);
+			job.getProgress().start();
+			RateLimiter writeRateLimiter = maxRowsPerSecond > 0 ? RateLimiter.create(maxRowsPerSecond) : null;
 			LoadingProfile loadingProfile = DEFAULT_LOADING_PROFILE
 					.withModuleIds(job.getModuleIds().toArray(new String[]{}));
 
-			Integer maxEffectiveTime = null;
-			switch (importType) {
-				case DELTA: {
-					ImportComponentFactoryImpl importComponentFactory = getImportComponentFactory(branchPath, patchReleaseVersion);
-					releaseImporter.loadDeltaReleaseFiles(releaseFileStream, loadingProfile, importComponentFactory);
-					maxEffectiveTime = importComponentFactory.getMaxEffectiveTime();
-					break;
-				}
-				case SNAPSHOT: {
-					ImportComponentFactoryImpl importComponentFactory = getImportComponentFactory(branchPath, patchReleaseVersion);
-					releaseImporter.loadSnapshotReleaseFiles(releaseFileStream, loadingProfile, importComponentFactory);
-					maxEffectiveTime = importComponentFactory.getMaxEffectiveTime();
-					break;
+			boolean bulkIndexingProfileApplied = false;
+			boolean semanticIndexDeferred = false;
+			try {
+				if (job.isBulkIndexingProfile()) {
+					job.startPhase("Apply bulk indexing profile");
+					bulkIndexingProfileService.apply();
+					bulkIndexingProfileApplied = true;
 				}
-				case FULL: {
-					releaseImporter.loadFullReleaseFiles(releaseFileStream, loadingProfile, getFullImportComponentFactory(branchPath));
-					break;
+
+				job.startPhase("Import components");
+				Integer maxEffectiveTime = null;
+				switch (importType) {
+					case DELTA: {
+						ImportComponentFactoryImpl importComponentFactory = getImportComponentFactory(job, writeRateLimiter, branchPath, patchReleaseVersion);
+						importComponentFactory.collectSemanticIndexChanges(semanticIndexUpdateService, DELTA_KNOWN_CHANGES_MAX_ROWS);
+						releaseImporter.loadDeltaReleaseFiles(releaseFileStream, loadingProfile, importComponentFactory);
+						maxEffectiveTime = importComponentFactory.getMaxEffectiveTime();
+						break;
+					}
+					case SNAPSHOT: {
+						ImportComponentFactoryImpl importComponentFactory = getImportComponentFactory(job, writeRateLimiter, branchPath, patchReleaseVersion);
+						releaseImporter.loadSnapshotReleaseFiles(releaseFileStream, loadingProfile, importComponentFactory);
+						maxEffectiveTime = importComponentFactory.getMaxEffectiveTime();
+						break;
+					}
+					case FULL: {
+						FullImportComponentFactoryImpl importComponentFactory = getFullImportComponentFactory(importId, job, writeRateLimiter, branchPath);
+						if (job.isDeferSemanticIndex()) {
+							importComponentFactory.deferSemanticIndex(semanticIndexUpdateService);
+							semanticIndexDeferred = true;
+						}
+						releaseImporter.loadFullReleaseFiles(releaseFileStream, loadingProfile, importComponentFactory);
+						if (semanticIndexDeferred) {
+							if (!job.isCreateCodeSystemVersion()) {
+								// One build from the final state replaces an incremental update per release
+								job.startPhase("Build semantic index");
+								rebuildSemanticIndex(branchPath);
+							}
+							semanticIndexDeferred = false;
+						}
+						break;
+					}
 				}
-			}
 
-			if (job.isCreateCodeSystemVersion() && importType != FULL) {
-				// Create Code System version if a code system exists on this path
-				if (maxEffectiveTime != null) {
-					codeSystemService.createVersionIfCodeSystemFoundOnPath(branchPath, maxEffectiveTime);
+				if (job.isCreateCodeSystemVersion() && importType != FULL) {
+					// Create Code System version if a code system exists on this path
+					if (maxEffectiveTime != null) {
+						job.startPhase("Create code system version");
+						codeSystemService.createVersionIfCodeSystemFoundOnPath(branchPath, maxEffectiveTime);
+					}
+				}
+			} finally {
+				if (semanticIndexDeferred) {
+					logger.error("Import failed while semantic indexing was deferred, the semantic index of branch {} must be rebuilt unless the import is resumed. ID {}", branchPath, importId);
 				}
+				if (bulkIndexingProfileApplied) {
+					job.startPhase("Restore index settings");
+					bulkIndexingProfileService.restore();
+				}
+				job.endPhase();
 			}
 
 			job.setStatus(ImportJob.ImportStatus.COMPLETED);
+			saveJobState(importId, job);
 			long seconds = (new Date().getTime() - start.getTime()) / 1_000;
 			logger.info("Completed RF2 {} import on branch {} in {} seconds. ID {}", importType, branchPath, seconds, importId);
 		} catch (Exception e) {
 			logger.error("Failed RF2 {} import on branch {}. ID {}", importType, branchPath, importId, e);
 			job.setStatus(ImportJob.ImportStatus.FAILED);
+			job.setErrorMessage(e.getMessage());
+			saveJobState(importId, job);
 			throw e;
 		}
 	}
 
-	private ImportComponentFactoryImpl getImportComponentFactory(String branchPath, Integer patchReleaseVersion) {
-		return new ImportComponentFactoryImpl(conceptService, memberService, branchService, branchPath, patchReleaseVersion);
+	private ImportComponentFactoryImpl getImportComponentFactory(ImportJob job, RateLimiter writeRateLimiter, String branchPath, Integer patchReleaseVersion) {
+		return new ImportComponentFactoryImpl(conceptService, memberService, branchService, writerExecutorService, writeRateLimiter, job.getProgress(), branchPath,
+				patchReleaseVersion);
+	}
+
+	private FullImportComponentFactoryImpl getFullImportComponentFactory(String importId, ImportJob job, RateLimiter writeRateLimiter, String branchPath) {
+		// With semantic indexing deferred each version needs a complete semantic index, so it is rebuilt before each release is versioned.
+		// Deferring only saves time when versions are not requested, then the index is built once at the end.
+		boolean versionEachRelease = !job.isDeferSemanticIndex() || job.isCreateCodeSystemVersion();
+		Runnable rebuildBeforeVersion = job.isDeferSemanticIndex() && job.isCreateCodeSystemVersion() ? () -> rebuildSemanticIndex(branchPath) : null;
+		return new FullImportComponentFactoryImpl(conceptService, memberService, branchService, codeSystemService, writerExecutorService, writeRateLimiter, job.getProgress(),
+				branchPath, null, versionEachRelease, rebuildBeforeVersion, job.getCheckpointReleaseDate(),
+				releaseDate -> {
+					job.setCheckpoint(releaseDate, branchService.findLatest(branchPath).getHeadTimestamp());
+					saveJobState(importId, job);
+				});
 	}
 
-	private HistoryAwareComponentFactory getFullImportComponentFactory(String branchPath) {
-		return new FullImportComponentFactoryImpl(conceptService, memberService, branchService, codeSystemService, branchPath, null);
+	private void rebuildSemanticIndex(String branchPath) {
+		try {
+			semanticIndexUpdateService.rebuildStatedAndInferredSemanticIndex(branchPath);
+		} catch (ConversionException e) {
+			throw new IllegalStateException("Failed to convert OWL Axioms.", e);
+		}
 	}
 
 	public void importArchiveAsync(String importId, InputStream releaseFileStream) {
-		executorService.submit(() -> {
+		ImportJob job = getImportJobOrThrow(importId);
+		assertWaitingForFile(job);
+		schedule(importId, job, () -> {
+			try {
+				doImportArchive(importId, job, releaseFileStream);
+			} catch (ReleaseImportException e) {
+				// Swallow exception - already logged and this is an async method
+			}
+		});
+	}
+
+	/**
+	 * Imports an archive which is already on the server, avoiding an upload.
+	 * The archive is scanned first to estimate the number of rows so that progress can include a time remaining.
+	 */
+	public void importArchiveFromLocalFileAsync(String importId, String filePath) {
+		ImportJob job = getImportJobOrThrow(importId);
+		assertWaitingForFile(job);
+		File archiveFile = getLocalArchiveFile(filePath);
+		job.setLocalFilePath(filePath);
+		schedule(importId, job, () -> {
 			try {
-				importArchive(importId, releaseFileStream);
+				job.getProgress().setEstimatedTotalRows(estimateRowCount(archiveFile, job.getType()));
+			} catch (IOException e) {
+				logger.warn("Failed to count rows in archive {}, import will continue without an estimated time remaining.", archiveFile.getAbsolutePath(), e);
+			}
+			try (InputStream archiveStream = new BufferedInputStream(new FileInputStream(archiveFile))) {
+				doImportArchive(importId, job, archiveStream);
 			} catch (ReleaseImportException e) {
 				// Swallow exception - already logged and this is an async method
+			} catch (IOException e) {
+				logger.error("Failed to read archive {}. ID {}", archiveFile.getAbsolutePath(), importId, e);
+				job.setStatus(ImportJob.ImportStatus.FAILED);
+				job.setErrorMessage(e.getMessage());
+				saveJobState(importId, job);
 			}
 		});
 	}
 
+	private void assertWaitingForFile(ImportJob job) {
+		if (job.getStatus() != ImportJob.ImportStatus.WAITING_FOR_FILE) {
+			throw new IllegalStateException("Import Job must be in state " + ImportJob.ImportStatus.WAITING_FOR_FILE);
+		}
+	}
+
+	private void schedule(String importId, ImportJob job, Runnable importTask) {
+		job.setStatus(ImportJob.ImportStatus.QUEUED);
+		saveJobState(importId, job);
+		importExecutorService.execute(new ScheduledImport(importId, job.getBranchPath(), importSequence.incrementAndGet(), importTask));
+	}
+
+	/**
+	 * Imports waiting to start, in the order they will run.
+	 */
+	public Map<String, ImportJob> getQueuedJobs() {
+		List<ScheduledImport> queued = new ArrayList<>();
+		for (Runnable runnable : importExecutorService.getQueue().toArray(new Runnable[]{})) {
+			queued.add((ScheduledImport) runnable);
+		}
+		Collections.sort(queued);
+		Map<String, ImportJob> queuedJobs = new LinkedHashMap<>();
+		for (ScheduledImport scheduledImport : queued) {
+			queuedJobs.put(scheduledImport.importId, getJob(scheduledImport.importId));
+		}
+		return queuedJobs;
+	}
+
+	private File getLocalArchiveFile(String filePath) {
+		if (localFileDirectory == null || localFileDirectory.isEmpty()) {
+			throw new IllegalStateException("Import from a local file is disabled. Set import.local-file.directory to enable.");
+		}
+		try {
+			File directory = new File(localFileDirectory).getCanonicalFile();
+			File archiveFile = new File(directory, filePath).getCanonicalFile();
+			if (!archiveFile.getPath().startsWith(directory.getPath() + File.separator)) {
+				throw new IllegalArgumentException("File must be within the configured import directory.");
+			}
+			if (!archiveFile.isFile()) {
+				throw new IllegalArgumentException("File " + filePath + " not found in the configured import directory.");
+			}
+			return archiveFile;
+		} catch (IOException e) {
+			throw new IllegalArgumentException("Failed to resolve file path " + filePath, e);
+		}
+	}
+
+	/**
+	 * Counts the rows of the RF2 files of the given type, excluding headers.
+	 * Rows of modules or reference set types which are not imported are included so this is an upper estimate.
+	 */
+	static long estimateRowCount(File archiveFile, RF2Type importType) throws IOException {
+		long rows = 0;
+		try (ZipFile zipFile = new ZipFile(archiveFile)) {
+			Enumeration<? extends ZipEntry> entries = zipFile.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry entry = entries.nextElement();
+				String filename = entry.getName().substring(entry.getName().lastIndexOf('/') + 1);
+				if (!entry.isDirectory() && filename.endsWith(".txt") && filename.contains(importType.getName())) {
+					long lines = 0;
+					try (InputStream inputStream = zipFile.getInputStream(entry)) {
+						byte[] buffer = new byte[64 * 1024];
+						int read;
+						while ((read = inputStream.read(buffer)) != -1) {
+							for (int i = 0; i < read; i++) {
+								if (buffer[i] == '\n') {
+									lines++;
+								}
+							}
+						}
+					}
+					rows += Math.max(0, lines - 1);
+				}
+			}
+		}
+		return rows;
+	}
+
 	public ImportJob getImportJobOrThrow(@PathVariable String importId) {
 		ImportJob importJob = getJob(importId);
 		if (importJob == null) {
@@ -158,6 +439,94 @@ public class ImportService {
 	}
 
 	private ImportJob getJob(String importId) {
-		return importJobMap.get(importId);
+		ImportJob job = importJobMap.get(importId);
+		if (job == null) {
+			// Not created since this server started, look for a persisted job
+			Optional<ImportJobState> state = importJobStateRepository.findById(importId);
+			if (state.isPresent()) {
+				job = importJobMap.computeIfAbsent(importId, id -> fromState(id, state.get()));
+			}
+		}
+		return job;
+	}
+
+	private void saveJobState(String importId, ImportJob job) {
+		RF2ImportConfiguration configuration = job.getImportConfiguration();
+		ImportJobState state = new ImportJobState();
+		state.setId(importId);
+		state.setType(configuration.getType());
+		state.setBranchPath(configuration.getBranchPath());
+		state.setCreateCodeSystemVersion(configuration.isCreateCodeSystemVersion());
+		state.setModuleIds(configuration.getModuleIds());
+		state.setPatchReleaseVersion(configuration.getPatchReleaseVersion());
+		state.setBulkIndexingProfile(configuration.isBulkIndexingProfile());
+		state.setDeferSemanticIndex(configuration.isDeferSemanticIndex());
+		state.setStatus(job.getStatus());
+		state.setErrorMessage(job.getErrorMessage());
+		state.setLocalFilePath(job.getLocalFilePath());
+		state.setCheckpointReleaseDate(job.getCheckpointReleaseDate());
+		state.setCheckpointBranchHeadTimestamp(job.getCheckpointBranchHeadTimestamp());
+		state.setLastUpdated(new Date());
+		try {
+			importJobStateRepository.save(state);
+		} catch (RuntimeException e) {
+			// The import itself can continue, only the ability to resume after a restart is lost
+			logger.warn("Failed to save state of import job {}.", importId, e);
+		}
+	}
+
+	private ImportJob fromState(String importId, ImportJobState state) {
+		RF2ImportConfiguration configuration = new RF2ImportConfiguration(state.getType(), state.getBranchPath())
+				.setCreateCodeSystemVersion(state.isCreateCodeSystemVersion())
+				.setPatchReleaseVersion(state.getPatchReleaseVersion())
+				.setBulkIndexingProfile(state.isBulkIndexingProfile())
+				.setDeferSemanticIndex(state.isDeferSemanticIndex());
+		if (state.getModuleIds() != null) {
+			configuration.setModuleIds(state.getModuleIds());
+		}
+		ImportJob job = new ImportJob(configuration);
+		job.setStatus(state.getStatus());
+		job.setErrorMessage(state.getErrorMessage());
+		job.setLocalFilePath(state.getLocalFilePath());
+		job.setCheckpoint(state.getCheckpointReleaseDate(), state.getCheckpointBranchHeadTimestamp());
+		if (state.getStatus() == ImportJob.ImportStatus.QUEUED || state.getStatus() == ImportJob.ImportStatus.RUNNING) {
+			// The server stopped while this job was running
+			job.setStatus(ImportJob.ImportStatus.FAILED);
+			job.setErrorMessage("Import was interrupted by a server restart.");
+			saveJobState(importId, job);
+		}
+		return job;
+	}
+
+	/**
+	 * Orders waiting imports so that imports on branches nearer the root run first, MAIN before projects and tasks.
+	 * Imports at the same depth run in the order they were submitted.
+	 */
+	private static final class ScheduledImport implements Runnable, Comparable<ScheduledImport> {
+
+		private static final Comparator<ScheduledImport> ORDER = Comparator.<ScheduledImport>comparingInt(scheduledImport -> scheduledImport.branchDepth)
+				.thenComparingLong(scheduledImport -> scheduledImport.sequence);
+
+		private final String importId;
+		private final int branchDepth;
+		private final long sequence;
+		private final Runnable importTask;
+
+		private ScheduledImport(String importId, String branchPath, long sequence, Runnable importTask) {
+			this.importId = importId;
+			this.branchDepth = branchPath.split("/").length;
+			this.sequence = sequence;
+			this.importTask = importTask;
+		}
+
+		@Override
+		public void run() {
+			importTask.run();
+		}
+
+		@Override
+		public int compareTo(ScheduledImport other) {
+			return ORDER.compare(this, other);
+		}
 	}
 }
@@ -13,6 +13,8 @@ public final class RF2ImportConfiguration {
 	private boolean createCodeSystemVersion;
 	private Set<String> moduleIds;
 	private Integer patchReleaseVersion;
+	private boolean bulkIndexingProfile;
+	private boolean deferSemanticIndex;
 
 	public RF2ImportConfiguration() {
 	}
@@ -64,4 +66,26 @@ public final class RF2ImportConfiguration {
 		this.patchReleaseVersion = patchReleaseVersion;
 		return this;
 	}
+
+	public boolean isBulkIndexingProfile() {
+		return bulkIndexingProfile;
+	}
+
+	public RF2ImportConfiguration setBulkIndexingProfile(boolean bulkIndexingProfile) {
+		this.bulkIndexingProfile = bulkIndexingProfile;
+		return this;
+	}
+
+	public boolean isDeferSemanticIndex() {
+		return deferSemanticIndex;
+	}
+
+	/**
+	 * Full imports on MAIN only. The import commits do not update the semantic index, it is built once after the last release instead.
+	 * When code system versions are requested the index is rebuilt before each release is versioned, so versions are complete but less time is saved.
+	 */
+	public RF2ImportConfiguration setDeferSemanticIndex(boolean deferSemanticIndex) {
+		this.deferSemanticIndex = deferSemanticIndex;
+		return this;
+	}
 }
@@ -29,6 +29,7 @@ import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @Api(tags = "Branching", description = "-")
@@ -149,6 +150,19 @@ public class BranchController {
 		return branchMergeService.getBranchMergeJobOrThrow(mergeId);
 	}
 
+	@ApiOperation(value = "Cancel a branch rebase or promotion.",
+			notes = "A queued merge will not run. A running promotion is stopped and rolled back, a running rebase can not be cancelled.")
+	@RequestMapping(value = "/merges/{mergeId}/actions/cancel", method = RequestMethod.POST)
+	public BranchMergeJob cancelMerge(@PathVariable String mergeId) {
+		return branchMergeService.cancelBranchMergeJob(mergeId);
+	}
+
+	@ApiOperation("Queue and run time metrics of branch merges and merge reviews.")
+	@RequestMapping(value = "/branch-jobs/metrics", method = RequestMethod.GET)
+	public Map<String, Object> getBranchJobMetrics() {
+		return branchMergeService.getBranchJobMetrics();
+	}
+
 	@ResponseBody
 	@RequestMapping(value = "/{branch}/integrity-check", method = RequestMethod.POST)
 	@ApiOperation(value = "Perform integrity check against changed components on this branch.",
@@ -1,6 +1,7 @@
 package org.snomed.snowstorm.rest;
 
 import com.fasterxml.jackson.annotation.JsonView;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.kaicode.rest.util.branchpathrewrite.BranchPathUriUtil;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -12,6 +13,7 @@ import org.snomed.snowstorm.core.data.domain.Relationship;
 import org.snomed.snowstorm.core.data.domain.expression.Expression;
 import org.snomed.snowstorm.core.data.services.*;
 import org.snomed.snowstorm.core.data.services.pojo.AsyncConceptChangeBatch;
+import org.snomed.snowstorm.rest.converter.ConceptMiniStreamWriter;
 import org.snomed.snowstorm.rest.pojo.*;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
@@ -22,7 +24,9 @@ import org.springframework.util.Assert;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.io.IOException;
 import java.util.*;
 
 @RestController
@@ -45,6 +49,9 @@ public class ConceptController {
 	@Autowired
 	private SemanticIndexUpdateService queryConceptUpdateService;
 
+	@Autowired
+	private ObjectMapper objectMapper;
+
 	@RequestMapping(value = "/{branch}/concepts", method = RequestMethod.GET, produces = {"application/json", "text/csv"})
 	@ResponseBody
 	public ItemsPage<ConceptMini> findConcepts(
@@ -84,6 +91,40 @@ public class ConceptController {
 		return new ItemsPage<>(queryService.search(queryBuilder, BranchPathUriUtil.decodePath(branch), ControllerHelper.getPageRequest(offset, limit)));
 	}
 
+	@ApiOperation(value = "Stream all concepts matching the search as NDJSON or CSV.",
+			notes = "Results are written as they are loaded without paging so large result sets can be downloaded in one request.")
+	@RequestMapping(value = "/{branch}/concepts/stream", method = RequestMethod.GET, produces = {"application/x-ndjson", "text/csv"})
+	public void streamConcepts(
+			@PathVariable String branch,
+			@RequestParam(required = false) Boolean activeFilter,
+			@RequestParam(required = false) String term,
+			@RequestParam(required = false) String ecl,
+			@RequestParam(required = false) String statedEcl,
+			@RequestParam(required = false) Set<String> conceptIds,
+			@RequestParam(defaultValue = "NDJSON") ConceptMiniStreamWriter.Format format,
+			@RequestHeader(value = "Accept-Language", defaultValue = ControllerHelper.DEFAULT_ACCEPT_LANG_HEADER) String acceptLanguageHeader,
+			HttpServletResponse response) throws IOException {
+
+		boolean stated = false;
+		if (statedEcl != null && !statedEcl.isEmpty()) {
+			stated = true;
+			ecl = statedEcl;
+		}
+
+		QueryService.ConceptQueryBuilder queryBuilder = queryService.createQueryBuilder(stated)
+				.activeFilter(activeFilter)
+				.ecl(ecl)
+				.termPrefix(term)
+				.languageCodes(ControllerHelper.getLanguageCodes(acceptLanguageHeader))
+				.conceptIds(conceptIds);
+
+		// No content length is set so the response is sent using chunked transfer encoding
+		response.setContentType(format.getContentType() + ";charset=UTF-8");
+		try (ConceptMiniStreamWriter writer = new ConceptMiniStreamWriter(format, response.getOutputStream(), objectMapper)) {
+			queryService.streamSearch(queryBuilder, BranchPathUriUtil.decodePath(branch), writer::writeBatch);
+		}
+	}
+
 	@RequestMapping(value = "/{branch}/concepts/search", method = RequestMethod.POST, produces = {"application/json", "text/csv"})
 	@ResponseBody
 	public ItemsPage<ConceptMini> search(
@@ -1,13 +1,16 @@
 package org.snomed.snowstorm.rest;
 
 import com.fasterxml.jackson.annotation.JsonView;
+import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.rest.util.branchpathrewrite.BranchPathUriUtil;
 import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import org.snomed.snowstorm.core.data.domain.ConceptMini;
 import org.snomed.snowstorm.core.data.domain.Description;
 import org.snomed.snowstorm.core.data.services.ConceptService;
 import org.snomed.snowstorm.core.data.services.DescriptionService;
+import org.snomed.snowstorm.core.data.services.SearchResultCache;
 import org.snomed.snowstorm.rest.converter.AggregationNameConverter;
 import org.snomed.snowstorm.rest.pojo.BrowserDescriptionSearchResult;
 import org.snomed.snowstorm.rest.pojo.ItemsPage;
@@ -32,6 +35,12 @@ public class DescriptionController {
 	@Autowired
 	private DescriptionService descriptionService;
 
+	@Autowired
+	private BranchService branchService;
+
+	@Autowired
+	private SearchResultCache<Page<BrowserDescriptionSearchResult>> browserDescriptionSearchCache;
+
 	private final AggregationNameConverter languageAggregationNameConverter = new AggregationNameConverter() {
 		@Override
 		public boolean canConvert(String aggregationGroupName) {
@@ -51,22 +60,33 @@ public class DescriptionController {
 			@PathVariable String branch,
 			@RequestParam(required = false) String term,
 			@RequestParam(required = false) Boolean conceptActive,
+			@RequestParam(defaultValue = "STANDARD") @ApiParam("TYPEAHEAD uses the folded prefix index instead of wildcard queries") DescriptionService.SearchMode searchMode,
 			@RequestParam(defaultValue = "0") int offset,
 			@RequestParam(defaultValue = "50") int limit,
 			@RequestHeader(value = "Accept-Language", defaultValue = ControllerHelper.DEFAULT_ACCEPT_LANG_HEADER) String acceptLanguageHeader) {
 
-		branch = BranchPathUriUtil.decodePath(branch);
+		String branchPath = BranchPathUriUtil.decodePath(branch);
 		PageRequest pageRequest = ControllerHelper.getPageRequest(offset, limit);
-
 		List<String> languageCodes = ControllerHelper.getLanguageCodes(acceptLanguageHeader);
-		AggregatedPage<Description> page = descriptionService.findDescriptionsWithAggregations(branch, term, conceptActive, languageCodes, pageRequest);
-		Set<String> conceptIds = page.getContent().stream().map(Description::getConceptId).collect(Collectors.toSet());
-		Map<String, ConceptMini> conceptMinis = conceptService.findConceptMinis(branch, conceptIds, languageCodes).getResultsMap();
 
-		List<BrowserDescriptionSearchResult> results = new ArrayList<>();
-		page.getContent().forEach(d -> results.add(new BrowserDescriptionSearchResult(d.getTerm(), d.isActive(), conceptMinis.get(d.getConceptId()))));
+		long headTimestamp = branchService.findBranchOrThrow(branchPath).getHeadTimestamp();
+		return browserDescriptionSearchCache.get(branchPath, headTimestamp, Arrays.asList(term, conceptActive, searchMode, languageCodes, offset, limit), () -> {
+			AggregatedPage<Description> page = descriptionService.findDescriptionsWithAggregations(branchPath, term, conceptActive, languageCodes, searchMode, pageRequest);
+			Set<String> conceptIds = page.getContent().stream().map(Description::getConceptId).collect(Collectors.toSet());
+			Map<String, ConceptMini> conceptMinis = conceptService.findConceptMinis(branchPath, conceptIds, languageCodes).getResultsMap();
+
+			List<BrowserDescriptionSearchResult> results = new ArrayList<>();
+			page.getContent().forEach(d -> results.add(new BrowserDescriptionSearchResult(d.getTerm(), d.isActive(), conceptMinis.get(d.getConceptId()))));
 
-		return new PageWithFilters<>(results, pageRequest, page.getTotalElements(), page.getAggregations(), languageAggregationNameConverter);
+			return new PageWithFilters<>(results, pageRequest, page.getTotalElements(), page.getAggregations(), languageAggregationNameConverter);
+		});
+	}
+
+	@ApiOperation("Browser description search cache metrics.")
+	@RequestMapping(value = "browser/descriptions/cache-metrics", method = RequestMethod.GET)
+	@ResponseBody
+	public Map<String, Object> getBrowserDescriptionSearchCacheMetrics() {
+		return browserDescriptionSearchCache.getMetrics();
 	}
 
 	@RequestMapping(value = "{branch}/descriptions", method = RequestMethod.GET)
@@ -1,17 +1,24 @@
 package org.snomed.snowstorm.rest;
 
 import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
 import org.snomed.snowstorm.core.data.domain.jobs.ExportConfiguration;
+import org.snomed.snowstorm.core.rf2.export.ExportArchiveCache;
 import org.snomed.snowstorm.core.rf2.export.ExportService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
 
 import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import java.io.IOException;
+import java.util.Map;
 
 @RestController
 @Api(tags = "Export", description = "RF2")
@@ -33,13 +40,34 @@ public class ExportController {
 		return exportService.getExportJobOrThrow(exportId);
 	}
 
+	@ApiOperation(value = "Download the RF2 archive of an export job.",
+			notes = "Archives of code system version branches are served from the export cache when enabled, these downloads support HTTP Range requests.")
 	@RequestMapping(value = "/{exportId}/archive", method = RequestMethod.GET, produces="application/zip")
-	public void downloadRf2Archive(@PathVariable String exportId, HttpServletResponse response) throws IOException {
+	public ResponseEntity<Resource> downloadRf2Archive(@PathVariable String exportId, HttpServletResponse response) throws IOException {
 		ExportConfiguration exportConfiguration = exportService.getExportJobOrThrow(exportId);
 
 		String filename = exportService.getFilename(exportConfiguration);
-		response.setHeader("Content-Disposition", "attachment; filename=\"" + filename + "\"");
+		String contentDisposition = "attachment; filename=\"" + filename + "\"";
+		ExportArchiveCache.CachedArchive cachedArchive = exportService.getCachedRF2Archive(exportConfiguration);
+		if (cachedArchive != null) {
+			// The body is written after this method returns, the archive is released once the request has completed
+			RequestContextHolder.currentRequestAttributes().registerDestructionCallback("cachedExportArchive", cachedArchive::close, RequestAttributes.SCOPE_REQUEST);
+			// Range requests are handled by Spring for Resource bodies
+			return ResponseEntity.ok()
+					.header(HttpHeaders.CONTENT_DISPOSITION, contentDisposition)
+					.contentType(MediaType.parseMediaType("application/zip"))
+					.body(new FileSystemResource(cachedArchive.getFile()));
+		}
+
+		response.setHeader("Content-Disposition", contentDisposition);
 		exportService.exportRF2Archive(exportConfiguration, response.getOutputStream());
+		return null;
+	}
+
+	@ApiOperation("Export archive cache metrics.")
+	@RequestMapping(value = "/cache-metrics", method = RequestMethod.GET)
+	public Map<String, Object> getExportCacheMetrics() {
+		return exportService.getCacheMetrics();
 	}
 
 }
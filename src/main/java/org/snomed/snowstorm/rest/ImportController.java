@@ -1,12 +1,14 @@
 package org.snomed.snowstorm.rest;
 
 import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiOperation;
 import org.snomed.snowstorm.core.rf2.RF2Type;
 import org.snomed.snowstorm.core.rf2.rf2import.ImportJob;
 import org.snomed.snowstorm.core.rf2.rf2import.ImportService;
 import org.snomed.snowstorm.core.rf2.rf2import.RF2ImportConfiguration;
 import org.snomed.snowstorm.rest.pojo.ImportCreationRequest;
 import org.snomed.snowstorm.rest.pojo.ImportPatchCreationRequest;
+import org.snomed.snowstorm.rest.pojo.LocalFileImportRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -16,6 +18,7 @@ import org.springframework.web.multipart.MultipartFile;
 import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 
 import java.io.IOException;
+import java.util.Map;
 
 @RestController
 @Api(tags = "Import", description = "RF2")
@@ -33,6 +36,8 @@ public class ImportController {
 
 		RF2ImportConfiguration importConfiguration = new RF2ImportConfiguration(importRequest.getType(), importRequest.getBranchPath());
 		importConfiguration.setCreateCodeSystemVersion(importRequest.getCreateCodeSystemVersion());
+		importConfiguration.setBulkIndexingProfile(importRequest.getBulkIndexingProfile());
+		importConfiguration.setDeferSemanticIndex(importRequest.getDeferSemanticIndex());
 		String id = importService.createJob(importConfiguration);
 		return ControllerHelper.getCreatedResponse(id);
 	}
@@ -52,6 +57,14 @@ public class ImportController {
 		return new ResponseEntity<>(httpHeaders, HttpStatus.CREATED);
 	}
 
+	@ApiOperation(value = "List imports waiting to start.",
+			notes = "Imports are returned in the order they will start, keyed by import id. " +
+					"Imports on MAIN are started before imports on other branches, the number running at once is set by import.scheduler.max-concurrent.")
+	@RequestMapping(value = "/queue", method = RequestMethod.GET)
+	public Map<String, ImportJob> getImportQueue() {
+		return importService.getQueuedJobs();
+	}
+
 	@RequestMapping(value = "/{importId}", method = RequestMethod.GET)
 	public ImportJob getImportJob(@PathVariable String importId) {
 		return importService.getImportJobOrThrow(importId);
@@ -66,4 +79,21 @@ public class ImportController {
 		}
 	}
 
+	@ApiOperation(value = "Import an RF2 archive from the server import directory.",
+			notes = "The file path is relative to the directory configured using import.local-file.directory. " +
+					"Use this rather than uploading large archives.")
+	@RequestMapping(value = "/{importId}/archive/local-file", method = RequestMethod.POST)
+	public void importLocalRf2Archive(@PathVariable String importId, @RequestBody LocalFileImportRequest request) {
+		ControllerHelper.requiredParam(request.getFilePath(), "filePath");
+		importService.importArchiveFromLocalFileAsync(importId, request.getFilePath());
+	}
+
+	@ApiOperation(value = "Resume a failed import.",
+			notes = "A Full import continues after the last release it committed, if the branch has not changed since. " +
+					"Jobs which imported a server file start again immediately, otherwise upload the archive again after resuming.")
+	@RequestMapping(value = "/{importId}/resume", method = RequestMethod.POST)
+	public void resumeImport(@PathVariable String importId) {
+		importService.resumeJob(importId);
+	}
+
 }
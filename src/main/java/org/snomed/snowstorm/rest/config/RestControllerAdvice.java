@@ -4,6 +4,7 @@ import io.kaicode.elasticvc.api.BranchNotFoundException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.snowstorm.core.data.services.NotFoundException;
+import org.snomed.snowstorm.core.data.services.ServiceUnavailableException;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.HttpMediaTypeNotSupportedException;
 import org.springframework.web.HttpRequestMethodNotSupportedException;
@@ -50,6 +51,17 @@ public class RestControllerAdvice {
 		return result;
 	}
 
+	@ExceptionHandler(ServiceUnavailableException.class)
+	@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+	@ResponseBody
+	public Map<String,Object> handleServiceUnavailableException(Exception exception) {
+		HashMap<String, Object> result = new HashMap<>();
+		result.put("error", HttpStatus.SERVICE_UNAVAILABLE);
+		result.put("message", exception.getMessage());
+		logger.info("service unavailable {}", exception.getMessage());
+		return result;
+	}
+
 	@ExceptionHandler(Exception.class)
 	@ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
 	@ResponseBody
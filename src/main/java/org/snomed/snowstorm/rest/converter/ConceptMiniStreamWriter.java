@@ -0,0 +1,101 @@
+package org.snomed.snowstorm.rest.converter;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.snomed.snowstorm.core.data.domain.ConceptMini;
+import org.snomed.snowstorm.rest.View;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Writes concepts to an output stream as they are found rather than as one page.
+ * NDJSON writes one JSON object per line, CSV uses the same tab separated layout as ItemsPageCSVConverter with the addition of the preferred term.
+ * The stream is flushed after each batch so the client receives results while the search continues.
+ */
+public class ConceptMiniStreamWriter implements Closeable {
+
+	public enum Format {
+
+		NDJSON("application/x-ndjson"), CSV("text/csv");
+
+		private final String contentType;
+
+		Format(String contentType) {
+			this.contentType = contentType;
+		}
+
+		public String getContentType() {
+			return contentType;
+		}
+	}
+
+	private static final String TAB = "\t";
+
+	private final Format format;
+	private final BufferedWriter writer;
+	private final ObjectWriter jsonWriter;
+	private long count;
+
+	public ConceptMiniStreamWriter(Format format, OutputStream outputStream, ObjectMapper objectMapper) throws IOException {
+		this.format = format;
+		writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+		// The JSON writer must not close the underlying stream after each concept
+		jsonWriter = objectMapper.writerWithView(View.Component.class)
+				.without(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		if (format == Format.CSV) {
+			writer.write("id\tfsn\tpt\teffectiveTime\tactive\tmoduleId\tdefinitionStatus");
+			writer.newLine();
+		}
+	}
+
+	public void writeBatch(List<ConceptMini> concepts) {
+		try {
+			for (ConceptMini concept : concepts) {
+				if (format == Format.NDJSON) {
+					jsonWriter.writeValue(writer, concept);
+				} else {
+					writeCsvRow(concept);
+				}
+				writer.newLine();
+				count++;
+			}
+			writer.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException("Failed to write concepts to response.", e);
+		}
+	}
+
+	private void writeCsvRow(ConceptMini concept) throws IOException {
+		writeValue(concept.getConceptId());
+		writer.write(TAB);
+		writeValue(concept.getFsn());
+		writer.write(TAB);
+		writeValue(concept.getPt());
+		writer.write(TAB);
+		writeValue(concept.getEffectiveTime());
+		writer.write(TAB);
+		writeValue(concept.getActive() != null ? concept.getActive().toString() : null);
+		writer.write(TAB);
+		writeValue(concept.getModuleId());
+		writer.write(TAB);
+		writeValue(concept.getDefinitionStatus());
+	}
+
+	private void writeValue(String value) throws IOException {
+		if (value != null) {
+			writer.write(value);
+		}
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	@Override
+	public void close() throws IOException {
+		writer.close();
+	}
+}
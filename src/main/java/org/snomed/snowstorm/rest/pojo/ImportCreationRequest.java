@@ -9,6 +9,10 @@ public class ImportCreationRequest {
 
 	private boolean createCodeSystemVersion;
 
+	private boolean bulkIndexingProfile;
+
+	private boolean deferSemanticIndex;
+
 	public RF2Type getType() {
 		return type;
 	}
@@ -32,4 +36,20 @@ public class ImportCreationRequest {
 	public void setCreateCodeSystemVersion(boolean createCodeSystemVersion) {
 		this.createCodeSystemVersion = createCodeSystemVersion;
 	}
+
+	public boolean getBulkIndexingProfile() {
+		return bulkIndexingProfile;
+	}
+
+	public void setBulkIndexingProfile(boolean bulkIndexingProfile) {
+		this.bulkIndexingProfile = bulkIndexingProfile;
+	}
+
+	public boolean getDeferSemanticIndex() {
+		return deferSemanticIndex;
+	}
+
+	public void setDeferSemanticIndex(boolean deferSemanticIndex) {
+		this.deferSemanticIndex = deferSemanticIndex;
+	}
 }
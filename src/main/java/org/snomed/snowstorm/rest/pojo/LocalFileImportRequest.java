@@ -0,0 +1,14 @@
+package org.snomed.snowstorm.rest.pojo;
+
+public class LocalFileImportRequest {
+
+	private String filePath;
+
+	public String getFilePath() {
+		return filePath;
+	}
+
+	public void setFilePath(String filePath) {
+		this.filePath = filePath;
+	}
+}
@@ -0,0 +1,106 @@
+package org.snomed.snowstorm.core.data.services;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class BranchJobExecutorTest {
+
+	private BranchJobExecutor executor;
+	private CountDownLatch release;
+
+	@Before
+	public void setup() {
+		executor = new BranchJobExecutor(1, 1, 2);
+		release = new CountDownLatch(1);
+	}
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		executor.shutdown();
+	}
+
+	@Test
+	public void testJobsQueuedThenRefused() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		executor.submit("merge", () -> {
+			started.countDown();
+			awaitRelease();
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		AtomicBoolean queuedJobRan = new AtomicBoolean();
+		Future<?> queued = executor.submit("merge", () -> queuedJobRan.set(true));
+
+		try {
+			executor.submit("merge-review", () -> {});
+			fail("Expected ServiceUnavailableException");
+		} catch (ServiceUnavailableException e) {
+			assertEquals("Too many branch merges and reviews are waiting to run, please try again later.", e.getMessage());
+		}
+
+		// Cancelling the queued job makes room for another
+		assertTrue(executor.cancel("merge", queued));
+		Future<?> review = executor.submit("merge-review", () -> {});
+		release.countDown();
+		review.get(5, TimeUnit.SECONDS);
+		assertFalse(queuedJobRan.get());
+
+		Map<String, Object> metrics = executor.getMetrics();
+		assertEquals(0, metrics.get("queuedJobs"));
+		@SuppressWarnings("unchecked")
+		Map<String, Map<String, Object>> jobTypes = (Map<String, Map<String, Object>>) metrics.get("jobTypes");
+		assertEquals(2L, jobTypes.get("merge").get("submitted"));
+		assertEquals(1L, jobTypes.get("merge").get("cancelled"));
+		assertEquals(1L, jobTypes.get("merge").get("ran"));
+		assertEquals(1L, jobTypes.get("merge-review").get("rejected"));
+		assertEquals(1L, jobTypes.get("merge-review").get("ran"));
+		assertTrue((Long) jobTypes.get("merge-review").get("maxQueueMillis") >= 0);
+	}
+
+	@Test
+	public void testRunConcurrentlyWaitsForAllTasks() {
+		AtomicInteger finished = new AtomicInteger();
+		try {
+			executor.runConcurrently(Arrays.asList(
+					() -> {
+						throw new IllegalStateException("Branch merge cancelled.");
+					},
+					() -> {
+						sleep();
+						finished.incrementAndGet();
+					}));
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException | ServiceException e) {
+			assertEquals("Branch merge cancelled.", e.getMessage());
+		}
+		assertEquals(1, finished.get());
+	}
+
+	private void awaitRelease() {
+		try {
+			release.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void sleep() {
+		try {
+			Thread.sleep(200);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -471,6 +471,21 @@ public class BranchMergeServiceTest extends AbstractTest {
 		assertEquals("Branch MAIN is already locked", failedJobs.get(0).getMessage());
 	}
 
+	@Test
+	public void testPromotionProgressReported() throws Exception {
+		conceptService.create(new Concept("10000100").addDescription(new Description("100001")), "MAIN/A");
+
+		BranchMergeJob mergeJob = branchMergeService.mergeBranchAsync(new MergeRequest("MAIN/A", "MAIN", "Promote A", null));
+		for (int i = 0; i < 20 && mergeJob.getStatus() != JobStatus.COMPLETED && mergeJob.getStatus() != JobStatus.FAILED; i++) {
+			Thread.sleep(500);
+		}
+
+		assertEquals(JobStatus.COMPLETED, mergeJob.getStatus());
+		assertEquals(2, mergeJob.getComponentsToPromote());
+		assertEquals(2, mergeJob.getComponentsPromoted());
+		assertNotNull(conceptService.find("10000100", "MAIN"));
+	}
+
 	/**
 	 * Set up a content conflict situation.
 	 * Three versions of the same concept should be given.
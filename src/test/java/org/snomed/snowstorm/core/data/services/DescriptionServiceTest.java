@@ -4,6 +4,8 @@ import com.google.common.collect.Lists;
 import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.domain.Branch;
 import io.kaicode.elasticvc.domain.Commit;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import org.elasticsearch.common.util.set.Sets;
 import org.elasticsearch.search.aggregations.Aggregation;
 import org.elasticsearch.search.aggregations.Aggregations;
@@ -16,6 +18,7 @@ import org.junit.runner.RunWith;
 import org.snomed.snowstorm.AbstractTest;
 import org.snomed.snowstorm.TestConfig;
 import org.snomed.snowstorm.core.data.domain.*;
+import org.snomed.snowstorm.core.data.services.pojo.ConceptFacetIndex;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.elasticsearch.core.aggregation.AggregatedPage;
@@ -29,7 +32,7 @@ import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import static java.lang.Long.parseLong;
-import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.*;
 import static org.snomed.snowstorm.core.data.domain.Concepts.ISA;
 import static org.snomed.snowstorm.core.data.domain.Concepts.SNOMEDCT_ROOT;
 
@@ -49,6 +52,9 @@ public class DescriptionServiceTest extends AbstractTest {
 	@Autowired
 	private ReferenceSetMemberService referenceSetMemberService;
 
+	@Autowired
+	private ConceptFacetIndexService conceptFacetIndexService;
+
 	private ServiceTestUtil testUtil;
 
 	@Before
@@ -80,12 +86,114 @@ public class DescriptionServiceTest extends AbstractTest {
 		assertEquals(Lists.newArrayList("Foot cramps"), actualTerms);
 	}
 
+	@Test
+	public void testDescriptionSearchTypeaheadMode() throws ServiceException {
+		testUtil.createConceptWithPathIdAndTerms("MAIN", "100001", "Heart");
+		testUtil.createConceptWithPathIdAndTerms("MAIN", "100006", "Foot cramps");
+		testUtil.createConceptWithPathIdAndTerms("MAIN", "100007", "Foot cramp");
+		testUtil.createConceptWithPathIdAndTerms("MAIN", "100004", "Foot");
+		testUtil.createConceptWithPathIdAndTerms("MAIN", "100005", "Footwear");
+		testUtil.createConceptWithPathIdAndTerms("MAIN", "100008", "Ménière's disease");
+
+		List<String> actualTerms = typeaheadSearch("Foo cr");
+		assertEquals(Lists.newArrayList("Foot cramp", "Foot cramps"), actualTerms);
+
+		actualTerms = typeaheadSearch("foo");
+		assertEquals(Lists.newArrayList("Foot", "Footwear", "Foot cramp", "Foot cramps"), actualTerms);
+
+		actualTerms = typeaheadSearch("meniere");
+		assertEquals(Lists.newArrayList("Ménière's disease"), actualTerms);
+
+		actualTerms = typeaheadSearch("Méni");
+		assertEquals(Lists.newArrayList("Ménière's disease"), actualTerms);
+	}
+
+	@Test
+	public void testDescriptionSearchTypeaheadModeLongPrefixAndNoLanguage() throws ServiceException {
+		testUtil.createConceptWithPathIdAndTerms("MAIN", "100001", "Pseudohypoparathyroidism type 1a");
+		testUtil.createConceptWithPathIdAndTerms("MAIN", "100004", "Pseudohypoaldosteronism");
+
+		// Words longer than the largest indexed n-gram still match
+		assertEquals(Lists.newArrayList("Pseudohypoparathyroidism type 1a"), typeaheadSearch("pseudohypoparathyroidis"));
+		assertEquals(Lists.newArrayList("Pseudohypoparathyroidism type 1a"), typeaheadSearch("pseudohypoparathyroidism"));
+
+		// No language codes means no language filter
+		List<String> actualTerms = descriptionService.findDescriptionsWithAggregations("MAIN", "pseudohypo", null, Collections.emptyList(),
+				DescriptionService.SearchMode.TYPEAHEAD, ServiceTestUtil.PAGE_REQUEST)
+				.getContent().stream().map(Description::getTerm).sorted().collect(Collectors.toList());
+		assertEquals(Lists.newArrayList("Pseudohypoaldosteronism", "Pseudohypoparathyroidism type 1a"), actualTerms);
+	}
+
+	@Test
+	public void testFoldTerm() {
+		assertEquals("meniere's disease", DescriptionHelper.foldTerm("Ménière's disease", null));
+		assertEquals("hjärtattack", DescriptionHelper.foldTerm("Hjärtattack", Sets.newHashSet('å', 'ä', 'ö')));
+		assertEquals("hjartattack", DescriptionHelper.foldTerm("Hjärtattack", null));
+	}
+
+	@Test
+	public void testDescriptionSearchConceptActiveFilter() throws ServiceException {
+		testUtil.createConceptWithPathIdAndTerms("MAIN", "100001", "Foot");
+		testUtil.createConceptWithPathIdAndTerms("MAIN", "100002", "Foot bone");
+
+		assertEquals(Lists.newArrayList("Foot", "Foot bone"), conceptActiveSearch("MAIN", "foo", true));
+		assertEquals(Lists.newArrayList(), conceptActiveSearch("MAIN", "foo", false));
+
+		branchService.create("MAIN/A");
+		Concept concept = conceptService.find("100002", "MAIN/A");
+		concept.setActive(false);
+		conceptService.update(concept, "MAIN/A");
+
+		assertEquals(Lists.newArrayList("Foot"), conceptActiveSearch("MAIN/A", "foo", true));
+		assertEquals(Lists.newArrayList("Foot bone"), conceptActiveSearch("MAIN/A", "foo", false));
+		assertEquals(Lists.newArrayList("Foot", "Foot bone"), conceptActiveSearch("MAIN/A", "foo", null));
+
+		// Not yet visible on parent
+		assertEquals(Lists.newArrayList("Foot", "Foot bone"), conceptActiveSearch("MAIN", "foo", true));
+	}
+
+	@Test
+	public void testConceptActiveOnlyWrittenWhenChanged() throws ServiceException {
+		testUtil.createConceptWithPathIdAndTerms("MAIN", "100001", "Foot", "Foot structure");
+		branchService.create("MAIN/A");
+
+		Concept concept = conceptService.find("100001", "MAIN/A");
+		Description foot = concept.getDescriptions().stream().filter(d -> d.getTerm().equals("Foot")).findFirst().orElse(null);
+		String footStructureId = concept.getDescriptions().stream().filter(d -> d.getTerm().equals("Foot structure")).findFirst().orElse(new Description()).getDescriptionId();
+		foot.setTerm("Feet");
+		conceptService.update(concept, "MAIN/A");
+
+		// The other description is still inherited from MAIN
+		assertEquals("MAIN", descriptionService.findDescription("MAIN/A", footStructureId).getPath());
+
+		// Inactivating the concept gives every description the new status on the branch
+		concept = conceptService.find("100001", "MAIN/A");
+		concept.setActive(false);
+		conceptService.update(concept, "MAIN/A");
+		Description footStructure = descriptionService.findDescription("MAIN/A", footStructureId);
+		assertEquals("MAIN/A", footStructure.getPath());
+		assertFalse(footStructure.isConceptActive());
+		assertTrue(descriptionService.findDescription("MAIN", footStructureId).isConceptActive());
+	}
+
+	private List<String> conceptActiveSearch(String path, String term, Boolean conceptActive) {
+		return descriptionService.findDescriptionsWithAggregations(path, term, conceptActive, Collections.singleton("en"), ServiceTestUtil.PAGE_REQUEST)
+				.getContent().stream().map(Description::getTerm).collect(Collectors.toList());
+	}
+
+	private List<String> typeaheadSearch(String term) {
+		return descriptionService.findDescriptionsWithAggregations("MAIN", term, null, Collections.singleton("en"), DescriptionService.SearchMode.TYPEAHEAD, ServiceTestUtil.PAGE_REQUEST)
+				.getContent().stream().map(Description::getTerm).collect(Collectors.toList());
+	}
+
 	@Test
 	public void testDescriptionSearchAggregations() throws ServiceException {
 		String path = "MAIN";
 		Concept root = new Concept(SNOMEDCT_ROOT);
 		Concept pizza_2 = new Concept("100002").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)).addFSN("Food (food)");
-		Concept cheesePizza_3 = new Concept("100003").addRelationship(new Relationship(ISA, pizza_2.getId())).addFSN("Cheese Pizza (pizza)");
+		// Two matching descriptions, the concept is only counted once in the semantic tag and membership facets
+		Concept cheesePizza_3 = new Concept("100003").addRelationship(new Relationship(ISA, pizza_2.getId())).addFSN("Cheese Pizza (pizza)")
+				.addDescription(new Description("Cheese pizza"));
 		Concept reallyCheesyPizza_4 = new Concept("100004").addRelationship(new Relationship(ISA, cheesePizza_3.getId())).addFSN("Really Cheesy Pizza (pizza)");
 		Concept reallyCheesyPizza_5 = new Concept("100005").addRelationship(new Relationship(ISA, reallyCheesyPizza_4.getId())).addFSN("So Cheesy Pizza (pizza)");
 		List<Concept> concepts = Lists.newArrayList(root, pizza_2, cheesePizza_3, reallyCheesyPizza_4, reallyCheesyPizza_5);
@@ -105,10 +213,23 @@ public class DescriptionServiceTest extends AbstractTest {
 		assertEquals("{}", getAggregationString("membership", foodAggs));
 
 		Aggregations pizzaAggs = descriptionService.findDescriptionsWithAggregations(path, "pizza", PageRequest.of(0, 10)).getAggregations();
-		assertEquals("{900000000000207008=3}", getAggregationString("module", pizzaAggs));
-		assertEquals("{en=3}", getAggregationString("language", pizzaAggs));
+		assertEquals("{900000000000207008=4}", getAggregationString("module", pizzaAggs));
+		assertEquals("{en=4}", getAggregationString("language", pizzaAggs));
 		assertEquals("{pizza=3}", getAggregationString("semanticTags", pizzaAggs));
 		assertEquals("{723592007=1, 723589008=2}", getAggregationString("membership", pizzaAggs));
+
+		// The facet index, used for descriptions stored before the concept fields existed, also counts concepts
+		ConceptFacetIndex facetIndex = conceptFacetIndexService.buildFacetIndex(path);
+		LongSet pizzaConceptIds = new LongOpenHashSet(new long[] {100003, 100004, 100005});
+		assertEquals("{pizza=3}", facetIndex.countSemanticTags(pizzaConceptIds).toString());
+		assertEquals("{723592007=1, 723589008=2}", facetIndex.countRefsetMemberships(pizzaConceptIds).toString());
+
+		// A member added later is picked up by the descriptions of the concept
+		referenceSetMemberService.createMembers(path, Sets.newHashSet(
+				new ReferenceSetMember(Concepts.CORE_MODULE, Concepts.REFSET_MRCM_ATTRIBUTE_RANGE, "100002")
+		));
+		foodAggs = descriptionService.findDescriptionsWithAggregations(path, "food", PageRequest.of(0, 10)).getAggregations();
+		assertEquals("{723592007=1}", getAggregationString("membership", foodAggs));
 	}
 
 	@Test
@@ -15,6 +15,7 @@ import org.springframework.data.domain.PageRequest;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import static java.lang.Long.parseLong;
@@ -78,4 +79,27 @@ public class QueryServiceTest extends AbstractTest {
 		assertEquals("Really Cheesy Pizza", matches.get(1).getFsn());
 	}
 
+	@Test
+	public void testStreamSearchMatchesPagedSearch() throws ServiceException {
+		String path = "MAIN";
+		Concept root = new Concept(SNOMEDCT_ROOT);
+		Concept pizza_2 = new Concept("100002").addRelationship(new Relationship(ISA, SNOMEDCT_ROOT)).addFSN("Pizza");
+		Concept cheesePizza_3 = new Concept("100003").addRelationship(new Relationship(ISA, pizza_2.getId())).addFSN("Cheese Pizza");
+		Concept reallyCheesyPizza_4 = new Concept("100004").addRelationship(new Relationship(ISA, cheesePizza_3.getId())).addFSN("Really Cheesy Pizza");
+		conceptService.create(Lists.newArrayList(root, pizza_2, cheesePizza_3, reallyCheesyPizza_4), path);
+
+		assertEquals(Lists.newArrayList("Pizza", "Cheese Pizza", "Really Cheesy Pizza"),
+				streamSearchFsns(service.createQueryBuilder(true).termPrefix("Piz"), path));
+		assertEquals(Lists.newArrayList("Cheese Pizza", "Really Cheesy Pizza"),
+				streamSearchFsns(service.createQueryBuilder(true).ecl("<" + pizza_2.getConceptId()).termPrefix("Piz"), path));
+		assertEquals(3, streamSearchFsns(service.createQueryBuilder(true).ecl("<" + SNOMEDCT_ROOT), path).size());
+		assertEquals(4, streamSearchFsns(service.createQueryBuilder(true), path).size());
+	}
+
+	private List<String> streamSearchFsns(QueryService.ConceptQueryBuilder queryBuilder, String path) {
+		List<String> fsns = new ArrayList<>();
+		service.streamSearch(queryBuilder, path, batch -> batch.forEach(conceptMini -> fsns.add(conceptMini.getFsn())));
+		return fsns;
+	}
+
 }
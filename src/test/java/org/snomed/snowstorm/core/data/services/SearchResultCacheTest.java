@@ -0,0 +1,62 @@
+package org.snomed.snowstorm.core.data.services;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class SearchResultCacheTest {
+
+	private static final List<Object> QUERY = Arrays.asList("heart", null, 0, 50);
+
+	@Test
+	public void testResultReusedForSameBranchHead() {
+		SearchResultCache<String> cache = new SearchResultCache<>("Test", true, 10, false);
+		AtomicInteger loads = new AtomicInteger();
+
+		assertEquals("result-1", cache.get("MAIN", 100, QUERY, () -> "result-" + loads.incrementAndGet()));
+		assertEquals("result-1", cache.get("MAIN", 100, QUERY, () -> "result-" + loads.incrementAndGet()));
+		assertEquals(1, loads.get());
+
+		// Different paging is a different result
+		assertEquals("result-2", cache.get("MAIN", 100, Arrays.asList("heart", null, 50, 50), () -> "result-" + loads.incrementAndGet()));
+
+		// Branch head changed
+		assertEquals("result-3", cache.get("MAIN", 200, QUERY, () -> "result-" + loads.incrementAndGet()));
+		assertEquals("result-3", cache.get("MAIN", 200, QUERY, () -> "result-" + loads.incrementAndGet()));
+
+		assertEquals(2L, cache.getMetrics().get("hits"));
+		assertEquals(3L, cache.getMetrics().get("misses"));
+	}
+
+	@Test
+	public void testStaleResultReturnedWhileRevalidating() {
+		// Revalidation runs on the calling thread, after the stale result has been taken
+		SearchResultCache<String> cache = new SearchResultCache<>("Test", true, 10, true, MoreExecutors.newDirectExecutorService());
+		AtomicInteger loads = new AtomicInteger();
+
+		assertEquals("result-1", cache.get("MAIN", 100, QUERY, () -> "result-" + loads.incrementAndGet()));
+		assertEquals("result-1", cache.get("MAIN", 200, QUERY, () -> "result-" + loads.incrementAndGet()));
+		assertEquals(2, loads.get());
+
+		assertEquals("result-2", cache.get("MAIN", 200, QUERY, () -> "result-" + loads.incrementAndGet()));
+		assertEquals(2, loads.get());
+		assertEquals(1L, cache.getMetrics().get("staleHits"));
+		assertEquals(1L, cache.getMetrics().get("revalidations"));
+	}
+
+	@Test
+	public void testDisabled() {
+		SearchResultCache<String> cache = new SearchResultCache<>("Test", false, 10, false);
+		AtomicInteger loads = new AtomicInteger();
+
+		cache.get("MAIN", 100, QUERY, () -> "result-" + loads.incrementAndGet());
+		cache.get("MAIN", 100, QUERY, () -> "result-" + loads.incrementAndGet());
+		assertEquals(2, loads.get());
+	}
+
+}
@@ -0,0 +1,47 @@
+package org.snomed.snowstorm.core.data.services.pojo;
+
+import com.google.common.collect.Sets;
+import org.junit.Test;
+import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.domain.ReferenceSetMember;
+
+import static org.junit.Assert.*;
+
+public class SemanticIndexChangesTest {
+
+	@Test
+	public void relationshipChangesByForm() {
+		SemanticIndexChanges changes = new SemanticIndexChanges(10);
+		changes.relationshipChanged(Concepts.STATED_RELATIONSHIP, Concepts.ISA, "100", "200");
+		changes.relationshipChanged(Concepts.INFERRED_RELATIONSHIP, Concepts.ISA, "101", "201");
+		changes.relationshipChanged(Concepts.ADDITIONAL_RELATIONSHIP, Concepts.ISA, "102", "202");
+		changes.relationshipChanged(Concepts.INFERRED_RELATIONSHIP, "363698007", "103", "203");
+
+		assertTrue(changes.isComplete());
+		assertEquals(Sets.newHashSet(100L, 102L), changes.getIsASourceIds(true));
+		assertEquals(Sets.newHashSet(200L, 202L), changes.getIsADestinationIds(true));
+		assertEquals(Sets.newHashSet(101L, 102L), changes.getIsASourceIds(false));
+		assertEquals(Sets.newHashSet(201L, 202L), changes.getIsADestinationIds(false));
+		assertFalse(changes.isOtherRelationshipChanged(true));
+		assertTrue(changes.isOtherRelationshipChanged(false));
+	}
+
+	@Test
+	public void onlyAxiomMembersKept() {
+		SemanticIndexChanges changes = new SemanticIndexChanges(10);
+		changes.memberChanged(new ReferenceSetMember("900000000000207008", Concepts.OWL_AXIOM_REFERENCE_SET, "100"));
+		changes.memberChanged(new ReferenceSetMember("900000000000207008", "900000000000509007", "1000"));
+		assertEquals(1, changes.getAxiomMembers().size());
+	}
+
+	@Test
+	public void discardedWhenLimitReached() {
+		SemanticIndexChanges changes = new SemanticIndexChanges(1);
+		changes.relationshipChanged(Concepts.STATED_RELATIONSHIP, Concepts.ISA, "100", "200");
+		assertTrue(changes.isComplete());
+		changes.relationshipChanged(Concepts.STATED_RELATIONSHIP, Concepts.ISA, "101", "201");
+		assertFalse(changes.isComplete());
+		assertTrue(changes.getIsASourceIds(true).isEmpty());
+	}
+
+}
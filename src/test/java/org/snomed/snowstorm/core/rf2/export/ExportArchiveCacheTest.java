@@ -0,0 +1,135 @@
+package org.snomed.snowstorm.core.rf2.export;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ExportArchiveCacheTest {
+
+	private static final List<Object> KEY_A = Arrays.asList("MAIN/2018-01-31", 100L, "SNAPSHOT");
+	private static final List<Object> KEY_B = Arrays.asList("MAIN/2018-07-31", 200L, "SNAPSHOT");
+	private static final List<Object> KEY_C = Arrays.asList("MAIN/2018-07-31", 200L, "DELTA");
+
+	private File directory;
+	private AtomicInteger builds;
+
+	@Before
+	public void setup() throws IOException {
+		directory = Files.createTempDirectory("export-cache-test").toFile();
+		directory.deleteOnExit();
+		builds = new AtomicInteger();
+	}
+
+	@Test
+	public void testArchiveReusedForSameKey() {
+		ExportArchiveCache cache = new ExportArchiveCache(true, directory.getPath(), 10);
+
+		File archive = cache.get(KEY_A, () -> buildArchive(1024)).getFile();
+		assertTrue(archive.isFile());
+		assertEquals(directory, archive.getParentFile());
+		assertEquals(archive, cache.get(KEY_A, () -> buildArchive(1024)).getFile());
+		assertEquals(1, builds.get());
+
+		cache.get(KEY_B, () -> buildArchive(1024));
+		assertEquals(2, builds.get());
+
+		assertEquals(1L, cache.getMetrics().get("hits"));
+		assertEquals(2L, cache.getMetrics().get("misses"));
+
+		// Archives on disk are found by a new cache
+		ExportArchiveCache restartedCache = new ExportArchiveCache(true, directory.getPath(), 10);
+		assertEquals(archive, restartedCache.get(KEY_A, () -> buildArchive(1024)).getFile());
+		assertEquals(2, builds.get());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedArchiveEvicted() {
+		ExportArchiveCache cache = new ExportArchiveCache(true, directory.getPath(), 1);
+		int size = 400 * 1024;
+
+		File archiveA = getAndClose(cache, KEY_A, size);
+		File archiveB = getAndClose(cache, KEY_B, size);
+		// Use A so that B is least recently used
+		getAndClose(cache, KEY_A, size);
+		File archiveC = getAndClose(cache, KEY_C, size);
+
+		assertTrue(archiveA.isFile());
+		assertFalse(archiveB.exists());
+		assertTrue(archiveC.isFile());
+		assertEquals(1L, cache.getMetrics().get("evictions"));
+
+		// An archive larger than the limit is kept until the next is added
+		File largeArchive = getAndClose(cache, KEY_B, 2 * 1024 * 1024);
+		assertTrue(largeArchive.isFile());
+		assertFalse(archiveA.exists());
+		assertFalse(archiveC.exists());
+	}
+
+	@Test
+	public void testArchiveInUseNotEvicted() {
+		ExportArchiveCache cache = new ExportArchiveCache(true, directory.getPath(), 1);
+		int size = 400 * 1024;
+
+		ExportArchiveCache.CachedArchive archiveA = cache.get(KEY_A, () -> buildArchive(size));
+		getAndClose(cache, KEY_B, size);
+		File archiveC = getAndClose(cache, KEY_C, size);
+
+		// A is least recently used but is still being served so B is evicted instead
+		assertTrue(archiveA.getFile().isFile());
+		assertTrue(archiveC.isFile());
+		assertEquals(1L, cache.getMetrics().get("evictions"));
+
+		// Still kept when C is evicted to make room, then evicted once released
+		getAndClose(cache, KEY_B, 2 * size);
+		assertFalse(archiveC.exists());
+		assertTrue(archiveA.getFile().isFile());
+		archiveA.close();
+		archiveA.close();
+		assertFalse(archiveA.getFile().exists());
+		assertEquals(3L, cache.getMetrics().get("evictions"));
+	}
+
+	@Test
+	public void testFailedBuildNotCached() {
+		ExportArchiveCache cache = new ExportArchiveCache(true, directory.getPath(), 10);
+		try {
+			cache.get(KEY_A, () -> {
+				throw new ExportException("Elasticsearch unavailable.");
+			});
+			fail("Expected ExportException");
+		} catch (ExportException e) {
+			assertEquals("Elasticsearch unavailable.", e.getMessage());
+		}
+		assertTrue(cache.get(KEY_A, () -> buildArchive(1024)).getFile().isFile());
+		assertEquals(1, builds.get());
+	}
+
+	private File getAndClose(ExportArchiveCache cache, List<Object> key, int size) {
+		try (ExportArchiveCache.CachedArchive archive = cache.get(key, () -> buildArchive(size))) {
+			return archive.getFile();
+		}
+	}
+
+	private File buildArchive(int size) {
+		builds.incrementAndGet();
+		try {
+			File file = File.createTempFile("export-cache-test", ".zip");
+			try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+				randomAccessFile.setLength(size);
+			}
+			return file;
+		} catch (IOException e) {
+			throw new ExportException("Failed to create test archive.", e);
+		}
+	}
+
+}
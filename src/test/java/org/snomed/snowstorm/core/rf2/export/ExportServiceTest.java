@@ -1,5 +1,7 @@
 package org.snomed.snowstorm.core.rf2.export;
 
+import com.google.common.collect.Sets;
+import io.kaicode.elasticvc.api.BranchService;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -22,8 +24,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.InputStream;
+import java.util.*;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 
@@ -46,6 +48,9 @@ public class ExportServiceTest extends AbstractTest {
 	@Autowired
 	private ReleaseService releaseService;
 
+	@Autowired
+	private BranchService branchService;
+
 	private String descriptionId;
 	private String textDefId;
 	private ReferenceSetMember owlMember;
@@ -171,6 +176,128 @@ public class ExportServiceTest extends AbstractTest {
 		}
 	}
 
+	@Test
+	public void exportRF2ArchiveStreamed() throws Exception {
+		ExportConfiguration exportConfiguration = new ExportConfiguration("MAIN", RF2Type.DELTA);
+		exportConfiguration.setFilenameEffectiveDate("20180131");
+		exportService.createJob(exportConfiguration);
+		Map<String, Set<String>> expectedEntries = getEntries(exportService.exportRF2ArchiveFile("MAIN", "20180131", RF2Type.DELTA, false));
+
+		File exportFile = getTempFile("export", ".zip");
+		exportConfiguration.setStreamed(true);
+		exportConfiguration.setCompressionLevel(0);
+		exportService.exportRF2Archive(exportConfiguration, new FileOutputStream(exportFile));
+
+		Map<String, Set<String>> entries = getEntries(exportFile);
+		assertEquals(7, entries.size());
+		assertEquals(expectedEntries, entries);
+	}
+
+	@Test
+	public void exportRF2ArchiveFiltered() throws Exception {
+		ExportConfiguration exportConfiguration = new ExportConfiguration("MAIN", RF2Type.SNAPSHOT);
+		exportConfiguration.setFilenameEffectiveDate("20180131");
+		exportConfiguration.setRefsetIds(Collections.singleton(Concepts.OWL_AXIOM_REFERENCE_SET));
+		exportConfiguration.setStartEffectiveTime(20180131);
+		Map<String, Set<String>> entries = getEntries(export(exportConfiguration));
+
+		// Only the axiom refset file is written and concepts released before the start are left out
+		assertEquals(6, entries.size());
+		assertTrue(entries.containsKey("SnomedCT_Export/RF2Release/Terminology/sct2_sRefset_OWLAxiomSnapshot_INT_20180131.txt"));
+		assertEquals(Sets.newHashSet(ConceptExportWriter.HEADER, "123001\t\t1\t900000000000207008\t900000000000074008"),
+				entries.get("SnomedCT_Export/RF2Release/Terminology/sct2_Concept_Snapshot_INT_20180131.txt"));
+
+		exportConfiguration = new ExportConfiguration("MAIN", RF2Type.SNAPSHOT);
+		exportConfiguration.setFilenameEffectiveDate("20180131");
+		exportConfiguration.setEndEffectiveTime(20180131);
+		entries = getEntries(export(exportConfiguration));
+		assertEquals(Sets.newHashSet(ConceptExportWriter.HEADER,
+				Concepts.LANG_REFSET + "\t20100131\t1\t900000000000207008\t900000000000074008",
+				Concepts.GB_EN_LANG_REFSET + "\t20100131\t1\t900000000000207008\t900000000000074008"),
+				entries.get("SnomedCT_Export/RF2Release/Terminology/sct2_Concept_Snapshot_INT_20180131.txt"));
+
+		exportConfiguration = new ExportConfiguration("MAIN", RF2Type.SNAPSHOT);
+		exportConfiguration.setFilenameEffectiveDate("20180131");
+		exportConfiguration.setModuleIds(Collections.singleton(Concepts.MODEL_MODULE));
+		entries = getEntries(export(exportConfiguration));
+		assertEquals(Collections.singleton(ConceptExportWriter.HEADER), entries.get("SnomedCT_Export/RF2Release/Terminology/sct2_Concept_Snapshot_INT_20180131.txt"));
+		assertEquals(5, entries.size());
+	}
+
+	private File export(ExportConfiguration exportConfiguration) throws IOException {
+		exportService.createJob(exportConfiguration);
+		File exportFile = getTempFile("export", ".zip");
+		try (FileOutputStream outputStream = new FileOutputStream(exportFile)) {
+			exportService.exportRF2Archive(exportConfiguration, outputStream);
+		}
+		return exportFile;
+	}
+
+	@Test
+	public void exportRF2ArchiveStreamForClassification() throws Exception {
+		Map<String, Set<String>> expectedEntries = getEntries(exportService.exportRF2ArchiveFile("MAIN", "20180131", RF2Type.DELTA, true));
+
+		File exportFile = getTempFile("export", ".zip");
+		try (InputStream inputStream = exportService.exportRF2ArchiveStream("MAIN", "20180131", RF2Type.DELTA, true)) {
+			StreamUtils.copy(inputStream, new FileOutputStream(exportFile), false, true);
+		}
+
+		Map<String, Set<String>> entries = getEntries(exportFile);
+		// Concepts, both relationship files and the OWL axiom refset
+		assertEquals(4, entries.size());
+		assertEquals(expectedEntries, entries);
+	}
+
+	@Test
+	public void exportFullRF2Archive() throws Exception {
+		String path = "MAIN";
+		releaseService.createVersion(20180131, path);
+		Concept concept = conceptService.find("123001", path);
+		concept.setDefinitionStatusId(Concepts.FULLY_DEFINED);
+		conceptService.update(concept, path);
+		releaseService.createVersion(20190131, path);
+
+		// Unreleased change on a task
+		String taskPath = "MAIN/TASK-1";
+		branchService.create(taskPath);
+		concept = conceptService.find("123001", taskPath);
+		concept.setModuleId(Concepts.MODEL_MODULE);
+		conceptService.update(concept, taskPath);
+
+		File exportFile = exportService.exportRF2ArchiveFile(taskPath, "20190731", RF2Type.FULL, false);
+		exportFile.deleteOnExit();
+		try (ZipInputStream zipInputStream = new ZipInputStream(new FileInputStream(exportFile))) {
+			ZipEntry concepts = zipInputStream.getNextEntry();
+			assertEquals("SnomedCT_Export/RF2Release/Terminology/sct2_Concept_Full_INT_20190731.txt", concepts.getName());
+			List<String> lines = getLines(zipInputStream);
+			assertEquals(Arrays.asList(
+					ConceptExportWriter.HEADER,
+					Concepts.LANG_REFSET + "\t20100131\t1\t900000000000207008\t900000000000074008",
+					Concepts.GB_EN_LANG_REFSET + "\t20100131\t1\t900000000000207008\t900000000000074008",
+					"123001\t20180131\t1\t900000000000207008\t900000000000074008",
+					"123001\t20190131\t1\t900000000000207008\t900000000000073002",
+					"123001\t\t1\t" + Concepts.MODEL_MODULE + "\t900000000000073002"), lines);
+
+			ZipEntry descriptions = zipInputStream.getNextEntry();
+			assertEquals("SnomedCT_Export/RF2Release/Terminology/sct2_Description_Full_INT_20190731.txt", descriptions.getName());
+			lines = getLines(zipInputStream);
+			assertEquals(2, lines.size());
+			assertEquals("124011\t20180131\t1\t900000000000207008\t123001\ten\t" + Concepts.FSN + "\tBleeding (finding)\t900000000000448009", lines.get(1));
+		}
+	}
+
+	private Map<String, Set<String>> getEntries(File exportFile) throws IOException {
+		exportFile.deleteOnExit();
+		Map<String, Set<String>> entries = new LinkedHashMap<>();
+		try (ZipInputStream zipInputStream = new ZipInputStream(new FileInputStream(exportFile))) {
+			ZipEntry entry;
+			while ((entry = zipInputStream.getNextEntry()) != null) {
+				entries.put(entry.getName(), new HashSet<>(getLines(zipInputStream)));
+			}
+		}
+		return entries;
+	}
+
 	private List<String> getLines(ZipInputStream zipInputStream) throws IOException {
 		File conceptFile = getTempFile("temp", ".txt");
 		StreamUtils.copy(zipInputStream, new FileOutputStream(conceptFile), false, true);
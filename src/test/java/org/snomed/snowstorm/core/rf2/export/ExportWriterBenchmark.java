@@ -0,0 +1,183 @@
+package org.snomed.snowstorm.core.rf2.export;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.snomed.snowstorm.core.data.domain.*;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Compares RF2 rows written per second by the export writers, which read fields directly from the source of search hits,
+ * against mapping each source to a domain object with Jackson and writing the fields with a BufferedWriter.
+ * Sources are generated in memory and rows are written to a null stream so only mapping and encoding are measured.
+ *
+ * Arguments: [rows] [iterations]
+ * e.g. 500000 5
+ */
+public class ExportWriterBenchmark {
+
+	private final ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+	public static void main(String[] args) throws IOException {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+		int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+		new ExportWriterBenchmark().run(rows, iterations);
+	}
+
+	private void run(int rows, int iterations) throws IOException {
+		System.out.println(String.format("%-25s %15s %15s", "Component", "Mapped rows/s", "Writer rows/s"));
+		runComponent("Concept", Concept.class, rows, iterations, this::conceptSource,
+				ConceptExportWriter::new, (concept, writer) -> writeRow(writer, concept.getConceptId(), effectiveTime(concept), active(concept),
+						concept.getModuleId(), concept.getDefinitionStatusId()));
+		runComponent("Description", Description.class, rows, iterations, this::descriptionSource,
+				DescriptionExportWriter::new, (description, writer) -> writeRow(writer, description.getDescriptionId(), effectiveTime(description), active(description),
+						description.getModuleId(), description.getConceptId(), description.getLanguageCode(), description.getTypeId(), description.getTerm(),
+						description.getCaseSignificanceId()));
+		runComponent("Relationship", Relationship.class, rows, iterations, this::relationshipSource,
+				RelationshipExportWriter::new, (relationship, writer) -> writeRow(writer, relationship.getRelationshipId(), effectiveTime(relationship), active(relationship),
+						relationship.getModuleId(), relationship.getSourceId(), relationship.getDestinationId(), relationship.getRelationshipGroup() + "",
+						relationship.getTypeId(), relationship.getCharacteristicTypeId(), relationship.getModifierId()));
+		runComponent("ReferenceSetMember", ReferenceSetMember.class, rows, iterations, this::memberSource,
+				outputStream -> new ReferenceSetMemberExportWriter(outputStream, Collections.singletonList("acceptabilityId")),
+				(member, writer) -> writeRow(writer, member.getMemberId(), effectiveTime(member), active(member),
+						member.getModuleId(), member.getRefsetId(), member.getReferencedComponentId(), member.getAdditionalField("acceptabilityId")));
+	}
+
+	private <T> void runComponent(String name, Class<T> componentClass, int rows, int iterations, SourceGenerator sourceGenerator,
+			WriterFactory writerFactory, MappedRowWriter<T> mappedRowWriter) throws IOException {
+
+		List<byte[]> sources = new ArrayList<>(rows);
+		for (int i = 0; i < rows; i++) {
+			sources.add(objectMapper.writeValueAsBytes(sourceGenerator.generate(i)));
+		}
+
+		// The first iteration warms up both paths and is not counted
+		long mappedNanos = 0;
+		long writerNanos = 0;
+		for (int iteration = 0; iteration <= iterations; iteration++) {
+			long start = System.nanoTime();
+			BufferedWriter bufferedWriter = new BufferedWriter(new OutputStreamWriter(new NullOutputStream()));
+			for (byte[] source : sources) {
+				mappedRowWriter.write(objectMapper.readValue(source, componentClass), bufferedWriter);
+			}
+			bufferedWriter.flush();
+			long mapped = System.nanoTime() - start;
+
+			start = System.nanoTime();
+			ExportWriter writer = writerFactory.create(new NullOutputStream());
+			for (int i = 0; i < sources.size(); i++) {
+				byte[] source = sources.get(i);
+				writer.appendRow(source, 0, source.length);
+				// Chunks are taken once per scroll page
+				if (i % 10_000 == 9_999) {
+					writer.write(writer.takeChunk());
+				}
+			}
+			writer.write(writer.takeChunk());
+			long written = System.nanoTime() - start;
+
+			if (iteration > 0) {
+				mappedNanos += mapped;
+				writerNanos += written;
+			}
+		}
+		long totalRows = (long) rows * iterations;
+		System.out.println(String.format("%-25s %15d %15d", name, totalRows * 1_000_000_000L / mappedNanos, totalRows * 1_000_000_000L / writerNanos));
+	}
+
+	private Map<String, Object> componentSource(int i) {
+		Map<String, Object> source = new LinkedHashMap<>();
+		if (i % 2 == 0) {
+			source.put(SnomedComponent.Fields.EFFECTIVE_TIME, 20180131);
+		}
+		source.put(SnomedComponent.Fields.ACTIVE, i % 10 != 0);
+		source.put(SnomedComponent.Fields.MODULE_ID, Concepts.CORE_MODULE);
+		source.put("released", i % 2 == 0);
+		source.put("releaseHash", "0a1b2c3d4e5f60718293a4b5c6d7e8f9");
+		return source;
+	}
+
+	private Map<String, Object> conceptSource(int i) {
+		Map<String, Object> source = componentSource(i);
+		source.put(Concept.Fields.CONCEPT_ID, (1_000_000 + i) + "006");
+		source.put("definitionStatusId", Concepts.PRIMITIVE);
+		return source;
+	}
+
+	private Map<String, Object> descriptionSource(int i) {
+		Map<String, Object> source = componentSource(i);
+		source.put(Description.Fields.DESCRIPTION_ID, (1_000_000 + i) + "011");
+		source.put(Description.Fields.CONCEPT_ID, (1_000_000 + i) + "006");
+		source.put(Description.Fields.LANGUAGE_CODE, "en");
+		source.put(Description.Fields.TYPE_ID, Concepts.FSN);
+		source.put(Description.Fields.TERM, "Synthetic finding of structure of site number " + i + " (finding)");
+		source.put(Description.Fields.TERM_FOLDED, "synthetic finding of structure of site number " + i + " (finding)");
+		source.put("caseSignificanceId", "900000000000448009");
+		return source;
+	}
+
+	private Map<String, Object> relationshipSource(int i) {
+		Map<String, Object> source = componentSource(i);
+		source.put(Relationship.Fields.RELATIONSHIP_ID, (1_000_000 + i) + "025");
+		source.put(Relationship.Fields.SOURCE_ID, (1_000_000 + i) + "006");
+		source.put(Relationship.Fields.DESTINATION_ID, (1_000_000 + i / 2) + "006");
+		source.put(Relationship.Fields.RELATIONSHIP_GROUP, i % 3);
+		source.put(Relationship.Fields.TYPE_ID, Concepts.ISA);
+		source.put(Relationship.Fields.CHARACTERISTIC_TYPE_ID, Concepts.INFERRED_RELATIONSHIP);
+		source.put(Relationship.Fields.MODIFIER_ID, "900000000000451002");
+		return source;
+	}
+
+	private Map<String, Object> memberSource(int i) {
+		Map<String, Object> source = componentSource(i);
+		source.put(ReferenceSetMember.Fields.MEMBER_ID, UUID.nameUUIDFromBytes(Integer.toString(i).getBytes(StandardCharsets.UTF_8)).toString());
+		source.put(ReferenceSetMember.Fields.REFSET_ID, Concepts.US_EN_LANG_REFSET);
+		source.put(ReferenceSetMember.Fields.REFERENCED_COMPONENT_ID, (1_000_000 + i) + "011");
+		source.put(ReferenceSetMember.Fields.ADDITIONAL_FIELDS, Collections.singletonMap("acceptabilityId", Concepts.PREFERRED));
+		return source;
+	}
+
+	private static String effectiveTime(SnomedComponent<?> component) {
+		return component.getEffectiveTimeI() != null ? component.getEffectiveTimeI().toString() : "";
+	}
+
+	private static String active(SnomedComponent<?> component) {
+		return component.isActive() ? "1" : "0";
+	}
+
+	private static void writeRow(BufferedWriter writer, String... values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				writer.write(ExportWriter.TAB);
+			}
+			writer.write(values[i]);
+		}
+		writer.newLine();
+	}
+
+	private interface SourceGenerator {
+		Map<String, Object> generate(int i);
+	}
+
+	private interface WriterFactory {
+		ExportWriter create(OutputStream outputStream);
+	}
+
+	private interface MappedRowWriter<T> {
+		void write(T component, BufferedWriter writer) throws IOException;
+	}
+
+	private static final class NullOutputStream extends OutputStream {
+
+		@Override
+		public void write(int b) {
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+package org.snomed.snowstorm.core.rf2.export;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ExportWriterTest {
+
+	private static final String NEW_LINE = System.lineSeparator();
+
+	@Test
+	public void testColumnsWrittenInRF2Order() {
+		ConceptExportWriter writer = new ConceptExportWriter(new ByteArrayOutputStream());
+		append(writer, "{\"definitionStatusId\":\"900000000000074008\",\"active\":true,\"released\":false,\"conceptId\":\"123001\",\"moduleId\":\"900000000000207008\"}");
+		append(writer, "{\"conceptId\":\"123002\",\"effectiveTimeI\":20180131,\"active\":false,\"moduleId\":\"900000000000207008\",\"definitionStatusId\":\"900000000000073002\"}");
+
+		assertEquals("123001\t\t1\t900000000000207008\t900000000000074008" + NEW_LINE +
+				"123002\t20180131\t0\t900000000000207008\t900000000000073002" + NEW_LINE, chunk(writer));
+		assertEquals(2, writer.getContentLinesWritten());
+		// The buffer is reused for the next chunk
+		assertEquals("", chunk(writer));
+	}
+
+	@Test
+	public void testTermEncodedAsUtf8() {
+		DescriptionExportWriter writer = new DescriptionExportWriter(new ByteArrayOutputStream());
+		String term = "Sj\u00f6gren syndrome \u2264 5 \uD83D\uDE00 \"quoted\"";
+		append(writer, "{\"descriptionId\":\"124011\",\"active\":true,\"moduleId\":\"900000000000207008\",\"conceptId\":\"123001\",\"languageCode\":\"sv\"," +
+				"\"typeId\":\"900000000000013009\",\"term\":\"Sj\\u00f6gren syndrome \u2264 5 \uD83D\uDE00 \\\"quoted\\\"\",\"caseSignificanceId\":\"900000000000448009\"}");
+
+		String expected = "124011\t\t1\t900000000000207008\t123001\tsv\t900000000000013009\t" + term + "\t900000000000448009" + NEW_LINE;
+		assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), writer.takeChunk());
+	}
+
+	@Test
+	public void testAdditionalFieldsReadFromNestedObject() {
+		ReferenceSetMemberExportWriter writer = new ReferenceSetMemberExportWriter(new ByteArrayOutputStream(), Collections.singletonList("owlExpression"));
+		append(writer, "{\"memberId\":\"a1\",\"active\":true,\"moduleId\":\"900000000000207008\",\"refsetId\":\"733073007\",\"referencedComponentId\":\"123005000\"," +
+				"\"additionalFields\":{\"owlExpression\":\"TransitiveObjectProperty(:123005000)\"}}");
+		assertEquals("a1\t\t1\t900000000000207008\t733073007\t123005000\tTransitiveObjectProperty(:123005000)" + NEW_LINE, chunk(writer));
+
+		try {
+			append(writer, "{\"memberId\":\"a2\",\"active\":true,\"moduleId\":\"900000000000207008\",\"refsetId\":\"733073007\",\"referencedComponentId\":\"123005000\",\"additionalFields\":{}}");
+			fail("Expected IllegalStateException");
+		} catch (IllegalStateException e) {
+			assertEquals("Field 'additionalFields.owlExpression' value is null for component a2", e.getMessage());
+		}
+	}
+
+	@Test
+	public void testRepeatedVersionsSkipped() {
+		ConceptExportWriter writer = new ConceptExportWriter(new ByteArrayOutputStream());
+		writer.setSkipRepeatedVersions(true);
+		append(writer, "{\"conceptId\":\"123001\",\"effectiveTimeI\":20180131,\"active\":true,\"moduleId\":\"900000000000207008\",\"definitionStatusId\":\"900000000000074008\"}");
+		append(writer, "{\"conceptId\":\"123001\",\"effectiveTimeI\":20180131,\"active\":true,\"moduleId\":\"900000000000207008\",\"definitionStatusId\":\"900000000000074008\"}");
+		append(writer, "{\"conceptId\":\"123002\",\"effectiveTimeI\":20180131,\"active\":true,\"moduleId\":\"900000000000207008\",\"definitionStatusId\":\"900000000000074008\"}");
+		append(writer, "{\"conceptId\":\"123001\",\"effectiveTimeI\":20190131,\"active\":false,\"moduleId\":\"900000000000207008\",\"definitionStatusId\":\"900000000000074008\"}");
+		append(writer, "{\"conceptId\":\"123001\",\"active\":true,\"moduleId\":\"900000000000207008\",\"definitionStatusId\":\"900000000000074008\"}");
+
+		assertEquals("123001\t20180131\t1\t900000000000207008\t900000000000074008" + NEW_LINE +
+				"123002\t20180131\t1\t900000000000207008\t900000000000074008" + NEW_LINE +
+				"123001\t20190131\t0\t900000000000207008\t900000000000074008" + NEW_LINE +
+				"123001\t\t1\t900000000000207008\t900000000000074008" + NEW_LINE, chunk(writer));
+		assertEquals(4, writer.getContentLinesWritten());
+	}
+
+	@Test
+	public void testHeader() throws Exception {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		try (ExportWriter writer = new ReferenceSetMemberExportWriter(outputStream, Collections.singletonList("acceptabilityId"))) {
+			writer.writeHeader();
+		}
+		assertEquals(ReferenceSetMemberExportWriter.HEADER + "\tacceptabilityId" + NEW_LINE, outputStream.toString(StandardCharsets.UTF_8.name()));
+	}
+
+	private void append(ExportWriter writer, String source) {
+		byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+		writer.appendRow(bytes, 0, bytes.length);
+	}
+
+	private String chunk(ExportWriter writer) {
+		return new String(writer.takeChunk(), StandardCharsets.UTF_8);
+	}
+
+}
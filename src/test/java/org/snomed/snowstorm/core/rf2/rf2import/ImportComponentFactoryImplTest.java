@@ -0,0 +1,21 @@
+package org.snomed.snowstorm.core.rf2.rf2import;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class ImportComponentFactoryImplTest {
+
+	@Test
+	public void parseEffectiveTime() {
+		assertEquals(20180731, ImportComponentFactoryImpl.parseEffectiveTime("20180731"));
+		assertEquals(20020131, ImportComponentFactoryImpl.parseEffectiveTime("20020131"));
+		assertEquals(-1, ImportComponentFactoryImpl.parseEffectiveTime(null));
+		assertEquals(-1, ImportComponentFactoryImpl.parseEffectiveTime(""));
+		assertEquals(-1, ImportComponentFactoryImpl.parseEffectiveTime("2018073"));
+		assertEquals(-1, ImportComponentFactoryImpl.parseEffectiveTime("201807311"));
+		assertEquals(-1, ImportComponentFactoryImpl.parseEffectiveTime("2018O731"));
+		assertEquals(-1, ImportComponentFactoryImpl.parseEffectiveTime("2018-731"));
+	}
+
+}
@@ -1,6 +1,7 @@
 package org.snomed.snowstorm.core.rf2.rf2import;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import io.kaicode.elasticvc.api.BranchService;
 import io.kaicode.elasticvc.domain.Branch;
 import org.ihtsdo.otf.snomedboot.ReleaseImportException;
@@ -12,6 +13,8 @@ import org.snomed.otf.snomedboot.testutil.ZipUtil;
 import org.snomed.snowstorm.AbstractTest;
 import org.snomed.snowstorm.TestConfig;
 import org.snomed.snowstorm.core.data.domain.*;
+import org.snomed.snowstorm.core.data.domain.jobs.ImportJobState;
+import org.snomed.snowstorm.core.data.repositories.jobs.ImportJobStateRepository;
 import org.snomed.snowstorm.core.data.services.*;
 import org.snomed.snowstorm.core.data.services.pojo.IntegrityIssueReport;
 import org.snomed.snowstorm.core.rf2.RF2Type;
@@ -53,6 +56,9 @@ public class ImportServiceTest extends AbstractTest {
 	@Autowired
 	private CodeSystemService codeSystemService;
 
+	@Autowired
+	private ImportJobStateRepository importJobStateRepository;
+
 	private File rf2Archive;
 
 	@Before
@@ -211,6 +217,119 @@ public class ImportServiceTest extends AbstractTest {
 		assertNull(report2011JanInferred.getRelationshipsWithMissingOrInactiveDestination());
 	}
 
+	@Test
+	public void testImportFullWithDeferredSemanticIndex() throws ReleaseImportException, FileNotFoundException {
+		// Import without deferring to a branch which has no code system, for comparison
+		branchService.create("MAIN/A");
+		String importId = importService.createJob(RF2Type.FULL, "MAIN/A", false);
+		importService.importArchive(importId, new FileInputStream(rf2Archive));
+
+		importId = importService.createJob(new RF2ImportConfiguration(RF2Type.FULL, "MAIN")
+				.setDeferSemanticIndex(true));
+		importService.importArchive(importId, new FileInputStream(rf2Archive));
+
+		// Without versions the semantic index is built once at the end
+		List<String> branchPaths = branchService.findAll().stream().map(Branch::getPath).collect(Collectors.toList());
+		assertEquals(Lists.newArrayList("MAIN", "MAIN/A"), branchPaths);
+		assertTrue(importService.getImportJobOrThrow(importId).getPhaseTimingsMillis().containsKey("Build semantic index"));
+
+		for (Concept concept : conceptService.findAll("MAIN", PageRequest.of(0, 200))) {
+			if (concept.isActive()) {
+				for (boolean stated : new boolean[]{true, false}) {
+					assertEquals("Ancestors of " + concept.getConceptId() + (stated ? " stated" : " inferred"),
+							findAncestorIdsOrEmpty(concept.getConceptId(), "MAIN/A", stated), findAncestorIdsOrEmpty(concept.getConceptId(), "MAIN", stated));
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testImportFullWithDeferredSemanticIndexAndVersions() throws ReleaseImportException, FileNotFoundException {
+		String importId = importService.createJob(new RF2ImportConfiguration(RF2Type.FULL, "MAIN")
+				.setCreateCodeSystemVersion(true)
+				.setDeferSemanticIndex(true));
+		importService.importArchive(importId, new FileInputStream(rf2Archive));
+
+		// Every release is still versioned with a complete semantic index
+		List<String> branchPaths = branchService.findAll().stream().map(Branch::getPath).collect(Collectors.toList());
+		assertTrue(branchPaths.contains("MAIN/2002-01-31"));
+		assertTrue(branchPaths.contains("MAIN/2018-07-31"));
+		assertFalse(importService.getImportJobOrThrow(importId).getPhaseTimingsMillis().containsKey("Build semantic index"));
+
+		assertEquals(asSet("250171008, 138875005, 118222006, 246188002"), queryService.findAncestorIds("131148009", "MAIN/2002-01-31", false));
+		assertEquals(asSet("250171008, 138875005, 300577008, 118222006, 404684003"), queryService.findAncestorIds("131148009", "MAIN/2005-01-31", false));
+		assertEquals(asSet("250171008, 138875005, 118222006, 404684003"), queryService.findAncestorIds("131148009", "MAIN/2006-01-31", false));
+	}
+
+	@Test
+	public void testResumeFullImportFromCheckpoint() throws ReleaseImportException, IOException, ServiceException {
+		String importId = importService.createJob(RF2Type.FULL, "MAIN", true);
+		ImportJob job = importService.getImportJobOrThrow(importId);
+
+		// As if a previous run had committed every release up to this one
+		job.setCheckpoint("20140131", branchService.findLatest("MAIN").getHeadTimestamp());
+		importService.importArchive(importId, new FileInputStream(rf2Archive));
+
+		List<String> branchPaths = branchService.findAll().stream().map(Branch::getPath).collect(Collectors.toList());
+		assertEquals(Lists.newArrayList("MAIN", "MAIN/2018-07-31"), branchPaths);
+		assertEquals("20180731", job.getCheckpointReleaseDate());
+		assertEquals(branchService.findLatest("MAIN").getHeadTimestamp(), job.getCheckpointBranchHeadTimestamp().longValue());
+
+		ImportJobState state = importJobStateRepository.findById(importId).orElse(null);
+		assertNotNull(state);
+		assertEquals(ImportJob.ImportStatus.COMPLETED, state.getStatus());
+		assertEquals("20180731", state.getCheckpointReleaseDate());
+
+		job.setStatus(ImportJob.ImportStatus.FAILED);
+		importService.resumeJob(importId);
+		assertEquals(ImportJob.ImportStatus.WAITING_FOR_FILE, job.getStatus());
+
+		// Can not resume once something else has been committed to the branch
+		job.setStatus(ImportJob.ImportStatus.FAILED);
+		conceptService.create(new Concept("100001"), "MAIN");
+		try {
+			importService.resumeJob(importId);
+			fail("Resume should be rejected after the branch has changed.");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testJobInterruptedByRestartIsFailed() {
+		ImportJobState state = new ImportJobState();
+		state.setId(UUID.randomUUID().toString());
+		state.setType(RF2Type.FULL);
+		state.setBranchPath("MAIN");
+		state.setStatus(ImportJob.ImportStatus.RUNNING);
+		state.setCheckpointReleaseDate("20050131");
+		importJobStateRepository.save(state);
+
+		ImportJob job = importService.getImportJobOrThrow(state.getId());
+		assertEquals(ImportJob.ImportStatus.FAILED, job.getStatus());
+		assertEquals("20050131", job.getCheckpointReleaseDate());
+		assertEquals(ImportJob.ImportStatus.FAILED, importJobStateRepository.findById(state.getId()).get().getStatus());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDeferredSemanticIndexOnlyForFullImport() {
+		importService.createJob(new RF2ImportConfiguration(RF2Type.SNAPSHOT, "MAIN").setDeferSemanticIndex(true));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testDeferredSemanticIndexOnlyOnMain() {
+		branchService.create("MAIN/A");
+		importService.createJob(new RF2ImportConfiguration(RF2Type.FULL, "MAIN/A").setDeferSemanticIndex(true));
+	}
+
+	private Set<Long> findAncestorIdsOrEmpty(String conceptId, String path, boolean stated) {
+		try {
+			return queryService.findAncestorIds(conceptId, path, stated);
+		} catch (IllegalArgumentException e) {
+			return Collections.emptySet();
+		}
+	}
+
 	private String mapToString(Map<Long, Long> map) {
 		// Sort the map before converting to string to ensure consistent output
 		return new TreeMap<>(map).toString();
@@ -347,6 +466,33 @@ public class ImportServiceTest extends AbstractTest {
 				emptyReport, integrityService.findAllComponentsWithBadIntegrity(branchService.findLatest(branchPath), false));
 	}
 
+	@Test
+	public void testImportProgressReported() throws ReleaseImportException, IOException {
+		RF2ImportConfiguration importConfiguration = new RF2ImportConfiguration(RF2Type.SNAPSHOT, "MAIN");
+		importConfiguration.setModuleIds(Collections.singleton(Concepts.MODEL_MODULE));
+		String importId = importService.createJob(importConfiguration);
+		importService.importArchive(importId, new FileInputStream(rf2Archive));
+
+		ImportProgress progress = importService.getImportJobOrThrow(importId).getProgress();
+		assertEquals(77L, progress.getRowsParsed().get("Concept").longValue());
+		assertEquals(77L, progress.getRowsPersisted().get("Concept").longValue());
+		assertTrue(ImportService.estimateRowCount(rf2Archive, RF2Type.SNAPSHOT) > 77);
+	}
+
+	@Test
+	public void testImportWithBulkIndexingProfile() throws IOException, ReleaseImportException {
+		File zipFile = ZipUtil.zipDirectoryRemovingCommentsAndBlankLines("src/test/resources/import-tests/blankOrLaterEffectiveTimeBase");
+		String importId = importService.createJob(new RF2ImportConfiguration(RF2Type.SNAPSHOT, "MAIN")
+				.setCreateCodeSystemVersion(true)
+				.setBulkIndexingProfile(true));
+		importService.importArchive(importId, new FileInputStream(zipFile));
+
+		assertEquals(ImportJob.ImportStatus.COMPLETED, importService.getImportJobOrThrow(importId).getStatus());
+		assertEquals(Sets.newHashSet("Apply bulk indexing profile", "Import components", "Create code system version", "Restore index settings"),
+				importService.getImportJobOrThrow(importId).getPhaseTimingsMillis().keySet());
+		assertEquals(5, conceptService.findAll("MAIN", PageRequest.of(0, 10)).getContent().size());
+	}
+
 	@Test
 	public void testImportOnlyComponentsWithBlankOrLaterEffectiveTime() throws IOException, ReleaseImportException {
 
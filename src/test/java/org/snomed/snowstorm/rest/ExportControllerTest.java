@@ -0,0 +1,90 @@
+package org.snomed.snowstorm.rest;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.snomed.snowstorm.AbstractTest;
+import org.snomed.snowstorm.TestConfig;
+import org.snomed.snowstorm.core.data.domain.CodeSystem;
+import org.snomed.snowstorm.core.data.domain.Concept;
+import org.snomed.snowstorm.core.data.domain.jobs.ExportConfiguration;
+import org.snomed.snowstorm.core.data.services.CodeSystemService;
+import org.snomed.snowstorm.core.data.services.ConceptService;
+import org.snomed.snowstorm.core.rf2.RF2Type;
+import org.snomed.snowstorm.core.rf2.export.ExportArchiveCache;
+import org.snomed.snowstorm.core.rf2.export.ExportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = TestConfig.class)
+public class ExportControllerTest extends AbstractTest {
+
+	@Autowired
+	private ExportController exportController;
+
+	@Autowired
+	private ExportService exportService;
+
+	@Autowired
+	private CodeSystemService codeSystemService;
+
+	@Autowired
+	private ConceptService conceptService;
+
+	private Object originalCache;
+	private MockMvc mockMvc;
+
+	@Before
+	public void setup() throws IOException {
+		// The cache is disabled in the test configuration
+		originalCache = ReflectionTestUtils.getField(exportService, "exportArchiveCache");
+		ExportArchiveCache cache = new ExportArchiveCache(true, Files.createTempDirectory("export-controller-test").toString(), 10);
+		ReflectionTestUtils.setField(exportService, "exportArchiveCache", cache);
+		mockMvc = MockMvcBuilders.standaloneSetup(exportController).build();
+	}
+
+	@After
+	public void tearDown() {
+		ReflectionTestUtils.setField(exportService, "exportArchiveCache", originalCache);
+	}
+
+	@Test
+	public void testCachedArchiveDownloadResumedWithRange() throws Exception {
+		codeSystemService.init();
+		CodeSystem codeSystem = codeSystemService.find(CodeSystemService.SNOMEDCT);
+		conceptService.create(new Concept("100001"), "MAIN");
+		codeSystemService.createVersion(codeSystem, 20180731, "Test version.");
+		String exportId = exportService.createJob(new ExportConfiguration("MAIN/2018-07-31", RF2Type.SNAPSHOT));
+
+		MvcResult fullDownload = mockMvc.perform(get("/exports/{exportId}/archive", exportId))
+				.andExpect(status().isOk())
+				.andReturn();
+		byte[] archive = fullDownload.getResponse().getContentAsByteArray();
+
+		// A second request for the same export, resuming the download
+		MvcResult rangeDownload = mockMvc.perform(get("/exports/{exportId}/archive", exportId).header(HttpHeaders.RANGE, "bytes=10-19"))
+				.andExpect(status().isPartialContent())
+				.andReturn();
+		assertEquals("bytes 10-19/" + archive.length, rangeDownload.getResponse().getHeader(HttpHeaders.CONTENT_RANGE));
+		byte[] expectedRange = new byte[10];
+		System.arraycopy(archive, 10, expectedRange, 0, 10);
+		assertArrayEquals(expectedRange, rangeDownload.getResponse().getContentAsByteArray());
+	}
+
+}
@@ -0,0 +1,57 @@
+package org.snomed.snowstorm.util;
+
+import org.springframework.web.client.RestTemplate;
+
+import java.util.*;
+
+/**
+ * Compares browser description search latency of the STANDARD (wildcard) and TYPEAHEAD (edge n-gram) search modes
+ * against a running Snowstorm instance. Descriptions must have been imported or saved since the typeahead field was added.
+ *
+ * Arguments: snowstormUrl branch iterations term...
+ * e.g. http://localhost:8080 MAIN 20 "hea" "heart att" "clin fin" "diab mel typ"
+ */
+public class DescriptionSearchBenchmark {
+
+	private static final String[] SEARCH_MODES = {"STANDARD", "TYPEAHEAD"};
+
+	public static void main(String[] args) {
+		if (args.length < 4) {
+			System.out.println("Usage: DescriptionSearchBenchmark snowstormUrl branch iterations term...");
+			return;
+		}
+		String snowstormUrl = args[0];
+		String branch = args[1];
+		int iterations = Integer.parseInt(args[2]);
+		List<String> terms = Arrays.asList(args).subList(3, args.length);
+		new DescriptionSearchBenchmark().run(snowstormUrl, branch, iterations, terms);
+	}
+
+	private void run(String snowstormUrl, String branch, int iterations, List<String> terms) {
+		RestTemplate restTemplate = new RestTemplate();
+		String url = snowstormUrl + "/browser/" + branch.replace("/", "%7C") + "/descriptions?term={term}&searchMode={searchMode}&limit=50";
+
+		// Warm up caches on both code paths before measuring
+		for (String term : terms) {
+			for (String searchMode : SEARCH_MODES) {
+				restTemplate.getForObject(url, String.class, term, searchMode);
+			}
+		}
+
+		System.out.println(String.format("%-20s %-10s %10s %10s %10s", "Term", "Mode", "Median ms", "P95 ms", "Max ms"));
+		for (String term : terms) {
+			for (String searchMode : SEARCH_MODES) {
+				List<Long> timings = new ArrayList<>();
+				for (int i = 0; i < iterations; i++) {
+					long start = System.nanoTime();
+					restTemplate.getForObject(url, String.class, term, searchMode);
+					timings.add((System.nanoTime() - start) / 1_000_000);
+				}
+				Collections.sort(timings);
+				System.out.println(String.format("%-20s %-10s %10d %10d %10d", term, searchMode,
+						timings.get(timings.size() / 2), timings.get((int) Math.ceil(timings.size() * 0.95) - 1), timings.get(timings.size() - 1)));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,149 @@
+package org.snomed.snowstorm.util;
+
+import org.snomed.snowstorm.App;
+import org.snomed.snowstorm.core.data.services.BranchService;
+import org.snomed.snowstorm.core.rf2.RF2Type;
+import org.snomed.snowstorm.core.rf2.rf2import.ImportJob;
+import org.snomed.snowstorm.core.rf2.rf2import.ImportService;
+import org.snomed.snowstorm.core.rf2.rf2import.RF2ImportConfiguration;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Imports an RF2 archive into a new branch of the Elasticsearch cluster configured in application.properties
+ * and reports the time taken by each import phase, the row throughput and the peak heap used.
+ * Intended to be run with archives written by {@link SyntheticReleaseGenerator} so that results are comparable between runs.
+ * Existing indices are kept, each run imports into a new branch under MAIN.
+ * Deferring the semantic index is only supported for FULL imports on MAIN, so with --defer-semantic-index the archive is imported into MAIN itself,
+ * use a cluster with an empty MAIN for that run.
+ *
+ * Arguments: archiveFile SNAPSHOT|DELTA|FULL [--bulk-indexing-profile] [--defer-semantic-index] [--elasticsearch.urls=...]
+ * e.g. /tmp/synthetic-snapshot.zip SNAPSHOT --bulk-indexing-profile
+ */
+public class RF2ImportBenchmark {
+
+	private static final String BULK_INDEXING_PROFILE_FLAG = "--bulk-indexing-profile";
+	private static final String DEFER_SEMANTIC_INDEX_FLAG = "--defer-semantic-index";
+
+	private volatile long peakHeapUsed;
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.out.println("Usage: RF2ImportBenchmark archiveFile SNAPSHOT|DELTA|FULL [--bulk-indexing-profile] [--defer-semantic-index] [--elasticsearch.urls=...]");
+			System.out.println("--defer-semantic-index is only valid with FULL and imports into MAIN rather than a new branch.");
+			return;
+		}
+		RF2Type importType = RF2Type.valueOf(args[1]);
+		List<String> options = Arrays.asList(args).subList(2, args.length);
+		boolean deferSemanticIndex = options.contains(DEFER_SEMANTIC_INDEX_FLAG);
+		if (deferSemanticIndex && importType != RF2Type.FULL) {
+			System.out.println(DEFER_SEMANTIC_INDEX_FLAG + " can only be used with a FULL import.");
+			return;
+		}
+		String[] springArgs = options.stream()
+				.filter(option -> !option.equals(BULK_INDEXING_PROFILE_FLAG) && !option.equals(DEFER_SEMANTIC_INDEX_FLAG))
+				.toArray(String[]::new);
+		String branchPath = deferSemanticIndex ? "MAIN" : "MAIN/BENCHMARK-" + System.currentTimeMillis();
+		RF2ImportConfiguration importConfiguration = new RF2ImportConfiguration(importType, branchPath)
+				.setBulkIndexingProfile(options.contains(BULK_INDEXING_PROFILE_FLAG))
+				.setDeferSemanticIndex(deferSemanticIndex);
+
+		SpringApplication application = new SpringApplication(App.class);
+		application.setDefaultProperties(Collections.singletonMap("server.port", "0"));
+		try (ConfigurableApplicationContext context = application.run(springArgs)) {
+			new RF2ImportBenchmark().run(context, args[0], importConfiguration);
+		}
+	}
+
+	private void run(ConfigurableApplicationContext context, String archiveFile, RF2ImportConfiguration importConfiguration) throws Exception {
+		BranchService branchService = context.getBean(BranchService.class);
+		ImportService importService = context.getBean(ImportService.class);
+		if (!importConfiguration.getBranchPath().equals("MAIN")) {
+			branchService.create(importConfiguration.getBranchPath());
+		}
+		String importId = importService.createJob(importConfiguration);
+
+		System.gc();
+		resetPeakUsage();
+		Thread heapSampler = new Thread(this::sampleHeap, "heap-sampler");
+		heapSampler.setDaemon(true);
+		heapSampler.start();
+
+		long start = System.currentTimeMillis();
+		try (InputStream archiveStream = new BufferedInputStream(new FileInputStream(archiveFile))) {
+			importService.importArchive(importId, archiveStream);
+		} finally {
+			heapSampler.interrupt();
+		}
+		long elapsedMillis = System.currentTimeMillis() - start;
+
+		ImportJob job = importService.getImportJobOrThrow(importId);
+		System.out.println();
+		System.out.println(String.format("Imported %s %s into %s, status %s", importConfiguration.getType(), archiveFile, importConfiguration.getBranchPath(), job.getStatus()));
+		System.out.println(String.format("%-40s %12s", "Phase", "Seconds"));
+		for (Map.Entry<String, Long> phase : job.getPhaseTimingsMillis().entrySet()) {
+			System.out.println(String.format("%-40s %12.1f", phase.getKey(), phase.getValue() / 1_000f));
+		}
+		System.out.println(String.format("%-40s %12.1f", "Total", elapsedMillis / 1_000f));
+		System.out.println();
+
+		Map<String, Long> rowsParsed = job.getProgress().getRowsParsed();
+		Map<String, Long> rowsPersisted = job.getProgress().getRowsPersisted();
+		System.out.println(String.format("%-40s %12s %12s", "Component", "Parsed", "Persisted"));
+		long totalRows = 0;
+		for (Map.Entry<String, Long> rows : rowsParsed.entrySet()) {
+			System.out.println(String.format("%-40s %12d %12d", rows.getKey(), rows.getValue(), rowsPersisted.getOrDefault(rows.getKey(), 0L)));
+			totalRows += rows.getValue();
+		}
+		System.out.println(String.format("%-40s %12d", "Total", totalRows));
+		System.out.println();
+		System.out.println(String.format("Rows per second: %d", elapsedMillis > 0 ? totalRows * 1_000 / elapsedMillis : 0));
+		System.out.println(String.format("Peak heap used (sampled): %d MB", peakHeapUsed / (1024 * 1024)));
+		System.out.println(String.format("Peak heap used (sum of pool peaks): %d MB", getPeakPoolUsage() / (1024 * 1024)));
+	}
+
+	private void sampleHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		while (!Thread.currentThread().isInterrupted()) {
+			peakHeapUsed = Math.max(peakHeapUsed, runtime.totalMemory() - runtime.freeMemory());
+			try {
+				Thread.sleep(100);
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+	private void resetPeakUsage() {
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				pool.resetPeakUsage();
+			}
+		}
+	}
+
+	/**
+	 * The pools may peak at different times so this is an upper bound.
+	 */
+	private long getPeakPoolUsage() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+}
@@ -0,0 +1,289 @@
+package org.snomed.snowstorm.util;
+
+import org.snomed.snowstorm.core.data.domain.Concepts;
+import org.snomed.snowstorm.core.data.services.identifier.VerhoeffCheck;
+import org.snomed.snowstorm.core.rf2.RF2Type;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes an RF2 archive of generated content for measuring import performance without a real release.
+ * Each concept has an FSN and a synonym with language refset members, an inferred is-a and finding site relationship and an OWL axiom.
+ * Every hundredth concept is inactive with a SAME AS association to its parent.
+ * A Full archive contains a release every six months, each release after the first changes the synonym and definition status of a tenth of the concepts.
+ * A Snapshot contains the latest state of every component, a Delta contains only the changes of the last release.
+ * The content is deterministic for the same arguments.
+ *
+ * Arguments: outputFile SNAPSHOT|DELTA|FULL conceptCount [releaseCount]
+ * e.g. /tmp/synthetic-snapshot.zip SNAPSHOT 300000
+ */
+public class SyntheticReleaseGenerator {
+
+	private static final String MODULE = Concepts.CORE_MODULE;
+	private static final String ROOT = Concepts.SNOMEDCT_ROOT;
+	private static final String FINDING_SITE = "363698007";
+	private static final String ROLE_GROUP = "609096000";
+	private static final String[] METADATA_CONCEPTS = {ROOT, Concepts.ISA, FINDING_SITE, ROLE_GROUP};
+
+	private static final String PRIMITIVE = "900000000000074008";
+	private static final String FULLY_DEFINED = "900000000000073002";
+	private static final String FSN = "900000000000003001";
+	private static final String SYNONYM = "900000000000013009";
+	private static final String CASE_INSENSITIVE = "900000000000448009";
+	private static final String US_EN_LANG_REFSET = "900000000000509007";
+	private static final String PREFERRED = "900000000000548007";
+	private static final String SAME_AS_ASSOCIATION_REFSET = "900000000000527005";
+	private static final String EXISTENTIAL_MODIFIER = "900000000000451002";
+
+	private static final int METADATA_ITEM_ID = 100;
+	private static final int FIRST_ITEM_ID = 1_000_000;
+	private static final int CHANGE_INTERVAL = 10;
+	private static final int INACTIVE_INTERVAL = 100;
+	private static final LocalDate FIRST_RELEASE = LocalDate.of(2010, 1, 31);
+	private static final String NEW_LINE = "\r\n";
+
+	private final RF2Type type;
+	private final int conceptCount;
+	private final List<String> releaseDates;
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			System.out.println("Usage: SyntheticReleaseGenerator outputFile SNAPSHOT|DELTA|FULL conceptCount [releaseCount]");
+			return;
+		}
+		RF2Type type = RF2Type.valueOf(args[1]);
+		int conceptCount = Integer.parseInt(args[2]);
+		int releaseCount = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+		long start = System.currentTimeMillis();
+		new SyntheticReleaseGenerator(type, conceptCount, releaseCount).write(new File(args[0]));
+		System.out.println(String.format("Wrote %s %s archive of %d concepts in %d seconds.", args[0], type, conceptCount, (System.currentTimeMillis() - start) / 1_000));
+	}
+
+	public SyntheticReleaseGenerator(RF2Type type, int conceptCount, int releaseCount) {
+		this.type = type;
+		this.conceptCount = conceptCount;
+		releaseDates = new ArrayList<>();
+		for (int i = 0; i < releaseCount; i++) {
+			LocalDate releaseMonth = FIRST_RELEASE.plusMonths(i * 6L);
+			releaseDates.add(releaseMonth.withDayOfMonth(releaseMonth.lengthOfMonth()).format(DateTimeFormatter.BASIC_ISO_DATE));
+		}
+	}
+
+	public void write(File outputFile) throws IOException {
+		String typeName = type.getName();
+		String releaseDate = releaseDates.get(releaseDates.size() - 1);
+		String base = "SyntheticCT/RF2Release/" + typeName + "/";
+		try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(outputFile)))) {
+			writeFile(zip, base + "Terminology/sct2_Concept_" + typeName + "_INT_" + releaseDate + ".txt",
+					"id\teffectiveTime\tactive\tmoduleId\tdefinitionStatusId", this::writeConcepts);
+			writeFile(zip, base + "Terminology/sct2_Description_" + typeName + "-en_INT_" + releaseDate + ".txt",
+					"id\teffectiveTime\tactive\tmoduleId\tconceptId\tlanguageCode\ttypeId\tterm\tcaseSignificanceId", this::writeDescriptions);
+			writeFile(zip, base + "Terminology/sct2_Relationship_" + typeName + "_INT_" + releaseDate + ".txt",
+					"id\teffectiveTime\tactive\tmoduleId\tsourceId\tdestinationId\trelationshipGroup\ttypeId\tcharacteristicTypeId\tmodifierId", this::writeRelationships);
+			writeFile(zip, base + "Terminology/sct2_sRefset_OWLAxiom" + typeName + "_INT_" + releaseDate + ".txt",
+					"id\teffectiveTime\tactive\tmoduleId\trefsetId\treferencedComponentId\towlExpression", this::writeAxioms);
+			writeFile(zip, base + "Refset/Language/der2_cRefset_Language" + typeName + "-en_INT_" + releaseDate + ".txt",
+					"id\teffectiveTime\tactive\tmoduleId\trefsetId\treferencedComponentId\tacceptabilityId", this::writeLanguageMembers);
+			writeFile(zip, base + "Refset/Content/der2_cRefset_AssociationReference" + typeName + "_INT_" + releaseDate + ".txt",
+					"id\teffectiveTime\tactive\tmoduleId\trefsetId\treferencedComponentId\ttargetComponentId", this::writeAssociations);
+		}
+	}
+
+	private void writeConcepts(Writer writer) throws IOException {
+		if (includesFirstRelease()) {
+			for (String metadataConcept : METADATA_CONCEPTS) {
+				writeRow(writer, metadataConcept, releaseDates.get(0), "1", MODULE, PRIMITIVE);
+			}
+		}
+		for (int i = 0; i < conceptCount; i++) {
+			String conceptId = conceptId(i);
+			for (int release : releasesOfChangingComponent(i)) {
+				writeRow(writer, conceptId, releaseDates.get(release), isActive(i), MODULE, release % 2 == 0 ? PRIMITIVE : FULLY_DEFINED);
+			}
+		}
+	}
+
+	private void writeDescriptions(Writer writer) throws IOException {
+		boolean includesFirstRelease = includesFirstRelease();
+		if (includesFirstRelease) {
+			for (int m = 0; m < METADATA_CONCEPTS.length; m++) {
+				writeRow(writer, sctid(METADATA_ITEM_ID + m, "01"), releaseDates.get(0), "1", MODULE, METADATA_CONCEPTS[m], "en", FSN, "Metadata concept " + m + " (metadata)", CASE_INSENSITIVE);
+			}
+		}
+		for (int i = 0; i < conceptCount; i++) {
+			String conceptId = conceptId(i);
+			if (includesFirstRelease) {
+				writeRow(writer, fsnId(i), releaseDates.get(0), "1", MODULE, conceptId, "en", FSN, "Synthetic finding " + i + " (finding)", CASE_INSENSITIVE);
+			}
+			for (int release : releasesOfChangingComponent(i)) {
+				writeRow(writer, synonymId(i), releaseDates.get(release), "1", MODULE, conceptId, "en", SYNONYM, "Synthetic finding " + i + " version " + release, CASE_INSENSITIVE);
+			}
+		}
+	}
+
+	private void writeRelationships(Writer writer) throws IOException {
+		if (!includesFirstRelease()) {
+			// Only concepts and synonyms change after the first release
+			return;
+		}
+		for (int m = 1; m < METADATA_CONCEPTS.length; m++) {
+			writeRow(writer, sctid(METADATA_ITEM_ID + m, "02"), releaseDates.get(0), "1", MODULE, METADATA_CONCEPTS[m], ROOT, "0", Concepts.ISA, Concepts.INFERRED_RELATIONSHIP, EXISTENTIAL_MODIFIER);
+		}
+		for (int i = 0; i < conceptCount; i++) {
+			String conceptId = conceptId(i);
+			String active = isActive(i);
+			writeRow(writer, isARelationshipId(i), releaseDates.get(0), active, MODULE, conceptId, parentId(i), "0", Concepts.ISA, Concepts.INFERRED_RELATIONSHIP, EXISTENTIAL_MODIFIER);
+			writeRow(writer, findingSiteRelationshipId(i), releaseDates.get(0), active, MODULE, conceptId, findingSiteId(i), "1", FINDING_SITE, Concepts.INFERRED_RELATIONSHIP, EXISTENTIAL_MODIFIER);
+		}
+	}
+
+	private void writeAxioms(Writer writer) throws IOException {
+		if (!includesFirstRelease()) {
+			// Only concepts and synonyms change after the first release
+			return;
+		}
+		for (int m = 1; m < METADATA_CONCEPTS.length; m++) {
+			writeRow(writer, uuid("axiom", METADATA_CONCEPTS[m]), releaseDates.get(0), "1", MODULE, Concepts.OWL_AXIOM_REFERENCE_SET, METADATA_CONCEPTS[m],
+					"SubClassOf(:" + METADATA_CONCEPTS[m] + " :" + ROOT + ")");
+		}
+		for (int i = 0; i < conceptCount; i++) {
+			String conceptId = conceptId(i);
+			writeRow(writer, uuid("axiom", conceptId), releaseDates.get(0), isActive(i), MODULE, Concepts.OWL_AXIOM_REFERENCE_SET, conceptId,
+					"SubClassOf(:" + conceptId + " ObjectIntersectionOf(:" + parentId(i) + " ObjectSomeValuesFrom(:" + ROLE_GROUP +
+							" ObjectSomeValuesFrom(:" + FINDING_SITE + " :" + findingSiteId(i) + "))))");
+		}
+	}
+
+	private void writeLanguageMembers(Writer writer) throws IOException {
+		if (!includesFirstRelease()) {
+			// Only concepts and synonyms change after the first release
+			return;
+		}
+		for (int m = 0; m < METADATA_CONCEPTS.length; m++) {
+			String descriptionId = sctid(METADATA_ITEM_ID + m, "01");
+			writeRow(writer, uuid("lang", descriptionId), releaseDates.get(0), "1", MODULE, US_EN_LANG_REFSET, descriptionId, PREFERRED);
+		}
+		for (int i = 0; i < conceptCount; i++) {
+			writeRow(writer, uuid("lang", fsnId(i)), releaseDates.get(0), "1", MODULE, US_EN_LANG_REFSET, fsnId(i), PREFERRED);
+			writeRow(writer, uuid("lang", synonymId(i)), releaseDates.get(0), "1", MODULE, US_EN_LANG_REFSET, synonymId(i), PREFERRED);
+		}
+	}
+
+	private void writeAssociations(Writer writer) throws IOException {
+		if (!includesFirstRelease()) {
+			// Only concepts and synonyms change after the first release
+			return;
+		}
+		for (int i = INACTIVE_INTERVAL - 1; i < conceptCount; i += INACTIVE_INTERVAL) {
+			String conceptId = conceptId(i);
+			writeRow(writer, uuid("association", conceptId), releaseDates.get(0), "1", MODULE, SAME_AS_ASSOCIATION_REFSET, conceptId, parentId(i));
+		}
+	}
+
+	/**
+	 * Indexes of the releases in which a changing component has a row in this archive.
+	 * Components which do not change only have the first release, which is excluded from a Delta unless it is the only release.
+	 */
+	private List<Integer> releasesOfChangingComponent(int conceptIndex) {
+		List<Integer> releases = new ArrayList<>();
+		int lastRelease = releaseDates.size() - 1;
+		for (int release = 0; release <= lastRelease; release++) {
+			if (release == 0 || conceptIndex % CHANGE_INTERVAL == release % CHANGE_INTERVAL) {
+				releases.add(release);
+			}
+		}
+		switch (type) {
+			case SNAPSHOT:
+				return releases.subList(releases.size() - 1, releases.size());
+			case DELTA:
+				return releases.get(releases.size() - 1) == lastRelease ? releases.subList(releases.size() - 1, releases.size()) : new ArrayList<>();
+			default:
+				return releases;
+		}
+	}
+
+	private boolean includesFirstRelease() {
+		return type != RF2Type.DELTA || releaseDates.size() == 1;
+	}
+
+	private void writeFile(ZipOutputStream zip, String name, String header, RowWriter rowWriter) throws IOException {
+		zip.putNextEntry(new ZipEntry(name));
+		// Not closed because that would close the zip stream
+		Writer writer = new BufferedWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8));
+		writer.write(header);
+		writer.write(NEW_LINE);
+		rowWriter.write(writer);
+		writer.flush();
+		zip.closeEntry();
+	}
+
+	private void writeRow(Writer writer, String... values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0) {
+				writer.write('\t');
+			}
+			writer.write(values[i]);
+		}
+		writer.write(NEW_LINE);
+	}
+
+	private String isActive(int conceptIndex) {
+		return conceptIndex % INACTIVE_INTERVAL == INACTIVE_INTERVAL - 1 ? "0" : "1";
+	}
+
+	private String parentId(int conceptIndex) {
+		// Parents always come earlier so the hierarchy is a tree under the root
+		return conceptIndex < 10 ? ROOT : conceptId(activeConceptBefore(new Random(conceptIndex).nextInt(conceptIndex)));
+	}
+
+	private String findingSiteId(int conceptIndex) {
+		return conceptIndex < 10 ? ROOT : conceptId(activeConceptBefore(new Random(-conceptIndex).nextInt(conceptIndex)));
+	}
+
+	private int activeConceptBefore(int conceptIndex) {
+		return isActive(conceptIndex).equals("1") ? conceptIndex : conceptIndex - 1;
+	}
+
+	private String conceptId(int conceptIndex) {
+		return sctid(FIRST_ITEM_ID + conceptIndex, "00");
+	}
+
+	private String fsnId(int conceptIndex) {
+		return sctid(FIRST_ITEM_ID + conceptIndex * 2, "01");
+	}
+
+	private String synonymId(int conceptIndex) {
+		return sctid(FIRST_ITEM_ID + conceptIndex * 2 + 1, "01");
+	}
+
+	private String isARelationshipId(int conceptIndex) {
+		return sctid(FIRST_ITEM_ID + conceptIndex * 2, "02");
+	}
+
+	private String findingSiteRelationshipId(int conceptIndex) {
+		return sctid(FIRST_ITEM_ID + conceptIndex * 2 + 1, "02");
+	}
+
+	private String sctid(int itemId, String partition) {
+		String withoutCheckDigit = itemId + partition;
+		return withoutCheckDigit + VerhoeffCheck.calculateChecksum(withoutCheckDigit, 0, false);
+	}
+
+	private String uuid(String type, String componentId) {
+		return UUID.nameUUIDFromBytes((type + componentId).getBytes(StandardCharsets.UTF_8)).toString();
+	}
+
+	private interface RowWriter {
+		void write(Writer writer) throws IOException;
+	}
+
+}